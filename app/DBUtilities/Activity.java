@@ -1,40 +1,29 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
+import java.util.Collections;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 import static DBUtilities.DBConfig.EMPTY_JSON_OBJECT;
-import static com.couchbase.client.java.query.Select.select;
-import static com.couchbase.client.java.query.Update.update;
-import static com.couchbase.client.java.query.dsl.functions.ArrayFunctions.arrayAppend;
 
 /**
  * Created by rashwan on 3/29/16.
  */
 public class Activity {
-    private static AsyncBucket mBucket;
+    private static final String PAGE_SIZE_CONFIG_KEY = "storage.activities.page-size";
+    private static Storage mStorage;
 
     /**
-     * Create and save a user's activities . can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
+     * Create and save a user's activities, the activities list is stored in pages and this document only indexes them. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
      * @param activityId The id for the activity document to be created.
      * @return an observable of the created Json document.
      */
@@ -44,13 +33,10 @@ public class Activity {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        JsonDocument activityDocument = JsonDocument.create (activityId,activityObject);
+        JsonDocument activityDocument = JsonDocument.create (activityId,Segments.header (activityObject,PAGE_SIZE_CONFIG_KEY));
 
-        return mBucket.insert (activityDocument).single ().timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.insert (activityDocument).single ()
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentAlreadyExistsException) {
                     return Observable.error (new DocumentAlreadyExistsException ("Failed to create activity, ID already exists"));
@@ -62,7 +48,7 @@ public class Activity {
     }
 
     /**
-     * Adds an activity to the user's activities list.
+     * Adds an activity to the user's activities list, only the current page of the list is written.
      * @param projectId The project id which the user made the activity on.
      * @param activityId The id of the activity document related to this user.
      * @param activityObject The activity content.
@@ -77,30 +63,26 @@ public class Activity {
 
         return Project.getProjectName (projectId)
         .flatMap (projectObject -> embedProjectNameInActivity (projectObject,activityObject))
-        .flatMap (activity -> mBucket.query (N1qlQuery.simple (update(Expression.x (DBConfig.BUCKET_NAME + " activity"))
-        .useKeys (Expression.s (activityId)).set (Expression.x ("activities"),
-            arrayAppend(Expression.x ("activities"),Expression.x (activity)))
-        .returning (Expression.x ("activities[-1] as activity,meta(activity).id"))))).timeout (1000,TimeUnit.MILLISECONDS)
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        .flatMap (activity -> Segments.append (activityId,"activities",activity))
+        .map (row -> JsonObject.create ().put ("activity",row.get ("value")).put ("id",row.getString ("id")))
+        .compose (DBPolicy.WRITE::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to add a new activity with contents: %s to activity with id: %s",activityObject,activityId));
+                Log.warn (Log.DB, "Failed to add a new activity with contents: %s to activity with id: %s",activityObject,activityId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to add a new activity with contents: %s to activity with id: %s, General DB exception.",activityObject.toString (),activityId)));
             } else {
-                Logger.info (String.format ("DB: Failed to add a new activity with contents: %s to activity with id: %s",activityObject,activityId));
+                Log.warn (Log.DB, "Failed to add a new activity with contents: %s to activity with id: %s",activityObject,activityId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to add a new activity with contents: %s to activity with id: %s, General DB exception.",activityObject.toString (),activityId)));
             }
         }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
     }
     /**
-     * Get activities of a user using its id. can error with {@link CouchbaseException} and {@link BucketClosedException}.
+     * Get activities of a user using its id, newest first, only the pages holding the requested activities are read.
+     * Activities documents created before paging keep their activities inline and are listed oldest first.
+     * can error with {@link CouchbaseException} and {@link BucketClosedException}.
      * @param activityId the id of the activities document to get.
      * @param offset an index to determine where how much result to omit from the beginning.
      * @param limit the maximum number of document returned.
@@ -112,21 +94,16 @@ public class Activity {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: Getting activity with id: %s ,limit: %s and offset: %s",activityId,limit,offset));
+        Log.info (Log.DB, "Getting activity with id: %s ,limit: %s and offset: %s",activityId,limit,offset);
 
-        int endIndex = offset + limit ;
-
-        return mBucket.query (N1qlQuery.simple (select(Expression.x ("activities[" + offset + ":array_min([(array_length(activities))," + endIndex + "])]")
-            .as ("activities")).from (DBConfig.BUCKET_NAME)
-            .useKeys (Expression.s (activityId)))).timeout (1000,TimeUnit.MILLISECONDS)
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
+        return mStorage.lookup (activityId,Segments.SEGMENT_SIZE_KEY,Segments.SEGMENTED_KEY)
+        .flatMap (header -> Segments.isSegmented (header)
+                ? Segments.window (activityId,header,offset,limit,true)
+                : mStorage.getWithSlices (activityId,Collections.emptyList (),Collections.singletonList ("activities"),offset,limit))
                 .filter (object -> !object.getArray ("activities").isEmpty ())
-                .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+                .compose (DBPolicy.READ::apply)
         .onErrorResumeNext (throwable -> {
-            Logger.info (String.format ("DB: failed to get activity with id: %s ,limit: %s and offset: %s",activityId,limit,offset));
+            Log.warn (Log.DB, "failed to get activity with id: %s ,limit: %s and offset: %s",activityId,limit,offset);
 
             return Observable.error (new CouchbaseException (String.format ("DB: failed to get activity with id: %s ,limit: %s and offset: %s",activityId,limit,offset)));
         })
@@ -149,11 +126,8 @@ public class Activity {
 
         JsonDocument activityDocument = JsonDocument.create (activityId,DBConfig.removeIdFromJson (activityJsonObject));
 
-        return mBucket.replace (activityDocument).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.replace (activityDocument)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException){
                     return Observable.error (new DocumentDoesNotExistException ("Failed to update activity, ID dosen't exist in DB"));
@@ -169,7 +143,7 @@ public class Activity {
     }
 
     /**
-     * Delete activities of a user using its id. can error with {@link CouchbaseException}, {@link DocumentDoesNotExistException} and {@link BucketClosedException} .
+     * Delete activities of a user using its id, with the pages of its activities list. can error with {@link CouchbaseException}, {@link DocumentDoesNotExistException} and {@link BucketClosedException} .
      * @param activityId The id of the activities document to be deleted.
      * @return An observable with Json document containing only the id .
      */
@@ -179,11 +153,9 @@ public class Activity {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        return mBucket.remove (activityId).timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        return Segments.removeSegments (activityId).onErrorReturn (throwable -> 0)
+            .concatMap (removedPages -> mStorage.remove (activityId))
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException) {
                     return Observable.error (new DocumentDoesNotExistException ("Failed to delete activity, ID dosen't exist in DB"));
@@ -201,15 +173,15 @@ public class Activity {
     }
 
     private static void checkDBStatus () {
-        if (DBConfig.bucket.isClosed ()){
+        if (DBConfig.storage ().isClosed ()){
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = DBConfig.bucket;
+                mStorage = DBConfig.storage ();
             }else{
                 throw new BucketClosedException ("Failed to open bucket due to timeout or backpressure");
 
             }
         }else {
-            mBucket = DBConfig.bucket;
+            mStorage = DBConfig.storage ();
         }
     }
 }
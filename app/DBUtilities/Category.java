@@ -1,36 +1,24 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.query.dsl.Sort;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
-
-import static com.couchbase.client.java.query.Select.select;
 
 /**
  * Created by rashwan on 3/29/16.
+ * Category writes keep the {@link CategoryCatalog} up to date.
  */
 public class Category {
 
-    private static AsyncBucket mBucket;
+    private static Storage mStorage;
 
     /**
      * Create and save a category. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
@@ -47,19 +35,17 @@ public class Category {
         String categoryId = "category::" + UUID.randomUUID ();
         JsonDocument categoryDocument = JsonDocument.create (categoryId,categoryJsonObject);
 
-        return mBucket.insert (categoryDocument).single ().timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.insert (categoryDocument).single ()
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentAlreadyExistsException){
                     String newUserId = "category::"+ UUID.randomUUID ();
                     JsonDocument newCategoryDocument = JsonDocument.create (newUserId,DBConfig.removeIdFromJson (categoryJsonObject));
-                    return mBucket.insert (newCategoryDocument);
+                    return mStorage.insert (newCategoryDocument);
                 }
                 return Observable.error (new CouchbaseException ("Failed to insert category, General DB exception"));
-            }).flatMap (jsonDocument -> Observable.just (jsonDocument.content ().put ("id",jsonDocument.id ())));
+            }).doOnNext (jsonDocument -> CategoryCatalog.put (jsonDocument.id (),jsonDocument.content ()))
+            .flatMap (jsonDocument -> Observable.just (jsonDocument.content ().put ("id",jsonDocument.id ())));
     }
 
     /**
@@ -74,11 +60,8 @@ public class Category {
             return Observable.error(e);
         }
 
-        return mBucket.get (categoryId).timeout (500,TimeUnit.MILLISECONDS)
-                .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                        .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-                .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                        .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.get (categoryId)
+                .compose (DBPolicy.READ::apply)
                 .onErrorResumeNext (throwable -> {
                     return Observable.error (new CouchbaseException ("Failed to get category, General DB exception"));
                 })
@@ -92,28 +75,29 @@ public class Category {
      * @param offset an index to determine where how much result to omit from the beginning.
      * @return an observable of json object that contains all the resulted categories with id field added.
      */
-    public static Observable<JsonObject> bulkGetCategories(int offset,int limit){
+    public static Observable<JsonObject> bulkGetCategories(int offset,int limit,String cursor){
+        Cursor after;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode (cursor);
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Bulk getting categories with limit: %s and offset: %s",limit,offset));
-
-        return mBucket.query (N1qlQuery.simple (select(Expression.x ("meta(category).id, *")).from (Expression.x (DBConfig.BUCKET_NAME + " category"))
-        .where (Expression.x ("meta(category).id").like (Expression.s ("%category%")))
-        .orderBy (Sort.asc (Expression.x ("category.name"))).limit (limit).offset (offset)))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (queryRow -> {
-                String id = queryRow.value ().getString ("id");
-                return Observable.just (queryRow.value ().getObject ("category").put ("id",id));
-            }).timeout (1000,TimeUnit.MILLISECONDS)
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-            .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-            .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Bulk getting categories with limit: %s and offset: %s",limit,offset);
+
+        if (CategoryCatalog.isLoaded ()){
+            return Observable.from (CategoryCatalog.page (offset,limit,after));
+        }
+
+        return mStorage.list (Listing.of ("category").whereIdHasPrefix ().orderBy ("name",false).page (offset,limit).after (after))
+        .flatMap (row -> {
+                String id = row.getString ("id");
+                return Observable.just (Cursor.attach (row,row.getObject ("category").put ("id",id)));
+            })
+        .compose (DBPolicy.QUERY::apply)
         .onErrorResumeNext (throwable -> {
-            Logger.info (String.format ("DB: failed to bulk get categories with limit: %s and offset: %s",limit,offset));
+            Log.warn (Log.DB, "failed to bulk get categories with limit: %s and offset: %s",limit,offset);
 
             return Observable.error (new CouchbaseException (String.format ("DB: failed to bulk get categories with limit: %s and offset: %s",limit,offset)));
         });
@@ -135,11 +119,8 @@ public class Category {
 
         JsonDocument categoryDocument = JsonDocument.create (categoryId,DBConfig.removeIdFromJson (categoryJsonObject));
 
-        return mBucket.replace (categoryDocument).timeout (500,TimeUnit.MILLISECONDS)
-                .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                        .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-                .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                        .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.replace (categoryDocument)
+                .compose (DBPolicy.WRITE::apply)
                 .onErrorResumeNext (throwable -> {
                     if (throwable instanceof DocumentDoesNotExistException){
                         return Observable.error (new DocumentDoesNotExistException ("Failed to update category, ID dosen't exist in DB"));
@@ -151,6 +132,9 @@ public class Category {
                     else {
                         return Observable.error (new CouchbaseException ("Failed to update category, General DB exception "));
                     }
+                }).doOnNext (jsonDocument -> {
+                    CategoryCatalog.put (categoryId,jsonDocument.content ());
+                    SearchIndex.reindexCategory (categoryId);
                 });
     }
 
@@ -166,30 +150,30 @@ public class Category {
             return Observable.error(e);
         }
 
-        return mBucket.remove (categoryId).timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.remove (categoryId)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException) {
                     return Observable.error (new DocumentDoesNotExistException ("Failed to delete category, ID dosen't exist in DB"));
                 } else {
                     return Observable.error (new CouchbaseException ("Failed to delete category, General DB exception "));
                 }
+            }).doOnNext (jsonDocument -> {
+                CategoryCatalog.remove (categoryId);
+                SearchIndex.reindexCategory (categoryId);
             });
     }
 
     private static void checkDBStatus () {
-        if (DBConfig.bucket.isClosed ()){
+        if (DBConfig.storage ().isClosed ()){
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = DBConfig.bucket;
+                mStorage = DBConfig.storage ();
             }else{
                 throw new BucketClosedException ("Failed to open bucket due to timeout or backpressure");
 
             }
         }else {
-            mBucket = DBConfig.bucket;
+            mStorage = DBConfig.storage ();
         }
     }
 }
@@ -0,0 +1,171 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-local copy of all categories, loaded when the DB is initialized and kept up to date by the category writes.
+ * Readers always see one immutable snapshot, writers replace the whole snapshot atomically.
+ * Every write is numbered, a reload keeps the categories written or removed after it started instead of the loaded ones.
+ */
+class CategoryCatalog {
+    private static final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private static final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Load all the categories from the DB and merge them into the catalog.
+     * @return an observable of the number of loaded categories.
+     */
+    static Observable<Integer> reload() {
+        return Observable.defer(() -> {
+            long startedAt = writes.get();
+            return DBConfig.storage().list(Listing.of("category").whereIdHasPrefix().page(0, Integer.MAX_VALUE))
+                    .toMap(row -> row.getString("id"), row -> row.getObject("category"))
+                    .map(categories -> {
+                        snapshot.updateAndGet(current -> current.mergeLoaded(categories, startedAt));
+                        Logger.info(String.format("DB: Category catalog loaded with %s categories", categories.size()));
+                        return categories.size();
+                    });
+        });
+    }
+
+    static boolean isLoaded() {
+        return snapshot.get().loaded;
+    }
+
+    /**
+     * Get a category from the catalog, or from the DB if the catalog doesn't have it yet.
+     * @param categoryId the id of the category.
+     * @return an observable of a copy of the category, empty if it doesn't exist.
+     */
+    static Observable<JsonObject> lookup(String categoryId) {
+        if (categoryId == null) {
+            return Observable.empty();
+        }
+        JsonObject category = snapshot.get().categories.get(categoryId);
+        if (category != null) {
+            return Observable.just(MemoryStorage.copy(category));
+        }
+        return DBConfig.storage().get(categoryId).map(categoryDocument -> {
+            put(categoryId, categoryDocument.content());
+            return MemoryStorage.copy(categoryDocument.content());
+        });
+    }
+
+    /**
+     * @return the name of a category in the catalog, null if the catalog doesn't have it.
+     */
+    static String name(String categoryId) {
+        JsonObject category = categoryId == null ? null : snapshot.get().categories.get(categoryId);
+        return category == null ? null : category.getString("name");
+    }
+
+    /**
+     * @param after the cursor to start after, null to start at the offset.
+     * @return copies of the categories sorted by name with the id field and their cursor added.
+     */
+    static List<JsonObject> page(int offset, int limit, Cursor after) {
+        Snapshot current = snapshot.get();
+        int start = Math.max(offset, 0);
+        if (after != null) {
+            start = 0;
+            while (start < current.idsByName.size() && current.compare(current.idsByName.get(start), after.sortValue(), after.id()) <= 0) {
+                start++;
+            }
+        }
+        List<JsonObject> page = new ArrayList<>();
+        for (int i = start; i < Math.min(current.idsByName.size(), start + limit); i++) {
+            String id = current.idsByName.get(i);
+            JsonObject category = MemoryStorage.copy(current.categories.get(id));
+            page.add(category.put(Cursor.CURSOR_KEY, Cursor.encode(category.get("name"), id)).put("id", id));
+        }
+        return page;
+    }
+
+    static void put(String categoryId, JsonObject category) {
+        JsonObject stored = MemoryStorage.copy(category);
+        stored.removeKey("id");
+        long write = writes.incrementAndGet();
+        snapshot.updateAndGet(current -> {
+            Map<String, JsonObject> categories = new HashMap<>(current.categories);
+            categories.put(categoryId, stored);
+            return new Snapshot(categories, current.written(categoryId, write), current.loaded);
+        });
+    }
+
+    static void remove(String categoryId) {
+        long write = writes.incrementAndGet();
+        snapshot.updateAndGet(current -> {
+            Map<String, JsonObject> categories = new HashMap<>(current.categories);
+            categories.remove(categoryId);
+            return new Snapshot(categories, current.written(categoryId, write), current.loaded);
+        });
+    }
+
+    /**
+     * The categories, with the number of the last write of every category written since the start.
+     */
+    private static class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), false);
+
+        private final Map<String, JsonObject> categories;
+        private final Map<String, Long> lastWrites;
+        private final List<String> idsByName;
+        private final boolean loaded;
+
+        Snapshot(Map<String, JsonObject> categories, Map<String, Long> lastWrites, boolean loaded) {
+            this.categories = Collections.unmodifiableMap(new HashMap<>(categories));
+            this.lastWrites = Collections.unmodifiableMap(lastWrites);
+            List<String> ids = new ArrayList<>(categories.keySet());
+            ids.sort(Comparator.<String, Object>comparing(id -> categories.get(id).get("name"), MemoryStorage::compare)
+                    .thenComparing(id -> id));
+            this.idsByName = Collections.unmodifiableList(ids);
+            this.loaded = loaded;
+        }
+
+        /**
+         * @return the last writes with the write of a category.
+         */
+        Map<String, Long> written(String categoryId, long write) {
+            Map<String, Long> written = new HashMap<>(lastWrites);
+            written.put(categoryId, write);
+            return written;
+        }
+
+        /**
+         * Merge the categories loaded from the DB, the categories written or removed after the load started keep their current state.
+         */
+        Snapshot mergeLoaded(Map<String, JsonObject> loadedCategories, long startedAt) {
+            Map<String, JsonObject> merged = new HashMap<>(loadedCategories);
+            for (Map.Entry<String, Long> lastWrite : lastWrites.entrySet()) {
+                if (lastWrite.getValue() > startedAt) {
+                    JsonObject category = categories.get(lastWrite.getKey());
+                    if (category != null) {
+                        merged.put(lastWrite.getKey(), category);
+                    } else {
+                        merged.remove(lastWrite.getKey());
+                    }
+                }
+            }
+            return new Snapshot(merged, lastWrites, true);
+        }
+
+        /**
+         * Compare the position of a category with the position of a cursor, in the order of idsByName.
+         */
+        int compare(String id, Object name, String cursorId) {
+            int byName = MemoryStorage.compare(categories.get(id).get("name"), name);
+            return byName != 0 ? byName : id.compareTo(cursorId);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HyperLogLog sketches of the distinct contributors of a project, overall and per gender, stored in its stats document.
+ * A sketch has 2^10 registers, each holding the longest run of leading zeros seen among the hashes of the contributors falling into it,
+ * which estimates the number of distinct contributors within about 3% whatever their number.
+ * The registers of all the sketches are fields name:index of one object, only the touched ones are stored,
+ * and adding a contributor raises one register per sketch, so sketches written by several app nodes merge by keeping the highest register.
+ */
+class ContributorSketch {
+    static final String SKETCH_KEY = "contributors_sketch";
+    static final String ALL = "all";
+    private static final char REGISTER_SEPARATOR = ':';
+    private static final int PRECISION = 10;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    /**
+     * @param contributorId the id of the contributing user.
+     * @param gender the gender of the contributing user.
+     * @return the registers to raise to add the contributor to the overall sketch and to the sketch of its gender, by field name.
+     */
+    static Map<String, Long> registers(String contributorId, String gender) {
+        long hash = hash(contributorId);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        long rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), Long.SIZE - PRECISION) + 1;
+
+        Map<String, Long> registers = new HashMap<>();
+        registers.put(ALL + REGISTER_SEPARATOR + index, rank);
+        registers.put(gender + REGISTER_SEPARATOR + index, rank);
+        return registers;
+    }
+
+    /**
+     * @param sketches the sketches object of a stats document.
+     * @return the names of the sketches it holds, {@link #ALL} and the genders.
+     */
+    static Set<String> names(JsonObject sketches) {
+        Set<String> names = new HashSet<>();
+        for (String register : sketches.getNames()) {
+            int separator = register.lastIndexOf(REGISTER_SEPARATOR);
+            if (separator > 0) {
+                names.add(register.substring(0, separator));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param sketches the sketches object of a stats document.
+     * @param name {@link #ALL} or a gender.
+     * @return the estimated number of distinct contributors of the sketch, 0 if it doesn't exist.
+     */
+    static long estimate(JsonObject sketches, String name) {
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (int index = 0; index < REGISTERS; index++) {
+            Object register = sketches.get(name + REGISTER_SEPARATOR + index);
+            int rank = register instanceof Number ? ((Number) register).intValue() : 0;
+            sum += Math.pow(2, -rank);
+            if (rank == 0) {
+                zeroRegisters++;
+            }
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        // few contributors leave registers empty, counting them is more accurate then
+        if (estimate <= 2.5 * REGISTERS && zeroRegisters > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 64 bit FNV-1a of the id, mixed so that every bit of the result depends on every bit of the id.
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
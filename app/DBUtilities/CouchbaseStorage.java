@@ -0,0 +1,460 @@
+package DBUtilities;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Cluster;
+import com.couchbase.client.java.CouchbaseCluster;
+import com.couchbase.client.java.ReplicaMode;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.JsonLongDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.query.AsyncN1qlQueryResult;
+import com.couchbase.client.java.query.AsyncN1qlQueryRow;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.client.java.query.dsl.Expression;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage backend running on a Couchbase cluster, KV operations go to the data service and the rest are N1QL statements.
+ */
+public class CouchbaseStorage implements Storage {
+
+    private static final String DOC = "d";
+    private static final String DEFERRED_INDEX_STATE = "deferred";
+    private static final String ONLINE_INDEX_STATE = "online";
+    private static final long INDEX_POLL_INTERVAL = 1000;
+    private static final long INDEX_BUILD_TIMEOUT = 5 * 60 * 1000;
+    private Cluster cluster;
+    private AsyncBucket bucket;
+
+    @Override
+    public int open() {
+        if (bucket != null && !bucket.isClosed()) {
+            Logger.info("DB: DB already initialized");
+            return DBConfig.OPEN_BUCKET_OK;
+        }
+        try {
+            cluster = CouchbaseCluster.create();
+            bucket = cluster.openBucket().async();
+            Logger.info("DB: DB initialized");
+            return DBConfig.OPEN_BUCKET_OK;
+        } catch (CouchbaseException e) {
+            Logger.info("DB: DB to initialize");
+            return DBConfig.OPEN_BUCKET_ERROR;
+        } catch (Exception e) {
+            Logger.info("DB: DB failed to initialize");
+            return DBConfig.OPEN_BUCKET_ERROR;
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return bucket == null || bucket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        if (cluster != null) {
+            cluster.disconnect();
+        }
+    }
+
+    @Override
+    public Observable<JsonDocument> get(String id) {
+        return bucket.get(id);
+    }
+
+    @Override
+    public Observable<JsonDocument> getFromReplica(String id) {
+        return bucket.getFromReplica(id, ReplicaMode.FIRST);
+    }
+
+    @Override
+    public Observable<Boolean> exists(String id) {
+        return bucket.exists(id);
+    }
+
+    @Override
+    public Observable<JsonDocument> insert(JsonDocument document) {
+        return bucket.insert(document);
+    }
+
+    @Override
+    public Observable<JsonDocument> replace(JsonDocument document) {
+        return bucket.replace(document);
+    }
+
+    @Override
+    public Observable<JsonDocument> remove(String id) {
+        return bucket.remove(id);
+    }
+
+    @Override
+    public Observable<JsonObject> lookup(String id, String... fields) {
+        Parameters parameters = new Parameters();
+        return query("SELECT " + String.join(", ", fields) + " FROM " + DBConfig.BUCKET_NAME + " USE KEYS " + parameters.add(id), parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> getWithSlices(String id, List<String> fields, List<String> arrayPaths, int offset, int limit) {
+        Parameters parameters = new Parameters();
+        String start = parameters.add(offset);
+        String end = parameters.add(offset + limit);
+        List<String> selections = new ArrayList<>(fields);
+        Map<String, List<String>> nestedSlices = new LinkedHashMap<>();
+
+        for (String path : arrayPaths) {
+            String slice = path + "[" + start + ":array_min([(array_length(" + path + "))," + end + "])]";
+            int dot = path.indexOf('.');
+            if (dot < 0) {
+                selections.add(slice + " as " + path);
+            } else {
+                nestedSlices.computeIfAbsent(path.substring(0, dot), parent -> new ArrayList<>())
+                        .add(Expression.s(path.substring(dot + 1)) + ":" + slice);
+            }
+        }
+        nestedSlices.forEach((parent, slices) -> selections.add("{" + String.join(", ", slices) + "} as " + parent));
+
+        return query("SELECT " + String.join(", ", selections) + " FROM " + DBConfig.BUCKET_NAME + " USE KEYS " + parameters.add(id), parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> setFields(String id, JsonObject fields) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        List<String> assignments = new ArrayList<>();
+        for (String name : fields.getNames()) {
+            assignments.add(name + " = " + parameters.add(fields.get(name)));
+        }
+        return query(update + " SET " + String.join(", ", assignments) + " RETURNING meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> arrayAppend(String id, String path, Object value) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        return query(update + " SET " + path + " = array_append(" + path + ", " + parameters.add(value) + ")"
+                + " RETURNING " + path + "[-1] as `value`, meta(" + DOC + ").id", parameters);
+    }
+
+    /**
+     * The MERGE goes through the query service, when two first appends race the insert of the second one fails
+     * with a duplicate key, the document exists by then so the value is appended to it instead.
+     */
+    @Override
+    public Observable<JsonObject> appendOrCreate(String id, String field, Object value) {
+        Parameters parameters = new Parameters();
+        String key = parameters.add(id);
+        String element = parameters.add(value);
+        return query("MERGE INTO " + DBConfig.BUCKET_NAME + " " + DOC + " USING (SELECT " + key + " AS id) source ON KEY source.id"
+                + " WHEN MATCHED THEN UPDATE SET " + DOC + "." + field + " = array_append(" + DOC + "." + field + ", " + element + ")"
+                + " WHEN NOT MATCHED THEN INSERT {" + Expression.s(field) + ": [" + element + "]}"
+                + " RETURNING " + element + " as `value`, meta(" + DOC + ").id", parameters)
+                .onErrorResumeNext(throwable -> isDuplicateKey(throwable)
+                        ? arrayAppend(id, field, value)
+                        : Observable.error(throwable));
+    }
+
+    @Override
+    public Observable<JsonObject> arrayAddUnique(String id, String path, Object value) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        String element = parameters.add(value);
+        return query(update + " SET " + path + " = array_put(" + path + ", " + element + ")"
+                + " RETURNING " + element + " as `value`, meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> arrayRemove(String id, String path, Object value) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        return query(update + " SET " + path + " = array_remove(" + path + ", " + parameters.add(value) + ")"
+                + " RETURNING meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<Boolean> arrayContains(String id, String path, Object value) {
+        Parameters parameters = new Parameters();
+        return query("SELECT meta(" + DOC + ").id FROM " + DBConfig.BUCKET_NAME + " " + DOC
+                + " USE KEYS " + parameters.add(id) + " WHERE array_contains(" + path + ", " + parameters.add(value) + ")", parameters)
+                .isEmpty().map(isEmpty -> !isEmpty);
+    }
+
+    @Override
+    public Observable<JsonObject> increment(String id, String path, long delta) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        return query(update + " SET " + path + " = " + path + " + " + parameters.add(delta)
+                + " RETURNING " + path + " as `" + lastSegment(path) + "`, meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> incrementFields(String id, String objectField, Map<String, Long> deltas) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        List<String> assignments = new ArrayList<>();
+        // assignments apply in order, so the object exists before its fields are set
+        assignments.add(objectField + " = IFMISSINGORNULL(" + objectField + ", {})");
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            String field = objectField + "." + identifier(delta.getKey());
+            assignments.add(field + " = IFMISSINGORNULL(" + field + ", 0) + " + parameters.add(delta.getValue()));
+        }
+        // the statement names the fields, its shape depends on the data so it isn't prepared
+        return adhocQuery(update + " SET " + String.join(", ", assignments) + " RETURNING meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> maxFields(String id, String objectField, Map<String, Long> values) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        List<String> assignments = new ArrayList<>();
+        // assignments apply in order, so the object exists before its fields are set
+        assignments.add(objectField + " = IFMISSINGORNULL(" + objectField + ", {})");
+        for (Map.Entry<String, Long> value : values.entrySet()) {
+            String field = objectField + "." + identifier(value.getKey());
+            assignments.add(field + " = GREATEST(IFMISSINGORNULL(" + field + ", 0), " + parameters.add(value.getValue()) + ")");
+        }
+        // the statement names the fields, its shape depends on the data so it isn't prepared
+        return adhocQuery(update + " SET " + String.join(", ", assignments) + " RETURNING meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> removeFields(String id, String objectField, Collection<String> names) {
+        Parameters parameters = new Parameters();
+        String update = update(id, parameters);
+        List<String> fields = new ArrayList<>();
+        for (String name : names) {
+            fields.add(objectField + "." + identifier(name));
+        }
+        // the statement names the fields, its shape depends on the data so it isn't prepared
+        return adhocQuery(update + " UNSET " + String.join(", ", fields) + " RETURNING meta(" + DOC + ").id", parameters);
+    }
+
+    @Override
+    public Observable<Long> counter(String id, long delta) {
+        return bucket.counter(id, delta).map(JsonLongDocument::content);
+    }
+
+    @Override
+    public Observable<Long> counter(String id, long delta, long initial) {
+        return bucket.counter(id, delta, initial).map(JsonLongDocument::content);
+    }
+
+    @Override
+    public Observable<Long> getCounter(String id) {
+        return bucket.get(id, JsonLongDocument.class).map(JsonLongDocument::content);
+    }
+
+    @Override
+    public Observable<JsonObject> list(Listing listing) {
+        Parameters parameters = new Parameters();
+        return query(listStatement(listing, parameters), parameters);
+    }
+
+    @Override
+    public Observable<JsonObject> explain(Listing listing) {
+        Parameters parameters = new Parameters();
+        return adhocQuery("EXPLAIN " + listStatement(listing, parameters), parameters);
+    }
+
+    @Override
+    public Observable<String> provisionIndexes(List<IndexCatalog.Index> indexes) {
+        return indexStates()
+                .concatMap(states -> Observable.from(indexes)
+                        .filter(index -> !states.containsKey(index.name()))
+                        .concatMap(index -> createDeferredIndex(index)
+                                .onErrorResumeNext(throwable -> {
+                                    Logger.info(String.format("DB: Failed to create index: %s, %s", index, throwable.getMessage()));
+                                    return Observable.empty();
+                                }))
+                        .toList())
+                .concatMap(created -> indexStates().concatMap(states -> {
+                    List<String> deferred = new ArrayList<>();
+                    states.forEach((name, state) -> {
+                        if (DEFERRED_INDEX_STATE.equals(state)) {
+                            deferred.add("`" + name + "`");
+                        }
+                    });
+                    if (deferred.isEmpty()) {
+                        return Observable.from(created);
+                    }
+                    Logger.info(String.format("DB: Building indexes: %s", deferred));
+                    return adhocQuery("BUILD INDEX ON " + DBConfig.BUCKET_NAME + "(" + String.join(", ", deferred) + ") USING GSI", new Parameters())
+                            .toList()
+                            .concatMap(built -> awaitOnline(indexes))
+                            .concatMap(online -> Observable.from(created));
+                }));
+    }
+
+    private Observable<String> createDeferredIndex(IndexCatalog.Index index) {
+        StringBuilder statement = new StringBuilder("CREATE INDEX `").append(index.name()).append("` ON ")
+                .append(DBConfig.BUCKET_NAME).append("(").append(String.join(", ", index.keys())).append(")");
+        if (index.idPrefix() != null) {
+            statement.append(" WHERE meta().id LIKE ").append(Expression.s(index.idPrefix() + "%"));
+        }
+        statement.append(" USING GSI WITH {\"defer_build\": true}");
+        Logger.info(String.format("DB: Creating index: %s", index));
+        return adhocQuery(statement.toString(), new Parameters()).toList().map(rows -> index.name());
+    }
+
+    /**
+     * @return an observable of the state of every index of the bucket by name.
+     */
+    private Observable<Map<String, String>> indexStates() {
+        Parameters parameters = new Parameters();
+        return adhocQuery("SELECT name, state FROM system:indexes WHERE keyspace_id = " + parameters.add(DBConfig.BUCKET_NAME), parameters)
+                .toMap(row -> row.getString("name"), row -> row.getString("state"));
+    }
+
+    /**
+     * Poll the index states until all the indexes are online.
+     */
+    private Observable<Map<String, String>> awaitOnline(List<IndexCatalog.Index> indexes) {
+        return Observable.interval(0, INDEX_POLL_INTERVAL, TimeUnit.MILLISECONDS)
+                .concatMap(tick -> indexStates())
+                .filter(states -> indexes.stream().allMatch(index -> ONLINE_INDEX_STATE.equals(states.get(index.name()))))
+                .first()
+                .timeout(INDEX_BUILD_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private String listStatement(Listing listing, Parameters parameters) {
+        String alias = listing.alias();
+        String sortKey = null;
+        if (listing.sortsByCounter()) {
+            sortKey = "ifmissingornull(sortCounter, " + alias + "." + listing.sortField() + ")";
+        } else if (listing.sortField() != null) {
+            sortKey = alias + "." + listing.sortField();
+        }
+        StringBuilder statement = new StringBuilder("SELECT meta(").append(alias).append(").id, ").append(alias);
+        if (sortKey != null) {
+            statement.append(", ").append(sortKey).append(" as ").append(Cursor.SORT_KEY);
+        }
+
+        if (listing.keysSourceId() != null) {
+            statement.append(" FROM ").append(DBConfig.BUCKET_NAME).append(" source USE KEYS ").append(parameters.add(listing.keysSourceId()))
+                    .append(" JOIN ").append(DBConfig.BUCKET_NAME).append(" ").append(alias)
+                    .append(" ON KEYS source.").append(listing.keysSourcePath());
+        } else {
+            statement.append(" FROM ").append(DBConfig.BUCKET_NAME).append(" ").append(alias);
+        }
+        if (listing.sortsByCounter()) {
+            statement.append(" LEFT JOIN ").append(DBConfig.BUCKET_NAME).append(" sortCounter ON KEYS (")
+                    .append(Expression.s(Counter.COUNTER_ID_PREFIX)).append(" || meta(").append(alias).append(").id || ")
+                    .append(Expression.s(Counter.COUNTER_ID_SEPARATOR + listing.sortField())).append(")");
+        }
+
+        List<String> conditions = new ArrayList<>();
+        if (listing.filtersByIdPrefix()) {
+            // the prefix is part of the statement so the planner can match it with the partial indexes
+            conditions.add("meta(" + alias + ").id LIKE " + Expression.s(listing.idPrefix() + "%"));
+        }
+        if (sortKey != null && !listing.sortsByCounter()) {
+            // lets the planner use an index on the sort field
+            conditions.add(sortKey + " IS NOT MISSING");
+        }
+        listing.equalFilters().forEach((field, value) -> conditions.add(alias + "." + field + " = " + parameters.add(value)));
+        if (listing.truthyField() != null) {
+            conditions.add(alias + "." + listing.truthyField());
+        }
+        if (listing.containsField() != null) {
+            conditions.add("lower(" + alias + "." + listing.containsField() + ") LIKE lower(" + parameters.add("%" + listing.containsText() + "%") + ")");
+        }
+        if (listing.after() != null) {
+            String id = "meta(" + alias + ").id > " + parameters.add(listing.after().id());
+            if (sortKey == null) {
+                conditions.add(id);
+            } else {
+                String sortValue = parameters.add(listing.after().sortValue());
+                conditions.add("(" + sortKey + (listing.isDescending() ? " < " : " > ") + sortValue
+                        + " OR (" + sortKey + " = " + sortValue + " AND " + id + "))");
+            }
+        }
+        if (!conditions.isEmpty()) {
+            statement.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        statement.append(" ORDER BY ");
+        if (sortKey != null) {
+            statement.append(sortKey).append(listing.isDescending() ? " DESC, " : " ASC, ");
+        }
+        statement.append("meta(").append(alias).append(").id ASC");
+        statement.append(" LIMIT ").append(parameters.add(listing.limit())).append(" OFFSET ").append(parameters.add(listing.offset()));
+        return statement.toString();
+    }
+
+    /**
+     * Execute a statement as a prepared statement, it must only be built from field paths and placeholders
+     * so every call with the same shape reuses the same plan.
+     */
+    private Observable<JsonObject> query(String statement, Parameters parameters) {
+        return bucket.query(DBConfig.statementCache().prepared(statement, parameters.values))
+                .flatMap(CouchbaseStorage::rowsOrErrors)
+                .map(row -> row.value());
+    }
+
+    /**
+     * Execute a statement without preparing it, for statements that only run once or whose shape depends on the data.
+     */
+    private Observable<JsonObject> adhocQuery(String statement, Parameters parameters) {
+        return bucket.query(N1qlQuery.parameterized(statement, parameters.values))
+                .flatMap(CouchbaseStorage::rowsOrErrors)
+                .map(row -> row.value());
+    }
+
+    /**
+     * @return the rows of a result as they stream in, then its first error so a failed statement isn't taken for one that matched nothing.
+     * The errors of a result only come once its rows ended, waiting for them first would buffer the whole response.
+     */
+    private static Observable<AsyncN1qlQueryRow> rowsOrErrors(AsyncN1qlQueryResult result) {
+        return result.rows()
+                .concatWith(result.errors()
+                        .flatMap(error -> Observable.<AsyncN1qlQueryRow>error(new CouchbaseException(error.toString()))));
+    }
+
+    private static boolean isDuplicateKey(Throwable throwable) {
+        return throwable instanceof CouchbaseException && throwable.getMessage() != null
+                && throwable.getMessage().toLowerCase().contains("duplicate key");
+    }
+
+    private static String update(String id, Parameters parameters) {
+        return "UPDATE " + DBConfig.BUCKET_NAME + " " + DOC + " USE KEYS " + parameters.add(id);
+    }
+
+    /**
+     * Escape a field name that comes from the data.
+     */
+    private static String identifier(String name) {
+        if (name.contains("`")) {
+            throw new IllegalArgumentException("Invalid field name: " + name);
+        }
+        return "`" + name + "`";
+    }
+
+    private static String lastSegment(String path) {
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Positional parameters of a statement, in the order they are added.
+     */
+    private static class Parameters {
+        private final JsonArray values = JsonArray.create();
+
+        /**
+         * @return the placeholder of the value in the statement.
+         */
+        String add(Object value) {
+            values.add(value);
+            return "$" + values.size();
+        }
+    }
+}
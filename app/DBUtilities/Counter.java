@@ -0,0 +1,109 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import helpers.Log;
+import rx.Observable;
+
+/**
+ * Counters of documents kept in their own atomic counter documents with ids counter::documentId::field,
+ * so counting never rewrites the counted document.
+ * The field inside the counted document keeps the value it had when its counter was created.
+ * Updates that don't need the new value go through the {@link CounterBuffer} and reads add the deltas it didn't write yet.
+ */
+class Counter {
+    static final String COUNTER_ID_PREFIX = "counter::";
+    static final String COUNTER_ID_SEPARATOR = "::";
+
+    static String counterId(String documentId, String field) {
+        return COUNTER_ID_PREFIX + documentId + COUNTER_ID_SEPARATOR + field;
+    }
+
+    /**
+     * Add a delta to a counter, the first time a counter is used it starts from the value of the field in the counted document.
+     * @param documentId the id of the counted document.
+     * @param field the path of the counted field, e.g. stats.contributions .
+     * @param delta the value to add, negative to subtract.
+     * @return an observable of json object containing the id of the counted document and the new value under the last segment of the field path,
+     * empty if the counted document doesn't exist.
+     */
+    static Observable<JsonObject> add(String documentId, String field, long delta) {
+        return add(DBConfig.storage(), documentId, field, delta);
+    }
+
+    static Observable<JsonObject> add(Storage storage, String documentId, String field, long delta) {
+        String counterId = counterId(documentId, field);
+
+        return storage.counter(counterId, delta)
+                .onErrorResumeNext(throwable -> {
+                    if (!(throwable instanceof DocumentDoesNotExistException)) {
+                        return Observable.error(throwable);
+                    }
+                    Log.info(Log.DB, "Creating counter with ID: %s", counterId);
+                    return storage.get(documentId).flatMap(document -> {
+                        Object current = MemoryStorage.valueAt(document.content(), field);
+                        long initial = (current instanceof Number ? ((Number) current).longValue() : 0) + delta;
+                        return storage.counter(counterId, delta, initial);
+                    });
+                })
+                .map(value -> JsonObject.create().put("id", documentId).put(lastSegment(field), MemoryStorage.number(value)));
+    }
+
+    /**
+     * Add a delta to a counter through the counter buffer, or directly if buffering is disabled.
+     * @param documentId the id of the counted document.
+     * @param field the path of the counted field.
+     * @param delta the value to add, negative to subtract.
+     * @return an observable of json object containing the id of the counted document and the delta of the counter that is not written yet under "pending".
+     */
+    static Observable<JsonObject> addBuffered(String documentId, String field, long delta) {
+        CounterBuffer buffer = DBConfig.counterBuffer();
+        if (!buffer.isEnabled()) {
+            return add(documentId, field, delta);
+        }
+        return Observable.defer(() -> Observable.just(JsonObject.create().put("id", documentId)
+                .put("pending", MemoryStorage.number(buffer.add(documentId, field, delta)))));
+    }
+
+    /**
+     * Put the current values of the counters of a document into it, including the deltas waiting in the counter buffer.
+     * Fields without a counter or a pending delta keep their stored value.
+     * @param documentId the id of the counted document.
+     * @param document the content of the document, changed in place.
+     * @param fields the paths of the counted fields.
+     * @return an observable of the document.
+     */
+    static Observable<JsonObject> merge(String documentId, JsonObject document, String... fields) {
+        Storage storage = DBConfig.storage();
+        CounterBuffer buffer = DBConfig.counterBuffer();
+
+        return Observable.from(fields)
+                .flatMap(field -> storage.getCounter(counterId(documentId, field)).defaultIfEmpty(null)
+                        .doOnNext(value -> {
+                            long pendingDelta = buffer.pendingDelta(documentId, field);
+                            if (value == null && pendingDelta == 0) {
+                                return;
+                            }
+                            Object stored = MemoryStorage.valueAt(document, field);
+                            long current = value != null ? value : stored instanceof Number ? ((Number) stored).longValue() : 0;
+                            parentOf(document, field).put(lastSegment(field), MemoryStorage.number(Math.max(0, current + pendingDelta)));
+                        }))
+                .toList().map(values -> document);
+    }
+
+    private static JsonObject parentOf(JsonObject document, String path) {
+        JsonObject current = document;
+        String[] segments = path.split("\\.");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (current.getObject(segments[i]) == null) {
+                current.put(segments[i], JsonObject.create());
+            }
+            current = current.getObject(segments[i]);
+        }
+        return current;
+    }
+
+    private static String lastSegment(String path) {
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+}
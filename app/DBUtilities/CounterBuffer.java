@@ -0,0 +1,236 @@
+package DBUtilities;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.time.Delay;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.util.retry.RetryBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import rx.Observable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates counter deltas in memory and writes them to the counter documents in one mutation per counter,
+ * every flush interval or as soon as the pending delta of a counter reaches the flush threshold.
+ * Deltas of a failed flush are put back and written with the next one.
+ * A counter with nothing pending is removed at its next flush so counters that stopped changing don't stay in memory.
+ */
+class CounterBuffer {
+    private static final String FLUSH_INTERVAL_CONFIG_KEY = "counters.flush-interval";
+    private static final String FLUSH_THRESHOLD_CONFIG_KEY = "counters.flush-threshold";
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    private static final long DEFAULT_FLUSH_THRESHOLD = 50;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 5000;
+
+    private final Map<String, PendingCounter> pendingCounters = new ConcurrentHashMap<>();
+    private final long flushInterval;
+    private final long flushThreshold;
+    private final Storage storage;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFlush;
+
+    CounterBuffer(long flushInterval, long flushThreshold, Storage storage) {
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+        this.storage = storage;
+    }
+
+    /**
+     * Create a buffer configured by counters.flush-interval (in milliseconds, 0 disables buffering) and counters.flush-threshold.
+     * @param storage the storage the counters are written to.
+     */
+    static CounterBuffer fromConfig(Storage storage) {
+        Config config = ConfigFactory.load();
+        long interval = config.hasPath(FLUSH_INTERVAL_CONFIG_KEY) ? config.getLong(FLUSH_INTERVAL_CONFIG_KEY) : DEFAULT_FLUSH_INTERVAL;
+        long threshold = config.hasPath(FLUSH_THRESHOLD_CONFIG_KEY) ? config.getLong(FLUSH_THRESHOLD_CONFIG_KEY) : DEFAULT_FLUSH_THRESHOLD;
+        return new CounterBuffer(interval, threshold, storage);
+    }
+
+    boolean isEnabled() {
+        return flushInterval > 0;
+    }
+
+    synchronized void start() {
+        if (!isEnabled() || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "counter-buffer-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledFlush = scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        Logger.info(String.format("DB: Counter buffer started, flushing every %s ms or at %s pending", flushInterval, flushThreshold));
+    }
+
+    /**
+     * Stop the scheduled flushes and write every pending delta, at most a few seconds.
+     * The flushes in flight are waited for and the deltas of failed flushes, put back, are flushed again until nothing is pending.
+     * The deltas still pending at the timeout are dropped and logged.
+     */
+    synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduledFlush.cancel(false);
+        scheduler.shutdown();
+        scheduler = null;
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_FLUSH_TIMEOUT;
+        Logger.info(String.format("DB: Counter buffer stopping, flushing %s pending deltas", pendingDeltas()));
+        while (!pendingCounters.isEmpty() && System.currentTimeMillis() < deadline) {
+            for (String key : pendingCounters.keySet()) {
+                try {
+                    // a counter whose flush is in flight isn't flushed again before the flush ends
+                    flush(key).timeout(Math.max(deadline - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS)
+                            .toBlocking().lastOrDefault(null);
+                } catch (RuntimeException e) {
+                    Logger.info(String.format("DB: Failed to flush counter: %s on shutdown, %s", key, e.getMessage()));
+                }
+            }
+            if (!pendingCounters.isEmpty()) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        for (Map.Entry<String, PendingCounter> entry : pendingCounters.entrySet()) {
+            PendingCounter pendingCounter = entry.getValue();
+            long delta = pendingCounter.delta.sum();
+            if (delta != 0) {
+                Logger.error(String.format("DB: Counter buffer stopped, dropped %s of counter: %s", delta, entry.getKey()));
+            }
+            if (pendingCounter.flushing.get()) {
+                Logger.error(String.format("DB: Counter buffer stopped, %s of counter: %s may not be written, its flush didn't end",
+                        pendingCounter.writing, entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Add a delta to the pending delta of a counter.
+     * @param documentId the id of the counted document.
+     * @param field the path of the counted field.
+     * @param delta the value to add, negative to subtract.
+     * @return the pending delta of the counter after adding.
+     */
+    long add(String documentId, String field, long delta) {
+        String key = Counter.counterId(documentId, field);
+        PendingCounter pendingCounter;
+        while (true) {
+            pendingCounter = pendingCounters.computeIfAbsent(key, k -> new PendingCounter(documentId, field));
+            synchronized (pendingCounter) {
+                // a counter is removed once it has nothing pending, it then gets a new one
+                if (pendingCounter.removed) {
+                    continue;
+                }
+                pendingCounter.delta.add(delta);
+                pendingCounter.updates.increment();
+            }
+            break;
+        }
+
+        long pendingDelta = pendingCounter.delta.sum();
+        if (Math.abs(pendingDelta) >= flushThreshold) {
+            flush(key).subscribe(ignored -> {}, throwable -> {});
+        }
+        return pendingDelta;
+    }
+
+    /**
+     * @return the delta of a counter that is not written yet.
+     */
+    long pendingDelta(String documentId, String field) {
+        PendingCounter pendingCounter = pendingCounters.get(Counter.counterId(documentId, field));
+        return pendingCounter == null ? 0 : pendingCounter.delta.sum();
+    }
+
+    /**
+     * @return the number of counter updates that are not written yet.
+     */
+    long pendingDeltas() {
+        long pending = 0;
+        for (PendingCounter pendingCounter : pendingCounters.values()) {
+            pending += pendingCounter.updates.sum();
+        }
+        return pending;
+    }
+
+    private void flush() {
+        for (String key : pendingCounters.keySet()) {
+            flush(key).subscribe(ignored -> {}, throwable -> {});
+        }
+    }
+
+    /**
+     * Write the pending delta of a counter, only one write per counter is in flight at a time.
+     * The written delta is subtracted instead of resetting the counter so concurrent adds are never lost.
+     * A counter with nothing pending is removed.
+     */
+    private Observable<?> flush(String key) {
+        PendingCounter pendingCounter = pendingCounters.get(key);
+        if (pendingCounter == null || !pendingCounter.flushing.compareAndSet(false, true)) {
+            return Observable.empty();
+        }
+        long updates = pendingCounter.updates.sum();
+        long delta = pendingCounter.delta.sum();
+        pendingCounter.updates.add(-updates);
+        pendingCounter.delta.add(-delta);
+        if (delta == 0) {
+            synchronized (pendingCounter) {
+                if (pendingCounter.delta.sum() == 0 && pendingCounter.updates.sum() == 0) {
+                    pendingCounter.removed = true;
+                    pendingCounters.remove(key, pendingCounter);
+                }
+            }
+            pendingCounter.flushing.set(false);
+            return Observable.empty();
+        }
+
+        pendingCounter.writing = delta;
+        return Counter.add(storage, pendingCounter.documentId, pendingCounter.field, delta)
+                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
+                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
+                .doOnError(throwable -> {
+                    Logger.info(String.format("DB: Failed to flush %s to counter: %s, keeping it for the next flush", delta, key));
+                    pendingCounter.delta.add(delta);
+                    pendingCounter.updates.add(updates);
+                })
+                .doOnTerminate(() -> {
+                    pendingCounter.writing = 0;
+                    pendingCounter.flushing.set(false);
+                });
+    }
+
+    /**
+     * The pending delta of a counter, writing is the delta of the flush in flight
+     * and removed is true once it was dropped from the pending counters.
+     */
+    private static class PendingCounter {
+        private final String documentId;
+        private final String field;
+        private final LongAdder delta = new LongAdder();
+        private final LongAdder updates = new LongAdder();
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        private volatile long writing;
+        private boolean removed;
+
+        PendingCounter(String documentId, String field) {
+            this.documentId = documentId;
+            this.field = field;
+        }
+    }
+}
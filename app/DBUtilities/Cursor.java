@@ -0,0 +1,70 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a sorted listing, the sort key and the id of the last listed document encoded into an opaque string.
+ * The next page starts right after that document, so the DB seeks to it instead of skipping the previous pages.
+ */
+public class Cursor {
+    /**
+     * Field added to every listed row holding the cursor of the page that starts after it.
+     */
+    public static final String CURSOR_KEY = "cursor";
+    static final String SORT_KEY = "sort_key";
+
+    private final Object sortValue;
+    private final String id;
+
+    private Cursor(Object sortValue, String id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    /**
+     * @param cursor a cursor returned with a previous page, null or empty for the first page.
+     * @return the decoded cursor, null for the first page.
+     * @throws IllegalArgumentException if the cursor wasn't created by {@link #encode(Object, String)}.
+     */
+    static Cursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonArray position = JsonArray.fromJson(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (position.size() != 2 || !(position.get(1) instanceof String)) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Cursor(position.get(0), position.getString(1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    static String encode(Object sortValue, String id) {
+        String position = JsonArray.create().add(sortValue).add(id).toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Add the cursor of the page that starts after a listed row to the document made out of it.
+     * @param row a row returned by {@link Storage#list(Listing)}.
+     * @param document the document returned to the caller.
+     * @return the document.
+     */
+    static JsonObject attach(JsonObject row, JsonObject document) {
+        return document.put(CURSOR_KEY, encode(row.get(SORT_KEY), row.getString("id")));
+    }
+
+    Object sortValue() {
+        return sortValue;
+    }
+
+    String id() {
+        return id;
+    }
+}
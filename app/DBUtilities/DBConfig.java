@@ -1,14 +1,14 @@
 package DBUtilities;
 
-import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.java.AsyncBucket;
-import com.couchbase.client.java.Cluster;
-import com.couchbase.client.java.CouchbaseCluster;
 import com.couchbase.client.java.document.json.JsonObject;
-import com.couchbase.client.java.query.AsyncN1qlQueryRow;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import play.Logger;
 import rx.Observable;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 
 public class DBConfig {
 
@@ -22,41 +22,168 @@ public class DBConfig {
     public static final String NO_SUCH_PROJECT = "no_such_project";
     public static final String BUCKET_NAME = "default";
     private static final String ID_JSON_KEY = "id";
-    public static AsyncBucket bucket;
-    private static Cluster cluster;
+    private static final String BACKEND_CONFIG_KEY = "storage.backend";
+    private static final String MEMORY_BACKEND = "memory";
+    private static final String PROVISION_INDEXES_CONFIG_KEY = "storage.indexes.provision";
+    private static final String FAIL_ON_PRIMARY_SCAN_CONFIG_KEY = "storage.indexes.fail-on-primary-scan";
+    private static final long INDEX_RECONCILE_TIMEOUT = 10 * 60 * 1000;
+    private static final Storage storage = createStorage();
+    private static final CounterBuffer counterBuffer = CounterBuffer.fromConfig(storage);
+    private static final StatementCache statementCache = StatementCache.fromConfig();
+    private static final SideEffectQueue sideEffects = SideEffectQueue.fromConfig();
+    private static final TimeSeries timeSeries = TimeSeries.fromConfig();
+    private static final HedgedReads hedgedReads = HedgedReads.fromConfig();
+    private static final MultiGet multiGet = MultiGet.fromConfig();
 
     /**
-     * Initialize the Couchbase cluster and open the app's bucket.
+     * Open the storage backend chosen by storage.backend in the application config, a Couchbase cluster by default.
      *
      * @return DBConfig.OPEN_BUCKET_OK . if it succeeds and DBConfig.OPEN_BUCKET_ERROR} if it fails.
      */
     public static int initDB() {
         Logger.info("DB: Trying to initialize DB");
-        if (bucket != null && !bucket.isClosed()) {
-            Logger.info("DB: DB already initialized");
+        int status = storage.open();
+        if (status == OPEN_BUCKET_OK) {
+            status = reconcileIndexes();
+        }
+        if (status == OPEN_BUCKET_OK) {
+            counterBuffer.start();
+            timeSeries.start();
+            CategoryCatalog.reload()
+                    .onErrorResumeNext(throwable -> {
+                        Logger.info("DB: Failed to load the category catalog, categories will be read from the DB");
+                        return Observable.just(0);
+                    })
+                    // the search index needs the category names
+                    .concatMap(categories -> SearchIndex.rebuild())
+                    .subscribe(count -> {
+                    }, throwable -> Logger.info("DB: Failed to build the search index, searches will query the DB"));
+            Rankings.rebuild()
+                    .subscribe(count -> {
+                    }, throwable -> Logger.info("DB: Failed to build the rankings, project listings will query the DB"));
+            EnrollmentIndex.rebuild()
+                    .onErrorResumeNext(throwable -> {
+                        Logger.info("DB: Failed to build the enrollment index, enrollments will be checked in the DB");
+                        return Observable.error(throwable);
+                    })
+                    // the enrolled projects lists need the enrollments
+                    .concatMap(users -> UserProjects.rebuild())
+                    .subscribe(count -> {
+                    }, throwable -> Logger.info("DB: Failed to build the user project lists, user projects listings will query the DB"));
+        }
+        return status;
+    }
+
+    /**
+     * Provision the indexes of the {@link IndexCatalog} if storage.indexes.provision is on.
+     * With storage.indexes.fail-on-primary-scan on, wait for them and fail if a listing would still do a primary scan,
+     * otherwise reconcile in the background and only log the listings doing primary scans.
+     *
+     * @return DBConfig.OPEN_BUCKET_OK . or DBConfig.OPEN_BUCKET_ERROR if a listing does a primary scan and that isn't allowed.
+     */
+    private static int reconcileIndexes() {
+        Config config = ConfigFactory.load();
+        if (config.hasPath(PROVISION_INDEXES_CONFIG_KEY) && !config.getBoolean(PROVISION_INDEXES_CONFIG_KEY)) {
+            return OPEN_BUCKET_OK;
+        }
+        if (!config.hasPath(FAIL_ON_PRIMARY_SCAN_CONFIG_KEY) || !config.getBoolean(FAIL_ON_PRIMARY_SCAN_CONFIG_KEY)) {
+            IndexCatalog.reconcile().subscribe(primaryScans -> {
+            }, throwable -> Logger.info(String.format("DB: Failed to reconcile the index catalog, %s", throwable.getMessage())));
             return OPEN_BUCKET_OK;
         }
         try {
-            cluster = CouchbaseCluster.create();
-            bucket = cluster.openBucket().async();
-            Logger.info("DB: DB initialized");
+            List<String> primaryScans = IndexCatalog.reconcile().timeout(INDEX_RECONCILE_TIMEOUT, TimeUnit.MILLISECONDS).toBlocking().single();
+            if (!primaryScans.isEmpty()) {
+                Logger.error(String.format("DB: Listings doing primary scans: %s", primaryScans));
+                return OPEN_BUCKET_ERROR;
+            }
             return OPEN_BUCKET_OK;
-        } catch (CouchbaseException e) {
-            Logger.info("DB: DB to initialize");
-            return OPEN_BUCKET_ERROR;
-        } catch (Exception e) {
-            Logger.info("DB: DB failed to initialize");
+        } catch (RuntimeException e) {
+            Logger.error(String.format("DB: Failed to reconcile the index catalog, %s", e.getMessage()));
             return OPEN_BUCKET_ERROR;
         }
     }
 
-    public static Observable<JsonObject> embedIdAndCategoryIntoProject(String projectId, AsyncN1qlQueryRow queryRow) {
-        String categoryId = queryRow.value().getObject("project").getString("category_id");
-        JsonObject categoryObject = queryRow.value().getObject("category");
-        JsonObject userCategoryObject = JsonObject.create()
-                .put("name", categoryObject.getString("name")).put("category_id", categoryId);
-        JsonObject projectObject = queryRow.value().getObject("project").removeKey("category_id");
-        return Observable.just(projectObject.put("id", projectId).put("category", userCategoryObject));
+    /**
+     * Wait for the queued side effects, write the pending counter deltas and time series counts and close the storage backend.
+     */
+    public static void closeDB() {
+        Logger.info("DB: Closing DB");
+        sideEffects.stop();
+        counterBuffer.stop();
+        timeSeries.stop();
+        storage.close();
+    }
+
+    /**
+     * @return the number of counter updates waiting in the counter buffer.
+     */
+    public static long pendingCounterDeltas() {
+        return counterBuffer.pendingDeltas();
+    }
+
+    /**
+     * @return the share of N1QL executions that reused an already prepared statement.
+     */
+    public static double statementCacheHitRate() {
+        return statementCache.hitRate();
+    }
+
+    /**
+     * @return the stage running the DB writes that follow the requests, with its queue depth and lag.
+     */
+    public static SideEffectQueue sideEffects() {
+        return sideEffects;
+    }
+
+    /**
+     * @return the hedged reads, with their hedge and win rates per operation.
+     */
+    public static HedgedReads hedgedReads() {
+        return hedgedReads;
+    }
+
+    static Storage storage() {
+        return storage;
+    }
+
+    static CounterBuffer counterBuffer() {
+        return counterBuffer;
+    }
+
+    static TimeSeries timeSeries() {
+        return timeSeries;
+    }
+
+    static StatementCache statementCache() {
+        return statementCache;
+    }
+
+    static MultiGet multiGet() {
+        return multiGet;
+    }
+
+    private static Storage createStorage() {
+        Config config = ConfigFactory.load();
+        if (config.hasPath(BACKEND_CONFIG_KEY) && MEMORY_BACKEND.equals(config.getString(BACKEND_CONFIG_KEY))) {
+            Logger.info("DB: Using the in-memory storage backend");
+            return new MemoryStorage();
+        }
+        return new CouchbaseStorage();
+    }
+
+    /**
+     * Add the id and the category taken from the category catalog to a project.
+     *
+     * @return an observable of the project, empty if its category doesn't exist.
+     */
+    public static Observable<JsonObject> embedIdAndCategoryIntoProject(String projectId, JsonObject projectObject) {
+        String categoryId = projectObject.getString("category_id");
+        return CategoryCatalog.lookup(categoryId).map(categoryObject -> {
+            JsonObject userCategoryObject = JsonObject.create()
+                    .put("name", categoryObject.getString("name")).put("category_id", categoryId);
+            return projectObject.removeKey("category_id").put("id", projectId).put("category", userCategoryObject);
+        });
     }
 
     static String stripIdFromPrefix(String id) {
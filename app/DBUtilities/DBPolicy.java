@@ -0,0 +1,347 @@
+package DBUtilities;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import rx.Observable;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retry, deadline and circuit breaking policy of a class of DB operations, applied to their observables with compose.
+ * An operation has deadline milliseconds, its retries included, to emit its first item: an attempt times out when it waits
+ * for its first item longer than the time that was left before the deadline when it started. Once an item was emitted
+ * the operation streams at the pace of its subscriber and isn't timed out, a slow client doesn't fail a listing.
+ * An attempt failing transiently, with a temporary failure, backpressure or a timeout, before emitting any item is retried
+ * at most max-retries times after an exponential backoff with full jitter, so the retries of concurrent operations don't hit
+ * the cluster together. The classes of operations that aren't idempotent don't retry timeouts: a timed out attempt may have
+ * been applied and repeating it would, for instance, add to a counter twice. An operation failing after emitting items isn't retried, the retry would emit them again.
+ * A retry is only made if it starts before the deadline and the retry budget, shared by all the classes, allows it:
+ * every operation adds ratio of a retry to the budget and every retry takes one, so once its reserve is spent
+ * there are at most ratio retries per operation.
+ * An operation still failing transiently after its retries counts against the circuit breaker of its class,
+ * failure-threshold failures in a row open it and the operations of the class fail fast for open-time milliseconds,
+ * then a single operation is let through and closes it again if it succeeds.
+ */
+public class DBPolicy {
+    private static final String POLICIES_CONFIG_KEY = "storage.policies";
+    private static final String DEADLINE_CONFIG_KEY = "deadline";
+    private static final String MAX_RETRIES_CONFIG_KEY = "max-retries";
+    private static final String BASE_DELAY_CONFIG_KEY = "base-delay";
+    private static final String MAX_DELAY_CONFIG_KEY = "max-delay";
+    private static final String FAILURE_THRESHOLD_CONFIG_KEY = POLICIES_CONFIG_KEY + ".circuit-breaker.failure-threshold";
+    private static final String OPEN_TIME_CONFIG_KEY = POLICIES_CONFIG_KEY + ".circuit-breaker.open-time";
+    private static final String BUDGET_RATIO_CONFIG_KEY = POLICIES_CONFIG_KEY + ".retry-budget.ratio";
+    private static final String BUDGET_RESERVE_CONFIG_KEY = POLICIES_CONFIG_KEY + ".retry-budget.reserve";
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long DEFAULT_BASE_DELAY = 50;
+    private static final long DEFAULT_MAX_DELAY = 500;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 20;
+    private static final long DEFAULT_OPEN_TIME = 5000;
+    private static final double DEFAULT_BUDGET_RATIO = 0.2;
+    private static final int DEFAULT_BUDGET_RESERVE = 100;
+
+    private static final RetryBudget budget = RetryBudget.fromConfig();
+
+    /**
+     * Getting documents or parts of them by id.
+     */
+    public static final DBPolicy READ = fromConfig("read", 1000, true);
+
+    /**
+     * Inserting, replacing, updating and removing documents, when writing them again has the same effect.
+     */
+    public static final DBPolicy WRITE = fromConfig("write", 1000, true);
+
+    /**
+     * Writes that can't be repeated, like appending to an array or inserting under an id picked again on a conflict.
+     */
+    public static final DBPolicy WRITE_ONCE = fromConfig("write-once", 1000, false);
+
+    /**
+     * Listings, searches and the pages served by the indexes, with the documents they embed.
+     */
+    public static final DBPolicy QUERY = fromConfig("query", 3000, true);
+
+    /**
+     * Adding to the counters and tallies, which can't be repeated either.
+     */
+    public static final DBPolicy COUNTER = fromConfig("counter", 500, false);
+
+    private final String name;
+    private final boolean idempotent;
+    private final long deadline;
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int failureThreshold;
+    private final long openTime;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder refusedRetries = new LongAdder();
+    private final LongAdder deadlinesExceeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder trips = new LongAdder();
+
+    DBPolicy(String name, boolean idempotent, long deadline, int maxRetries, long baseDelay, long maxDelay, int failureThreshold, long openTime) {
+        this.name = name;
+        this.idempotent = idempotent;
+        this.deadline = deadline;
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    /**
+     * Create the policy of a class configured by storage.policies.name.deadline, max-retries, base-delay and max-delay,
+     * and by storage.policies.circuit-breaker.failure-threshold and open-time.
+     * @param idempotent false if the operations of the class can't be repeated, their timeouts are then not retried.
+     */
+    static DBPolicy fromConfig(String name, long defaultDeadline, boolean idempotent) {
+        Config config = ConfigFactory.load();
+        String prefix = POLICIES_CONFIG_KEY + "." + name + ".";
+        return new DBPolicy(name, idempotent,
+                config.hasPath(prefix + DEADLINE_CONFIG_KEY) ? config.getLong(prefix + DEADLINE_CONFIG_KEY) : defaultDeadline,
+                config.hasPath(prefix + MAX_RETRIES_CONFIG_KEY) ? config.getInt(prefix + MAX_RETRIES_CONFIG_KEY) : DEFAULT_MAX_RETRIES,
+                config.hasPath(prefix + BASE_DELAY_CONFIG_KEY) ? config.getLong(prefix + BASE_DELAY_CONFIG_KEY) : DEFAULT_BASE_DELAY,
+                config.hasPath(prefix + MAX_DELAY_CONFIG_KEY) ? config.getLong(prefix + MAX_DELAY_CONFIG_KEY) : DEFAULT_MAX_DELAY,
+                config.hasPath(FAILURE_THRESHOLD_CONFIG_KEY) ? config.getInt(FAILURE_THRESHOLD_CONFIG_KEY) : DEFAULT_FAILURE_THRESHOLD,
+                config.hasPath(OPEN_TIME_CONFIG_KEY) ? config.getLong(OPEN_TIME_CONFIG_KEY) : DEFAULT_OPEN_TIME);
+    }
+
+    /**
+     * Apply the policy to an operation, every subscription is a new operation with its own deadline and retries.
+     * Used as observable.compose(DBPolicy.READ::apply) .
+     *
+     * @param operation the observable of the operation, subscribed to again for every retry.
+     * @return an observable of the operation failing with a CircuitOpenException while the circuit breaker is open.
+     */
+    <T> Observable<T> apply(Observable<T> operation) {
+        return Observable.defer(() -> {
+            if (!allow()) {
+                rejected.increment();
+                return Observable.error(new CircuitOpenException(String.format("DB: %s operations are failing fast, the circuit breaker is open", name)));
+            }
+            operations.increment();
+            budget.deposit();
+
+            long deadlineAt = System.currentTimeMillis() + deadline;
+            AtomicInteger attempts = new AtomicInteger();
+            AtomicBoolean settled = new AtomicBoolean();
+            AtomicBoolean emitted = new AtomicBoolean();
+            return Observable.defer(() -> operation
+                    .timeout(() -> Observable.timer(Math.max(0, deadlineAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS),
+                            item -> Observable.<Long>never())
+                    .doOnNext(item -> emitted.set(true)))
+                    .retryWhen(errors -> errors.flatMap(throwable -> {
+                        int attempt = attempts.incrementAndGet();
+                        long delay = backoff(attempt);
+                        if (!isTransient(throwable) || (!idempotent && isTimeout(throwable)) || emitted.get() || attempt > maxRetries
+                                || System.currentTimeMillis() + delay >= deadlineAt) {
+                            return Observable.<Long>error(throwable);
+                        }
+                        if (!budget.withdraw()) {
+                            refusedRetries.increment();
+                            return Observable.<Long>error(throwable);
+                        }
+                        retries.increment();
+                        return Observable.timer(delay, TimeUnit.MILLISECONDS);
+                    }))
+                    .doOnError(throwable -> {
+                        if (throwable instanceof java.util.concurrent.TimeoutException) {
+                            deadlinesExceeded.increment();
+                        }
+                        if (settled.compareAndSet(false, true)) {
+                            record(isTransient(throwable));
+                        }
+                    })
+                    .doOnCompleted(() -> {
+                        if (settled.compareAndSet(false, true)) {
+                            record(false);
+                        }
+                    })
+                    .doOnUnsubscribe(() -> {
+                        // unsubscribed before the operation ended, it doesn't tell whether the cluster is healthy
+                        if (settled.compareAndSet(false, true)) {
+                            state.compareAndSet(State.HALF_OPEN, State.OPEN);
+                        }
+                    });
+        });
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the number of operations let through.
+     */
+    public long operations() {
+        return operations.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of retries not made because the retry budget was spent.
+     */
+    public long refusedRetries() {
+        return refusedRetries.sum();
+    }
+
+    /**
+     * @return the number of attempts that timed out waiting for their first item at the deadline of their operation.
+     */
+    public long deadlinesExceeded() {
+        return deadlinesExceeded.sum();
+    }
+
+    /**
+     * @return the number of operations that failed fast while the circuit breaker was open.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the number of times the circuit breaker opened.
+     */
+    public long trips() {
+        return trips.sum();
+    }
+
+    public boolean isOpen() {
+        return state.get() != State.CLOSED;
+    }
+
+    /**
+     * @return true if an operation can run: the circuit breaker is closed, or its open time passed and it is the trial operation.
+     */
+    private boolean allow() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= openTime && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Record how an operation ended.
+     *
+     * @param failed true if it failed transiently after its retries.
+     */
+    private void record(boolean failed) {
+        if (!failed) {
+            consecutiveFailures.set(0);
+            if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                Logger.info(String.format("DB: Circuit breaker of %s operations closed", name));
+            }
+            return;
+        }
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            trip();
+        }
+    }
+
+    private void trip() {
+        State current = state.get();
+        if (current != State.OPEN && state.compareAndSet(current, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            consecutiveFailures.set(0);
+            trips.increment();
+            Logger.warn(String.format("DB: Circuit breaker of %s operations opened, failing fast for %s ms", name, openTime));
+        }
+    }
+
+    /**
+     * @return the delay before a retry, picked at random up to baseDelay * 2 ^ (attempt - 1) capped at maxDelay.
+     */
+    long backoff(int attempt) {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 20));
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    private static boolean isTransient(Throwable throwable) {
+        return throwable instanceof TemporaryFailureException
+                || throwable instanceof BackpressureException
+                || isTimeout(throwable);
+    }
+
+    private static boolean isTimeout(Throwable throwable) {
+        return throwable instanceof TimeoutException || throwable instanceof java.util.concurrent.TimeoutException;
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Thrown by the operations of a class while its circuit breaker is open.
+     */
+    public static class CircuitOpenException extends CouchbaseException {
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Retry tokens shared by all the classes, in thousandths of a retry so that a ratio of a retry can be added.
+     */
+    static class RetryBudget {
+        private static final long TOKEN = 1000;
+        private final AtomicLong tokens;
+        private final long perOperation;
+        private final long capacity;
+
+        RetryBudget(double ratio, int reserve) {
+            this.perOperation = (long) (ratio * TOKEN);
+            this.capacity = reserve * TOKEN;
+            this.tokens = new AtomicLong(capacity);
+        }
+
+        static RetryBudget fromConfig() {
+            Config config = ConfigFactory.load();
+            return new RetryBudget(
+                    config.hasPath(BUDGET_RATIO_CONFIG_KEY) ? config.getDouble(BUDGET_RATIO_CONFIG_KEY) : DEFAULT_BUDGET_RATIO,
+                    config.hasPath(BUDGET_RESERVE_CONFIG_KEY) ? config.getInt(BUDGET_RESERVE_CONFIG_KEY) : DEFAULT_BUDGET_RESERVE);
+        }
+
+        void deposit() {
+            tokens.accumulateAndGet(perOperation, (available, added) -> Math.min(capacity, available + added));
+        }
+
+        /**
+         * @return true if a retry token was taken.
+         */
+        boolean withdraw() {
+            long available;
+            do {
+                available = tokens.get();
+                if (available < TOKEN) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(available, available - TOKEN));
+            return true;
+        }
+    }
+}
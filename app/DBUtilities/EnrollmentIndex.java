@@ -0,0 +1,156 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-local index of the enrollments, so enrollment checks don't query the DB.
+ * Every project keeps a concurrent set of its enrollees and every user a concurrent set of its enrolled projects,
+ * membership, per-project enrollee counts and per-user enrolled projects are all answered in constant time
+ * and an enrollment only updates the sets of its user and project.
+ * The index is built from the users enrolled projects when the DB is initialized and kept up to date by the enroll and withdraw writes.
+ * Another process may have enrolled or withdrawn a user, so a user missing from a project is confirmed against the DB,
+ * and so is a user found in it when the enrolled projects of the user were last read from the DB more than max-age milliseconds ago.
+ */
+class EnrollmentIndex {
+    private static final String ENROLLED_PROJECTS_KEY = "enrolled_projects";
+    private static final String MAX_AGE_CONFIG_KEY = "enrollments.index.max-age";
+    private static final long DEFAULT_MAX_AGE = 30000;
+
+    private static final Map<String, Set<String>> projectEnrollees = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> enrolledProjects = new ConcurrentHashMap<>();
+    private static final Map<String, Long> confirmedAt = new ConcurrentHashMap<>();
+    private static final long maxAge = maxAge();
+
+    /**
+     * Index the enrolled projects of all the users in the DB.
+     * @return an observable of the number of indexed users.
+     */
+    static Observable<Integer> rebuild() {
+        return DBConfig.storage().list(Listing.of("user").whereIdHasPrefix().page(0, Integer.MAX_VALUE))
+                .doOnNext(row -> replace(row.getString("id"), projectIds(row.getObject("user"))))
+                .count()
+                .doOnNext(count -> Logger.info(String.format("DB: Enrollment index built with %s users", count)));
+    }
+
+    /**
+     * @return an observable of true if the user is enrolled in the project, false if not or if the user doesn't exist.
+     */
+    static Observable<Boolean> isEnrolled(String userId, String projectId) {
+        if (contains(userId, projectId) && isConfirmed(userId)) {
+            return Observable.just(true);
+        }
+        return DBConfig.storage().lookup(userId, ENROLLED_PROJECTS_KEY)
+                .map(user -> {
+                    Set<String> projects = projectIds(user);
+                    replace(userId, projects);
+                    return projects.contains(projectId);
+                })
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * @return the number of users enrolled in a project, as known by this process.
+     */
+    static int enrolleesCount(String projectId) {
+        Set<String> enrollees = projectEnrollees.get(projectId);
+        return enrollees == null ? 0 : enrollees.size();
+    }
+
+    /**
+     * @return the projects a user is enrolled in, as known by this process.
+     */
+    static Set<String> enrolledProjects(String userId) {
+        Set<String> projects = enrolledProjects.get(userId);
+        return projects == null ? Collections.emptySet() : Collections.unmodifiableSet(projects);
+    }
+
+    static void enroll(String userId, String projectId) {
+        Set<String> projects = projectsOf(userId);
+        synchronized (projects) {
+            projects.add(projectId);
+            projectEnrollees.computeIfAbsent(projectId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+            UserProjects.enroll(userId, projectId);
+        }
+    }
+
+    static void withdraw(String userId, String projectId) {
+        Set<String> projects = projectsOf(userId);
+        synchronized (projects) {
+            projects.remove(projectId);
+            Set<String> enrollees = projectEnrollees.get(projectId);
+            if (enrollees != null) {
+                enrollees.remove(userId);
+            }
+            UserProjects.withdraw(userId, projectId);
+        }
+    }
+
+    private static boolean contains(String userId, String projectId) {
+        Set<String> enrollees = projectEnrollees.get(projectId);
+        return enrollees != null && enrollees.contains(userId);
+    }
+
+    /**
+     * @return true if the enrolled projects of the user were read from the DB less than max-age milliseconds ago.
+     */
+    private static boolean isConfirmed(String userId) {
+        Long confirmed = confirmedAt.get(userId);
+        return confirmed != null && System.currentTimeMillis() - confirmed < maxAge;
+    }
+
+    /**
+     * Replace the indexed projects of a user with the ones read from the DB.
+     */
+    private static void replace(String userId, Set<String> projects) {
+        Set<String> indexed = projectsOf(userId);
+        synchronized (indexed) {
+            List<String> withdrawn = new ArrayList<>(indexed);
+            withdrawn.removeAll(projects);
+            for (String projectId : withdrawn) {
+                withdraw(userId, projectId);
+            }
+            for (String projectId : projects) {
+                if (!contains(userId, projectId)) {
+                    enroll(userId, projectId);
+                }
+            }
+            confirmedAt.put(userId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the projects of a user, also the lock of the enrollments of the user.
+     */
+    private static Set<String> projectsOf(String userId) {
+        return enrolledProjects.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    private static Set<String> projectIds(JsonObject user) {
+        Set<String> projects = new HashSet<>();
+        JsonArray projectIds = user == null ? null : user.getArray(ENROLLED_PROJECTS_KEY);
+        if (projectIds != null) {
+            for (Object projectId : projectIds) {
+                projects.add(String.valueOf(projectId));
+            }
+        }
+        return projects;
+    }
+
+    private static long maxAge() {
+        Config config = ConfigFactory.load();
+        return config.hasPath(MAX_AGE_CONFIG_KEY) ? config.getLong(MAX_AGE_CONFIG_KEY) : DEFAULT_MAX_AGE;
+    }
+}
@@ -0,0 +1,185 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.JsonDocument;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import rx.Observable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedged reads of the documents the screens wait for, so a slow node doesn't hold them up.
+ * A read that hasn't answered after the percentile latency of the recent reads of its operation, kept between min-delay and
+ * max-delay milliseconds, is also sent to a replica and the first of the two to answer is taken.
+ * A replica can be behind the active node, so only the operations allowed stale reads by storage.hedged-reads.stale-reads.operation
+ * are hedged, and only once storage.hedged-reads.enabled is on. A replica that fails or doesn't have the document never answers.
+ */
+public class HedgedReads {
+    public static final String USERS = "users";
+    public static final String PROJECTS = "projects";
+    public static final String STATS = "stats";
+    public static final String CONTRIBUTIONS = "contributions";
+    private static final String ENABLED_CONFIG_KEY = "storage.hedged-reads.enabled";
+    private static final String PERCENTILE_CONFIG_KEY = "storage.hedged-reads.percentile";
+    private static final String MIN_DELAY_CONFIG_KEY = "storage.hedged-reads.min-delay";
+    private static final String MAX_DELAY_CONFIG_KEY = "storage.hedged-reads.max-delay";
+    private static final String STALE_READS_CONFIG_KEY = "storage.hedged-reads.stale-reads";
+    private static final boolean DEFAULT_ENABLED = false;
+    private static final double DEFAULT_PERCENTILE = 95;
+    private static final long DEFAULT_MIN_DELAY = 5;
+    private static final long DEFAULT_MAX_DELAY = 200;
+    private static final int SAMPLES = 512;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final Config config;
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    HedgedReads(Config config, boolean enabled, double percentile, long minDelay, long maxDelay) {
+        this.config = config;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Create the hedged reads configured by storage.hedged-reads.enabled, percentile, min-delay, max-delay and stale-reads.
+     */
+    static HedgedReads fromConfig() {
+        Config config = ConfigFactory.load();
+        return new HedgedReads(config,
+                config.hasPath(ENABLED_CONFIG_KEY) ? config.getBoolean(ENABLED_CONFIG_KEY) : DEFAULT_ENABLED,
+                config.hasPath(PERCENTILE_CONFIG_KEY) ? config.getDouble(PERCENTILE_CONFIG_KEY) : DEFAULT_PERCENTILE,
+                config.hasPath(MIN_DELAY_CONFIG_KEY) ? config.getLong(MIN_DELAY_CONFIG_KEY) : DEFAULT_MIN_DELAY,
+                config.hasPath(MAX_DELAY_CONFIG_KEY) ? config.getLong(MAX_DELAY_CONFIG_KEY) : DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Get a document, hedging the read if the operation allows it.
+     *
+     * @param storage the storage to read from.
+     * @param operation the operation reading the document, one of USERS, PROJECTS, STATS and CONTRIBUTIONS.
+     * @param id the id of the document.
+     * @return an observable of the document, empty if it doesn't exist.
+     */
+    Observable<JsonDocument> get(Storage storage, String operation, String id) {
+        Operation hedged = operation(operation);
+        if (!enabled || !hedged.staleReads) {
+            return storage.get(id);
+        }
+
+        return Observable.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean answered = new AtomicBoolean();
+            hedged.reads.increment();
+
+            Observable<JsonDocument> active = storage.get(id)
+                    .doOnTerminate(() -> {
+                        if (answered.compareAndSet(false, true)) {
+                            hedged.record(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnUnsubscribe(() -> {
+                        // lost to the replica, its latency is at least the time it was given
+                        if (answered.compareAndSet(false, true)) {
+                            hedged.record(System.nanoTime() - start);
+                        }
+                    });
+            Observable<JsonDocument> replica = Observable.timer(hedged.delay(), TimeUnit.MILLISECONDS)
+                    .flatMap(tick -> {
+                        hedged.hedges.increment();
+                        return storage.getFromReplica(id);
+                    })
+                    .take(1)
+                    .onErrorResumeNext(Observable.<JsonDocument>never())
+                    .switchIfEmpty(Observable.<JsonDocument>never())
+                    .doOnNext(document -> hedged.replicaWins.increment());
+            return active.ambWith(replica);
+        });
+    }
+
+    /**
+     * @return the number of hedged reads of an operation.
+     */
+    public long reads(String operation) {
+        return operation(operation).reads.sum();
+    }
+
+    /**
+     * @return the share of the hedged reads of an operation that were also sent to a replica.
+     */
+    public double hedgeRate(String operation) {
+        Operation hedged = operation(operation);
+        long reads = hedged.reads.sum();
+        return reads == 0 ? 0 : (double) hedged.hedges.sum() / reads;
+    }
+
+    /**
+     * @return the share of the reads of an operation sent to a replica that the replica answered first.
+     */
+    public double winRate(String operation) {
+        Operation hedged = operation(operation);
+        long hedges = hedged.hedges.sum();
+        return hedges == 0 ? 0 : (double) hedged.replicaWins.sum() / hedges;
+    }
+
+    /**
+     * @return the delay in milliseconds after which a read of an operation is sent to a replica.
+     */
+    public long delay(String operation) {
+        return operation(operation).delay();
+    }
+
+    private Operation operation(String name) {
+        Operation operation = operations.get(name);
+        return operation != null ? operation : operations.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * The stale read rule, recent latencies and counts of an operation.
+     */
+    private class Operation {
+        private final boolean staleReads;
+        private final long[] samples = new long[SAMPLES];
+        private final AtomicLong recorded = new AtomicLong();
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder replicaWins = new LongAdder();
+        private volatile long delay = maxDelay;
+
+        Operation(String name) {
+            String staleReadsKey = STALE_READS_CONFIG_KEY + "." + name;
+            this.staleReads = config.hasPath(staleReadsKey) && config.getBoolean(staleReadsKey);
+        }
+
+        long delay() {
+            return delay;
+        }
+
+        /**
+         * Record the latency of a read from the active node, the delay is computed again every RECOMPUTE_EVERY reads
+         * from the last SAMPLES ones, once there are that many.
+         */
+        void record(long nanos) {
+            long count = recorded.getAndIncrement();
+            samples[(int) (count % SAMPLES)] = nanos;
+            if (count >= SAMPLES && count % RECOMPUTE_EVERY == 0) {
+                long[] sorted = Arrays.copyOf(samples, SAMPLES);
+                Arrays.sort(sorted);
+                int index = (int) Math.min(SAMPLES - 1, Math.ceil(percentile / 100 * SAMPLES) - 1);
+                long millis = TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+                delay = Math.max(minDelay, Math.min(maxDelay, millis));
+            }
+        }
+    }
+}
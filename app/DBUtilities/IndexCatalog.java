@@ -0,0 +1,119 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import play.Logger;
+import rx.Observable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The secondary indexes the listings depend on and the listings that must be served by them.
+ * {@link DBConfig#initDB()} reconciles the DB with this catalog: the missing indexes are created and built,
+ * then every listing is explained to make sure none of them falls back to a primary scan.
+ */
+class IndexCatalog {
+
+    static final List<Index> INDEXES = Collections.unmodifiableList(Arrays.asList(
+            // id prefix filter of the listings sorted by a counter, counters are separate documents so no index can sort them
+            new Index("idx_doc_id", null, "meta().id"),
+            new Index("idx_project_category", "project::", "category_id", "enrollments_count"),
+            new Index("idx_project_featured", "project::", "is_featured", "enrollments_count"),
+            new Index("idx_project_owner", "project::", "owner.id", "name"),
+            new Index("idx_project_created_at", "project::", "created_at"),
+            new Index("idx_project_name", "project::", "lower(name)"),
+            new Index("idx_category_name", "category::", "name")));
+
+    /**
+     * One listing of every shape the DB methods run, with placeholder values.
+     */
+    static final Map<String, Listing> LISTINGS = listings();
+
+    private static Map<String, Listing> listings() {
+        Map<String, Listing> listings = new LinkedHashMap<>();
+        listings.put("Project.bulkGetProjects(contributions_count)", Listing.of("project").whereIdHasPrefix()
+                .orderByCounter("contributions_count", true).page(0, 20));
+        listings.put("Project.bulkGetProjects(created_at)", Listing.of("project").whereIdHasPrefix()
+                .orderBy("created_at", true).page(0, 20));
+        listings.put("Project.getFeaturedProjets", Listing.of("project").whereIdHasPrefix().whereTrue("is_featured")
+                .orderByCounter("enrollments_count", true).page(0, 20));
+        listings.put("Project.getProjectWithSpecificCategory", Listing.of("project").whereIdHasPrefix()
+                .whereEquals("category_id", "category::").orderByCounter("enrollments_count", true).page(0, 20));
+        listings.put("Project.searchForProjectsByName", Listing.of("project").whereIdHasPrefix().whereContains("name", "")
+                .orderByCounter("enrollments_count", true).page(0, 20));
+        listings.put("User.getProjectsCreatedByUser", Listing.of("project").whereIdHasPrefix()
+                .whereEquals("owner.id", "user::").orderBy("name", true).page(0, 20));
+        listings.put("Category.bulkGetCategories", Listing.of("category").whereIdHasPrefix().orderBy("name", false).page(0, 20));
+        return Collections.unmodifiableMap(listings);
+    }
+
+    /**
+     * Create and build the missing indexes, then explain every listing.
+     * @return an observable of the names of the listings whose plan does a primary scan.
+     */
+    static Observable<List<String>> reconcile() {
+        Storage storage = DBConfig.storage();
+
+        return storage.provisionIndexes(INDEXES).toList()
+                .doOnNext(created -> Logger.info(String.format("DB: Index catalog reconciled, created indexes: %s", created)))
+                .concatMap(created -> Observable.from(LISTINGS.entrySet()))
+                .concatMap(listing -> storage.explain(listing.getValue())
+                        .filter(plan -> {
+                            if (!hasPrimaryScan(plan)) {
+                                Logger.info(String.format("DB: Listing %s uses %s", listing.getKey(), isCovered(plan) ? "a covering index" : "an index"));
+                                return false;
+                            }
+                            Logger.warn(String.format("DB: Listing %s does a primary scan, plan: %s", listing.getKey(), plan));
+                            return true;
+                        })
+                        .map(plan -> listing.getKey()))
+                .toList();
+    }
+
+    private static boolean hasPrimaryScan(JsonObject plan) {
+        return plan.toString().contains("\"PrimaryScan\"");
+    }
+
+    private static boolean isCovered(JsonObject plan) {
+        return plan.toString().contains("\"covers\"");
+    }
+
+    /**
+     * A secondary index on some fields of the documents whose ids start with a prefix.
+     */
+    static class Index {
+        private final String name;
+        private final String idPrefix;
+        private final List<String> keys;
+
+        /**
+         * @param idPrefix the prefix of the ids of the indexed documents, null to index all the documents.
+         * @param keys the indexed expressions, relative to the document.
+         */
+        Index(String name, String idPrefix, String... keys) {
+            this.name = name;
+            this.idPrefix = idPrefix;
+            this.keys = Collections.unmodifiableList(Arrays.asList(keys));
+        }
+
+        String name() {
+            return name;
+        }
+
+        String idPrefix() {
+            return idPrefix;
+        }
+
+        List<String> keys() {
+            return keys;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%s on %s", name, keys, idPrefix == null ? "all documents" : idPrefix);
+        }
+    }
+}
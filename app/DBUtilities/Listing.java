@@ -0,0 +1,180 @@
+package DBUtilities;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Describes a sorted and paginated listing of documents of one type, so that every storage backend can run it.
+ * All field paths are relative to the listed document.
+ * Documents with the same sort value are ordered by id so that pages never overlap,
+ * documents without the sort field are only listed when sorting by a counter.
+ */
+public class Listing {
+
+    private final String alias;
+    private final Map<String, Object> equalFilters = new LinkedHashMap<>();
+    private boolean filterByIdPrefix;
+    private String truthyField;
+    private String containsField;
+    private String containsText;
+    private String keysSourceId;
+    private String keysSourcePath;
+    private String sortField;
+    private boolean descending;
+    private boolean sortByCounter;
+    private int offset;
+    private int limit;
+    private Cursor after;
+
+    private Listing(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * Start a listing of documents whose ids start with alias + "::".
+     * @param alias the document type, also used as the name of the document in the returned rows.
+     */
+    public static Listing of(String alias) {
+        return new Listing(alias);
+    }
+
+    /**
+     * Only keep the documents whose ids start with alias + "::", the listing relies on joins to filter the type otherwise.
+     */
+    public Listing whereIdHasPrefix() {
+        this.filterByIdPrefix = true;
+        return this;
+    }
+
+    public Listing whereEquals(String field, Object value) {
+        equalFilters.put(field, value);
+        return this;
+    }
+
+    public Listing whereTrue(String field) {
+        this.truthyField = field;
+        return this;
+    }
+
+    /**
+     * Only keep the documents whose field contains the text, ignoring case.
+     */
+    public Listing whereContains(String field, String text) {
+        this.containsField = field;
+        this.containsText = text;
+        return this;
+    }
+
+    /**
+     * List the documents whose ids are in an array inside another document instead of all the documents of the type.
+     */
+    public Listing withKeysFrom(String sourceId, String sourcePath) {
+        this.keysSourceId = sourceId;
+        this.keysSourcePath = sourcePath;
+        return this;
+    }
+
+    public Listing orderBy(String field, boolean descending) {
+        this.sortField = field;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Sort by the counter document of a field, falling back to the field itself for documents without a counter.
+     */
+    public Listing orderByCounter(String field, boolean descending) {
+        return orderBy(field, descending, true);
+    }
+
+    public Listing orderBy(String field, boolean descending, boolean byCounter) {
+        this.sortByCounter = byCounter;
+        return orderBy(field, descending);
+    }
+
+    public Listing page(int offset, int limit) {
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Start the listing right after the position of a cursor instead of skipping offset documents.
+     * @param cursor the decoded cursor, null to keep the offset.
+     */
+    public Listing after(Cursor cursor) {
+        if (cursor != null) {
+            this.after = cursor;
+            this.offset = 0;
+        }
+        return this;
+    }
+
+    public String alias() {
+        return alias;
+    }
+
+    public String idPrefix() {
+        return alias + "::";
+    }
+
+    public boolean filtersByIdPrefix() {
+        return filterByIdPrefix;
+    }
+
+    public Map<String, Object> equalFilters() {
+        return Collections.unmodifiableMap(equalFilters);
+    }
+
+    public String truthyField() {
+        return truthyField;
+    }
+
+    public String containsField() {
+        return containsField;
+    }
+
+    public String containsText() {
+        return containsText;
+    }
+
+    public String keysSourceId() {
+        return keysSourceId;
+    }
+
+    public String keysSourcePath() {
+        return keysSourcePath;
+    }
+
+    public String sortField() {
+        return sortField;
+    }
+
+    public boolean sortsByCounter() {
+        return sortByCounter;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public Cursor after() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Listing{alias: %s, filters: %s, truthy: %s, contains: %s~%s, keysFrom: %s.%s, sort: %s %s%s, offset: %s, limit: %s, after: %s}",
+                alias, equalFilters, truthyField, containsField, containsText, keysSourceId, keysSourcePath,
+                sortField, descending ? "desc" : "asc", sortByCounter ? " (counter)" : "", offset, limit, after == null ? null : after.id());
+    }
+}
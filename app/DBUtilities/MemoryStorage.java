@@ -0,0 +1,588 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage backend keeping every document in the application's memory, used to measure the app without a cluster
+ * and for small deployments that don't need one.
+ * Every mutation of a document is atomic, documents are copied on the way in and out so callers can't change them in place.
+ */
+public class MemoryStorage implements Storage {
+
+    private final Map<String, StoredDocument> documents = new ConcurrentHashMap<>();
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+    private final AtomicLong casSequence = new AtomicLong();
+    private volatile boolean closed = true;
+
+    @Override
+    public int open() {
+        closed = false;
+        Logger.info("DB: In-memory DB initialized");
+        return DBConfig.OPEN_BUCKET_OK;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public Observable<JsonDocument> get(String id) {
+        return Observable.defer(() -> {
+            StoredDocument stored = documents.get(id);
+            return stored == null ? Observable.<JsonDocument>empty() : Observable.just(stored.toDocument(id));
+        });
+    }
+
+    /**
+     * The documents in memory have no replicas, the document itself is read.
+     */
+    @Override
+    public Observable<JsonDocument> getFromReplica(String id) {
+        return get(id);
+    }
+
+    @Override
+    public Observable<Boolean> exists(String id) {
+        return Observable.defer(() -> Observable.just(documents.containsKey(id) || counters.containsKey(id)));
+    }
+
+    @Override
+    public Observable<JsonDocument> insert(JsonDocument document) {
+        return Observable.defer(() -> {
+            StoredDocument stored = new StoredDocument(copy(document.content()), casSequence.incrementAndGet());
+            if (counters.containsKey(document.id()) || documents.putIfAbsent(document.id(), stored) != null) {
+                return Observable.error(new DocumentAlreadyExistsException());
+            }
+            return Observable.just(stored.toDocument(document.id()));
+        });
+    }
+
+    @Override
+    public Observable<JsonDocument> replace(JsonDocument document) {
+        return Observable.defer(() -> {
+            StoredDocument[] result = new StoredDocument[1];
+            RuntimeException[] error = new RuntimeException[1];
+            documents.computeIfPresent(document.id(), (id, current) -> {
+                if (document.cas() != 0 && document.cas() != current.cas) {
+                    error[0] = new CASMismatchException();
+                    return current;
+                }
+                result[0] = new StoredDocument(copy(document.content()), casSequence.incrementAndGet());
+                return result[0];
+            });
+            if (error[0] != null) {
+                return Observable.error(error[0]);
+            }
+            if (result[0] == null) {
+                return Observable.error(new DocumentDoesNotExistException());
+            }
+            return Observable.just(result[0].toDocument(document.id()));
+        });
+    }
+
+    @Override
+    public Observable<JsonDocument> remove(String id) {
+        return Observable.defer(() -> {
+            StoredDocument removed = documents.remove(id);
+            if (removed == null) {
+                if (counters.remove(id) != null) {
+                    return Observable.just(JsonDocument.create(id, null, casSequence.incrementAndGet()));
+                }
+                return Observable.error(new DocumentDoesNotExistException());
+            }
+            return Observable.just(JsonDocument.create(id, null, removed.cas));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> lookup(String id, String... fields) {
+        return read(id, content -> {
+            JsonObject projection = JsonObject.create();
+            for (String field : fields) {
+                if (content.containsKey(field)) {
+                    projection.put(field, content.get(field));
+                }
+            }
+            return projection;
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> getWithSlices(String id, List<String> fields, List<String> arrayPaths, int offset, int limit) {
+        return read(id, content -> {
+            JsonObject projection = JsonObject.create();
+            for (String field : fields) {
+                if (content.containsKey(field)) {
+                    projection.put(field, content.get(field));
+                }
+            }
+            for (String path : arrayPaths) {
+                Object array = valueAt(content, path);
+                JsonArray slice = JsonArray.create();
+                if (array instanceof JsonArray) {
+                    JsonArray source = (JsonArray) array;
+                    for (int i = offset; i < Math.min(source.size(), offset + limit); i++) {
+                        slice.add(source.get(i));
+                    }
+                }
+                parentOf(projection, path, true).put(lastSegment(path), slice);
+            }
+            return projection;
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> setFields(String id, JsonObject fields) {
+        return mutate(id, content -> {
+            for (String name : fields.getNames()) {
+                content.put(name, copyValue(fields.get(name)));
+            }
+            return JsonObject.create();
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> arrayAppend(String id, String path, Object value) {
+        return mutate(id, content -> {
+            arrayAt(content, path).add(copyValue(value));
+            return JsonObject.create().put("value", copyValue(value));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> appendOrCreate(String id, String field, Object value) {
+        return Observable.defer(() -> {
+            documents.compute(id, (key, current) -> {
+                JsonObject content = current == null ? JsonObject.create() : copy(current.content);
+                arrayAt(content, field).add(copyValue(value));
+                return new StoredDocument(content, casSequence.incrementAndGet());
+            });
+            return Observable.just(JsonObject.create().put("value", copyValue(value)).put("id", id));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> arrayAddUnique(String id, String path, Object value) {
+        return mutate(id, content -> {
+            JsonArray array = arrayAt(content, path);
+            if (!containsPlain(array, value)) {
+                array.add(copyValue(value));
+            }
+            return JsonObject.create().put("value", copyValue(value));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> arrayRemove(String id, String path, Object value) {
+        return mutate(id, content -> {
+            JsonArray remaining = JsonArray.create();
+            JsonArray array = arrayAt(content, path);
+            for (int i = 0; i < array.size(); i++) {
+                if (!Objects.equals(plain(array.get(i)), plain(value))) {
+                    remaining.add(array.get(i));
+                }
+            }
+            parentOf(content, path, true).put(lastSegment(path), remaining);
+            return JsonObject.create();
+        });
+    }
+
+    @Override
+    public Observable<Boolean> arrayContains(String id, String path, Object value) {
+        return Observable.defer(() -> {
+            StoredDocument stored = documents.get(id);
+            if (stored == null) {
+                return Observable.just(false);
+            }
+            Object array = valueAt(stored.content, path);
+            return Observable.just(array instanceof JsonArray && containsPlain((JsonArray) array, value));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> increment(String id, String path, long delta) {
+        return mutate(id, content -> {
+            Object newValue = number(numberAt(content, path) + delta);
+            parentOf(content, path, true).put(lastSegment(path), newValue);
+            return JsonObject.create().put(lastSegment(path), newValue);
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> incrementFields(String id, String objectField, Map<String, Long> deltas) {
+        return mutate(id, content -> {
+            JsonObject object = content.getObject(objectField);
+            if (object == null) {
+                object = JsonObject.create();
+                content.put(objectField, object);
+            }
+            for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+                Object current = object.get(delta.getKey());
+                object.put(delta.getKey(), number((current instanceof Number ? ((Number) current).longValue() : 0) + delta.getValue()));
+            }
+            return JsonObject.create();
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> maxFields(String id, String objectField, Map<String, Long> values) {
+        return mutate(id, content -> {
+            JsonObject object = content.getObject(objectField);
+            if (object == null) {
+                object = JsonObject.create();
+                content.put(objectField, object);
+            }
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                Object current = object.get(value.getKey());
+                object.put(value.getKey(), number(Math.max(current instanceof Number ? ((Number) current).longValue() : 0, value.getValue())));
+            }
+            return JsonObject.create();
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> removeFields(String id, String objectField, Collection<String> names) {
+        return mutate(id, content -> {
+            JsonObject object = content.getObject(objectField);
+            if (object != null) {
+                for (String name : names) {
+                    object.removeKey(name);
+                }
+            }
+            return JsonObject.create();
+        });
+    }
+
+    @Override
+    public Observable<Long> counter(String id, long delta) {
+        return Observable.defer(() -> {
+            Long value = counters.computeIfPresent(id, (key, current) -> Math.max(0, current + delta));
+            return value == null ? Observable.<Long>error(new DocumentDoesNotExistException()) : Observable.just(value);
+        });
+    }
+
+    @Override
+    public Observable<Long> counter(String id, long delta, long initial) {
+        return Observable.defer(() -> Observable.just(
+                counters.compute(id, (key, current) -> current == null ? Math.max(0, initial) : Math.max(0, current + delta))));
+    }
+
+    @Override
+    public Observable<Long> getCounter(String id) {
+        return Observable.defer(() -> {
+            Long value = counters.get(id);
+            return value == null ? Observable.<Long>empty() : Observable.just(value);
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> list(Listing listing) {
+        return Observable.defer(() -> {
+            String alias = listing.alias();
+            List<JsonObject> rows = new ArrayList<>();
+
+            for (Map.Entry<String, StoredDocument> entry : candidates(listing)) {
+                JsonObject content = entry.getValue().content;
+                if (!matches(listing, content)) {
+                    continue;
+                }
+                JsonObject row = JsonObject.create().put("id", entry.getKey()).put(alias, copy(content));
+                if (listing.sortField() != null) {
+                    Object sortValue = sortValue(listing, row);
+                    if (sortValue == null && !listing.sortsByCounter()) {
+                        continue;
+                    }
+                    row.put(Cursor.SORT_KEY, sortValue);
+                }
+                rows.add(row);
+            }
+
+            Comparator<JsonObject> order = (first, second) -> 0;
+            if (listing.sortField() != null) {
+                order = (first, second) -> compare(first.get(Cursor.SORT_KEY), second.get(Cursor.SORT_KEY));
+                if (listing.isDescending()) {
+                    order = order.reversed();
+                }
+            }
+            order = order.thenComparing(row -> row.getString("id"));
+
+            Stream<JsonObject> sorted = rows.stream().sorted(order);
+            if (listing.after() != null) {
+                JsonObject last = JsonObject.create().put("id", listing.after().id()).put(Cursor.SORT_KEY, listing.after().sortValue());
+                Comparator<JsonObject> comparator = order;
+                sorted = sorted.filter(row -> comparator.compare(row, last) > 0);
+            }
+            return Observable.from(sorted.skip(Math.max(listing.offset(), 0)).limit(Math.max(listing.limit(), 0))
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    @Override
+    public Observable<JsonObject> explain(Listing listing) {
+        return Observable.empty();
+    }
+
+    /**
+     * Listings scan the documents in memory, there is nothing to index.
+     */
+    @Override
+    public Observable<String> provisionIndexes(List<IndexCatalog.Index> indexes) {
+        return Observable.empty();
+    }
+
+    private List<Map.Entry<String, StoredDocument>> candidates(Listing listing) {
+        List<Map.Entry<String, StoredDocument>> candidates = new ArrayList<>();
+        if (listing.keysSourceId() != null) {
+            StoredDocument source = documents.get(listing.keysSourceId());
+            Object keys = source == null ? null : valueAt(source.content, listing.keysSourcePath());
+            if (keys instanceof JsonArray) {
+                for (Object key : ((JsonArray) keys).toList()) {
+                    StoredDocument stored = documents.get(String.valueOf(key));
+                    if (stored != null) {
+                        candidates.add(new java.util.AbstractMap.SimpleImmutableEntry<>(String.valueOf(key), stored));
+                    }
+                }
+            }
+            return candidates;
+        }
+        for (Map.Entry<String, StoredDocument> entry : documents.entrySet()) {
+            if (entry.getKey().startsWith(listing.idPrefix())) {
+                candidates.add(entry);
+            }
+        }
+        return candidates;
+    }
+
+    private Object sortValue(Listing listing, JsonObject row) {
+        if (listing.sortsByCounter()) {
+            Long counter = counters.get(Counter.counterId(row.getString("id"), listing.sortField()));
+            if (counter != null) {
+                return number(counter);
+            }
+        }
+        return valueAt(row.getObject(listing.alias()), listing.sortField());
+    }
+
+    private static boolean matches(Listing listing, JsonObject content) {
+        for (Map.Entry<String, Object> filter : listing.equalFilters().entrySet()) {
+            if (!Objects.equals(plain(filter.getValue()), plain(valueAt(content, filter.getKey())))) {
+                return false;
+            }
+        }
+        if (listing.truthyField() != null && !Boolean.TRUE.equals(valueAt(content, listing.truthyField()))) {
+            return false;
+        }
+        if (listing.containsField() != null) {
+            Object value = valueAt(content, listing.containsField());
+            return value instanceof String
+                    && ((String) value).toLowerCase().contains(listing.containsText().toLowerCase());
+        }
+        return true;
+    }
+
+    private Observable<JsonObject> read(String id, Function<JsonObject, JsonObject> reader) {
+        return Observable.defer(() -> {
+            StoredDocument stored = documents.get(id);
+            return stored == null ? Observable.<JsonObject>empty() : Observable.just(reader.apply(copy(stored.content)));
+        });
+    }
+
+    /**
+     * Apply a change to a copy of a document and swap it in atomically.
+     * @param mutation changes the content in place and returns the fields to return along with the id.
+     */
+    private Observable<JsonObject> mutate(String id, Function<JsonObject, JsonObject> mutation) {
+        return Observable.defer(() -> {
+            JsonObject[] result = new JsonObject[1];
+            documents.computeIfPresent(id, (key, current) -> {
+                JsonObject content = copy(current.content);
+                result[0] = mutation.apply(content).put("id", id);
+                return new StoredDocument(content, casSequence.incrementAndGet());
+            });
+            return result[0] == null ? Observable.<JsonObject>empty() : Observable.just(result[0]);
+        });
+    }
+
+    static Object valueAt(JsonObject object, String path) {
+        Object current = object;
+        for (String segment : path.split("\\.")) {
+            if (!(current instanceof JsonObject)) {
+                return null;
+            }
+            current = ((JsonObject) current).get(segment);
+        }
+        return current;
+    }
+
+    private static JsonObject parentOf(JsonObject object, String path, boolean create) {
+        String[] segments = path.split("\\.");
+        JsonObject current = object;
+        for (int i = 0; i < segments.length - 1; i++) {
+            JsonObject next = current.getObject(segments[i]);
+            if (next == null) {
+                if (!create) {
+                    return null;
+                }
+                next = JsonObject.create();
+                current.put(segments[i], next);
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private static JsonArray arrayAt(JsonObject object, String path) {
+        JsonObject parent = parentOf(object, path, true);
+        JsonArray array = parent.getArray(lastSegment(path));
+        if (array == null) {
+            array = JsonArray.create();
+            parent.put(lastSegment(path), array);
+        }
+        return array;
+    }
+
+    private static long numberAt(JsonObject object, String path) {
+        Object value = valueAt(object, path);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Box a number the way the json decoder does, as an Integer when it fits.
+     */
+    static Object number(long value) {
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+    }
+
+    private static String lastSegment(String path) {
+        return path.substring(path.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Compare two json values in the same order N1QL sorts them in.
+     */
+    static int compare(Object first, Object second) {
+        int firstRank = rank(first);
+        int secondRank = rank(second);
+        if (firstRank != secondRank) {
+            return Integer.compare(firstRank, secondRank);
+        }
+        if (first instanceof Number) {
+            return Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+        }
+        if (first instanceof String) {
+            return ((String) first).compareTo((String) second);
+        }
+        if (first instanceof Boolean) {
+            return Boolean.compare((Boolean) first, (Boolean) second);
+        }
+        return 0;
+    }
+
+    private static int rank(Object value) {
+        if (value == null) return 0;
+        if (value instanceof Boolean) return 1;
+        if (value instanceof Number) return 2;
+        if (value instanceof String) return 3;
+        if (value instanceof JsonArray) return 4;
+        return 5;
+    }
+
+    /**
+     * Convert a json value into plain java values so it can be compared with equals, integral numbers of any size becoming longs
+     * at every level. Null stays null.
+     */
+    private static Object plain(Object value) {
+        if (value instanceof JsonObject) {
+            return plain(((JsonObject) value).toMap());
+        } else if (value instanceof JsonArray) {
+            return plain(((JsonArray) value).toList());
+        } else if (value instanceof Map) {
+            Map<Object, Object> plainMap = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                plainMap.put(entry.getKey(), plain(entry.getValue()));
+            }
+            return plainMap;
+        } else if (value instanceof List) {
+            List<Object> plainList = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                plainList.add(plain(element));
+            }
+            return plainList;
+        } else if (value instanceof Number && !(value instanceof Double || value instanceof Float)) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private static boolean containsPlain(JsonArray array, Object value) {
+        Object plainValue = plain(value);
+        for (int i = 0; i < array.size(); i++) {
+            if (Objects.equals(plain(array.get(i)), plainValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static JsonObject copy(JsonObject object) {
+        JsonObject copy = JsonObject.create();
+        for (String name : object.getNames()) {
+            copy.put(name, copyValue(object.get(name)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof JsonObject) {
+            return copy((JsonObject) value);
+        } else if (value instanceof JsonArray) {
+            JsonArray source = (JsonArray) value;
+            JsonArray copy = JsonArray.create();
+            for (int i = 0; i < source.size(); i++) {
+                copy.add(copyValue(source.get(i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static class StoredDocument {
+        private final JsonObject content;
+        private final long cas;
+
+        StoredDocument(JsonObject content, long cas) {
+            this.content = content;
+            this.cas = cas;
+        }
+
+        JsonDocument toDocument(String id) {
+            return JsonDocument.create(id, copy(content), cas);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package DBUtilities;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.List;
+
+/**
+ * Gets the documents of a page by key, or completes the rows of a listing, in parallel, at most max-concurrency at once per page,
+ * and emits them in the order of their keys or rows whatever order they arrive in.
+ * A document is emitted as soon as the ones before it were, the page is streamed instead of collected.
+ */
+class MultiGet {
+    private static final String MAX_CONCURRENCY_CONFIG_KEY = "storage.multi-get.max-concurrency";
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    private final int maxConcurrency;
+
+    MultiGet(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Create a multi get configured by storage.multi-get.max-concurrency.
+     */
+    static MultiGet fromConfig() {
+        Config config = ConfigFactory.load();
+        return new MultiGet(config.hasPath(MAX_CONCURRENCY_CONFIG_KEY) ? config.getInt(MAX_CONCURRENCY_CONFIG_KEY) : DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Get the documents of the rows of a listing in parallel, at most max-concurrency at once,
+     * each one emitted as soon as it and the ones before it arrived.
+     * @param rows the rows of the listing, in the order of the listing.
+     * @param get the get of the document of a row.
+     * @return an observable of the documents in the order of their rows.
+     */
+    <T, R> Observable<R> getEach(Observable<T> rows, Func1<T, Observable<R>> get) {
+        return rows.concatMapEager(get, maxConcurrency, maxConcurrency);
+    }
+
+    /**
+     * @param keys the keys of the page, in the order of the page.
+     * @param get the get of the document of a key, empty if it doesn't exist anymore.
+     * @return an observable of the documents in the order of their keys, without the ones that don't exist.
+     */
+    <K, T> Observable<T> get(List<K> keys, Func1<K, Observable<T>> get) {
+        return getEach(Observable.from(keys), get);
+    }
+}
@@ -1,36 +1,22 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.query.dsl.Sort;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 import static DBUtilities.DBConfig.EMPTY_JSON_OBJECT;
-import static DBUtilities.DBConfig.bucket;
-import static com.couchbase.client.java.query.Select.select;
-import static com.couchbase.client.java.query.Update.update;
-import static com.couchbase.client.java.query.dsl.functions.StringFunctions.lower;
 
 public class Project {
-    private static AsyncBucket mBucket;
+    private static Storage mStorage;
     private static String ownerIdKey = "id";
     private static String ownerImageKey = "image";
     private static String ownerNameKey = "name";
@@ -40,6 +26,8 @@ public class Project {
     private static String ownerKey = "owner";
     private static String resultsKey = "results";
     private static String statsKey = "stats";
+    private static String contributionsCountKey = "contributions_count";
+    private static String enrollmentsCountKey = "enrollments_count";
 
     /**
      * Create and save a project. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
@@ -58,7 +46,7 @@ public class Project {
         String resultsId = "result::" + projectUUID;
         String statsID = "stats::" + projectUUID;
 
-        Logger.info(String.format("DB: Creating project with ID: %s", projectId));
+        Log.info(Log.DB, "Creating project with ID: %s", projectId);
 
         return User.getUserWithId(userId).flatMap(userJsonObject -> {
 
@@ -70,12 +58,9 @@ public class Project {
             return Observable.just(JsonDocument.create(projectId, projectJsonObject));
         })
 
-                .flatMap(doc -> mBucket.insert(doc)
-                ).single().timeout(500, TimeUnit.MILLISECONDS)
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                        .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+                .flatMap(doc -> mStorage.insert(doc)
+                ).single()
+                .compose(DBPolicy.WRITE_ONCE::apply)
                 .onErrorResumeNext (throwable -> {
                     if (throwable instanceof DocumentAlreadyExistsException) {
                         UUID newProjectUUID = UUID.randomUUID();
@@ -83,17 +68,21 @@ public class Project {
                         String newStatsId = "stats::" + newProjectUUID;
                         String newResultsId = "results::" + newProjectUUID;
 
-                        Logger.info(String.format("DB: Another project with same id exists, creating a project with another ID: %s", projectId));
+                        Log.info(Log.DB, "Another project with same id exists, creating a project with another ID: %s", projectId);
 
                         projectJsonObject.put(statsKey, newStatsId).put(resultsKey, newResultsId);
                         JsonDocument newProjectDocument = JsonDocument.create(newProjectId, projectJsonObject);
 
-                        return mBucket.insert(newProjectDocument);
+                        return mStorage.insert(newProjectDocument);
                     }
 
-                    Logger.info(String.format("DB: Failed to insert project with ID: %s , General DB exception", projectId));
+                    Log.warn(Log.DB, "Failed to insert project with ID: %s , General DB exception", projectId);
                     return Observable.error(new CouchbaseException(String.format("Failed to insert project with ID: %s , General DB exception", projectId)));
-                }).flatMap(jsonDocument -> Observable.just(jsonDocument.content().put("id", jsonDocument.id())));
+                })
+                .doOnNext(jsonDocument -> SearchIndex.index(jsonDocument.id(), jsonDocument.content()))
+                .doOnNext(jsonDocument -> Rankings.index(jsonDocument.id(), jsonDocument.content()))
+                .doOnNext(jsonDocument -> UserProjects.index(jsonDocument.id(), jsonDocument.content()))
+                .flatMap(jsonDocument -> Observable.just(jsonDocument.content().put("id", jsonDocument.id())));
 
     }
 
@@ -109,23 +98,15 @@ public class Project {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        Logger.ALogger we = Logger.of("ase");
-        we.info("DB: Getting project with ID");
-
-        Logger.info(String.format("DB: Getting project with ID: %s", projectId));
-
-        return mBucket.query(N1qlQuery.simple(select("*").from(Expression.x(DBConfig.BUCKET_NAME + " project"))
-                .join(Expression.x(DBConfig.BUCKET_NAME + " category")).onKeys(Expression.x("project.category_id"))
-                .where(Expression.x("meta(project).id").eq(Expression.s(projectId)))))
-                .timeout(500, TimeUnit.MILLISECONDS)
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(queryRow -> DBConfig.embedIdAndCategoryIntoProject(projectId, queryRow))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        Log.info(Log.DB, "Getting project with ID: %s", projectId);
+
+        return DBConfig.hedgedReads().get(mStorage, HedgedReads.PROJECTS, projectId)
+                .flatMap(projectDocument -> DBConfig.embedIdAndCategoryIntoProject(projectId, projectDocument.content()))
+                .concatMap(Project::mergeCounters)
+                .compose(DBPolicy.READ::apply)
                 .onErrorResumeNext(throwable -> {
 
-                    Logger.info(String.format("DB: Failed to Get project with ID: %s, General DB exception", projectId));
+                    Log.warn(Log.DB, "Failed to Get project with ID: %s, General DB exception", projectId);
 
                     return Observable.error(new CouchbaseException(String.format("Failed to get project with ID: %s, General DB exception", projectId)));
                 }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
@@ -133,34 +114,42 @@ public class Project {
 
     /**
      * Bulk gets projects sorts them using any document field and sets a limit and offset for the results.
+     * Sorting by contributions_count or created_at is served by the {@link Rankings} once they are built.
      *
      * @param sortBy A Json field in the project document to sort the results with.
      * @param limit  the maximum number of document returned.
      * @param offset an index to determine where how much result to omit from the beginning.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return an observable of json object that contains all the resulted projects merged with their categories and with id field added.
      */
 
-    public static Observable<JsonObject> bulkGetProjects(String sortBy, int offset, int limit) {
+    public static Observable<JsonObject> bulkGetProjects(String sortBy, int offset, int limit, String cursor) {
+        Cursor after;
+        List<Rankings.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode(cursor);
+            if (rankingOf(sortBy) != null && Rankings.isLoaded()) {
+                hits = Rankings.page(rankingOf(sortBy), offset, limit, after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: bulk getting projects sorted by: %s and with limit: %s and offset: %s", sortBy, limit, offset));
-
-        return bucket.query(N1qlQuery.simple(select(Expression.x("meta(project).id, *")).from(Expression.x(DBConfig.BUCKET_NAME + " project"))
-                .join(Expression.x(DBConfig.BUCKET_NAME + " category")).onKeys(Expression.x("project.category_id"))
-                .orderBy(Sort.desc(Expression.x("project." + Expression.x(sortBy))))
-                .limit(limit).offset(offset)))
-                .timeout(1000, TimeUnit.MILLISECONDS)
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(queryRow -> DBConfig.embedIdAndCategoryIntoProject(queryRow.value().getString("id"), queryRow))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        Log.info(Log.DB, "bulk getting projects sorted by: %s and with limit: %s and offset: %s", sortBy, limit, offset);
+
+        Observable<JsonObject> projects;
+        if (hits != null) {
+            projects = DBConfig.multiGet().get(hits, hit -> getListedProject(hit.id(), hit.cursor()));
+        } else {
+            projects = DBConfig.multiGet().getEach(mStorage.list(Listing.of("project").whereIdHasPrefix().orderBy(sortBy, true, isCounter(sortBy)).page(offset, limit).after(after)),
+                    Project::getProjectOfRow);
+        }
+
+        return projects
+                .compose(DBPolicy.QUERY::apply)
                 .onErrorResumeNext(throwable -> {
-                    Logger.info(String.format("DB: failed to bulk get projects sorted by: %s and with limit: %s and offset: %s", sortBy, limit, offset));
+                    Log.warn(Log.DB, "failed to bulk get projects sorted by: %s and with limit: %s and offset: %s", sortBy, limit, offset);
 
                     return Observable.error(new CouchbaseException(String.format("DB: failed to bulk get projects sorted by: %s and with limit: %s and offset: %s", sortBy, limit, offset)));
                 })
@@ -172,30 +161,38 @@ public class Project {
      *
      * @param limit  the maximum number of document returned.
      * @param offset an index to determine where how much result to omit from the beginning.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return an observable of json object that contains all the resulted projects merged with their categories and with id field added.
      */
 
-    public static Observable<JsonObject> getFeaturedProjets(int offset, int limit) {
+    public static Observable<JsonObject> getFeaturedProjets(int offset, int limit, String cursor) {
+        Cursor after;
+        List<Rankings.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode(cursor);
+            if (Rankings.isLoaded()) {
+                hits = Rankings.page(Rankings.FEATURED, offset, limit, after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: bulk getting featured projects with limit: %s and offset: %s", limit, offset));
-
-        return mBucket.query(N1qlQuery.simple(select(Expression.x("meta(project).id, *")).from(Expression.x(DBConfig.BUCKET_NAME + " project"))
-                .join(Expression.x(DBConfig.BUCKET_NAME + " category")).onKeys(Expression.x("project.category_id"))
-                .where(Expression.x("project.is_featured")).orderBy(Sort.desc(Expression.x("project.enrollments_count")))
-                .limit(limit).offset(offset)))
-                .timeout(1000, TimeUnit.MILLISECONDS)
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(queryRow -> DBConfig.embedIdAndCategoryIntoProject(queryRow.value().getString("id"), queryRow))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        Log.info(Log.DB, "bulk getting featured projects with limit: %s and offset: %s", limit, offset);
+
+        Observable<JsonObject> projects;
+        if (hits != null) {
+            projects = DBConfig.multiGet().get(hits, hit -> getListedProject(hit.id(), hit.cursor()));
+        } else {
+            projects = DBConfig.multiGet().getEach(mStorage.list(Listing.of("project").whereIdHasPrefix().whereTrue("is_featured")
+                    .orderByCounter(enrollmentsCountKey, true).page(offset, limit).after(after)),
+                    Project::getProjectOfRow);
+        }
+
+        return projects
+                .compose(DBPolicy.QUERY::apply)
                 .onErrorResumeNext(throwable -> {
-                    Logger.info(String.format("DB: failed to bulk get featured projects with limit: %s and offset: %s", limit, offset));
+                    Log.warn(Log.DB, "failed to bulk get featured projects with limit: %s and offset: %s", limit, offset);
 
                     return Observable.error(new CouchbaseException(String.format("DB: failed to bulk get featured projects with limit: %s and offset: %s", limit, offset)));
                 })
@@ -204,33 +201,43 @@ public class Project {
 
     /**
      * Bulk gets projects that have a specific category_id sorts them by popularity and sets a limit and offset for the results.
+     * Served by the {@link Rankings} once they are built.
      *
      * @param categoryId The category id to get projects for.
      * @param limit      the maximum number of document returned.
      * @param offset     an index to determine where how much result to omit from the beginning.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return An observable of json object that contains all the resulted projects merged with their categories and with id field added.
+     * Served by the {@link Rankings} once they are built.
      */
-    public static Observable<JsonObject> getProjectWithSpecificCategory(String categoryId, int offset, int limit) {
+    public static Observable<JsonObject> getProjectWithSpecificCategory(String categoryId, int offset, int limit, String cursor) {
+        Cursor after;
+        List<Rankings.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode(cursor);
+            if (Rankings.isLoaded()) {
+                hits = Rankings.page(Rankings.category(categoryId), offset, limit, after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: Bulk getting projects with category_id: %s ,limit: %s and offset: %s", categoryId, limit, offset));
-
-        return mBucket.query(N1qlQuery.simple(select(Expression.x("meta(project).id, *")).from(Expression.x(DBConfig.BUCKET_NAME + " project"))
-                .join(Expression.x(DBConfig.BUCKET_NAME + " category")).onKeys(Expression.x("project.category_id"))
-                .where(Expression.x("project.category_id").eq(Expression.s(categoryId)))
-                .orderBy(Sort.desc(Expression.x("project.enrollments_count"))).limit(limit).offset(offset)))
-                .timeout(1000, TimeUnit.MILLISECONDS)
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> DBConfig.embedIdAndCategoryIntoProject(row.value().getString("id"), row))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        Log.info(Log.DB, "Bulk getting projects with category_id: %s ,limit: %s and offset: %s", categoryId, limit, offset);
+
+        Observable<JsonObject> projects;
+        if (hits != null) {
+            projects = DBConfig.multiGet().get(hits, hit -> getListedProject(hit.id(), hit.cursor()));
+        } else {
+            projects = DBConfig.multiGet().getEach(mStorage.list(Listing.of("project").whereIdHasPrefix().whereEquals("category_id", categoryId)
+                    .orderByCounter(enrollmentsCountKey, true).page(offset, limit).after(after)),
+                    Project::getProjectOfRow);
+        }
+
+        return projects
+                .compose(DBPolicy.QUERY::apply)
                 .onErrorResumeNext(throwable -> {
-                    Logger.info(String.format("DB: failed to bulk get projects with category_id: %s ,limit: %s and offset: %s", categoryId, limit, offset));
+                    Log.warn(Log.DB, "failed to bulk get projects with category_id: %s ,limit: %s and offset: %s", categoryId, limit, offset);
 
                     return Observable.error(new CouchbaseException(String.format("DB: failed to bulk get projects with category_id: %s ,limit: %s and offset: %s", categoryId, limit, offset)));
                 })
@@ -239,33 +246,44 @@ public class Project {
     }
 
     /**
-     * Searches for projects with name containing the provided string sorts them by popularity and sets a limit and offset for the results.
+     * Searches for projects whose name, description or category contain every word of the provided string, sorts them by relevance
+     * then by popularity and sets a limit and offset for the results.
+     * Served by the {@link SearchIndex} once it is built, before that only the projects names are searched by the DB.
      *
-     * @param searchText the String to look for in the projects name.
+     * @param searchText the String to look for in the projects name, description and category.
      * @param limit      the maximum number of document returned.
      * @param offset     an index to determine where how much result to omit from the beginning.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return an observable of json object that contains all the resulted projects merged with their categories and with id field added.
      */
 
-    public static Observable<JsonObject> searchForProjectsByName(String searchText, int offset, int limit) {
+    public static Observable<JsonObject> searchForProjectsByName(String searchText, int offset, int limit, String cursor) {
+        Cursor after;
+        List<SearchIndex.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode(cursor);
+            if (SearchIndex.isLoaded()) {
+                hits = SearchIndex.search(searchText, offset, limit, after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
-        Logger.info(String.format("DB: Searching for projects with name containing: %s with limit: %s and offset: %s", searchText, limit, offset));
-
-        return mBucket.query(N1qlQuery.simple(select(Expression.x("meta(project).id, *")).from(Expression.x(DBConfig.BUCKET_NAME + " project"))
-                .join(Expression.x(DBConfig.BUCKET_NAME + " category")).onKeys(Expression.x("project.category_id"))
-                .where(lower(Expression.x("project.name")).like(lower(Expression.s("%" + searchText + "%"))))
-                .orderBy(Sort.desc(Expression.x("project.enrollments_count"))).limit(limit).offset(offset)))
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> DBConfig.embedIdAndCategoryIntoProject(row.value().getString("id"), row))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        Log.info(Log.DB, "Searching for projects with name containing: %s with limit: %s and offset: %s", searchText, limit, offset);
+
+        Observable<JsonObject> projects;
+        if (hits != null) {
+            projects = DBConfig.multiGet().get(hits, hit -> getListedProject(hit.id(), hit.cursor()));
+        } else {
+            projects = DBConfig.multiGet().getEach(mStorage.list(Listing.of("project").whereIdHasPrefix().whereContains("name", searchText)
+                    .orderByCounter(enrollmentsCountKey, true).page(offset, limit).after(after)),
+                    Project::getProjectOfRow);
+        }
+
+        return projects
+                .compose(DBPolicy.QUERY::apply)
                 .onErrorResumeNext(throwable -> {
-                    Logger.info(String.format("DB: failed to search for projects with name containing: %s with limit: %s and offset: %s", searchText, limit, offset));
+                    Log.warn(Log.DB, "failed to search for projects with name containing: %s with limit: %s and offset: %s", searchText, limit, offset);
 
                     return Observable.error(new CouchbaseException(String.format("DB: failed to search for projects with name containing: %s with limit: %s and offset: %s", searchText, limit, offset)));
                 })
@@ -280,18 +298,13 @@ public class Project {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: Getting project name for project with ID: %s", projectId));
+        Log.info(Log.DB, "Getting project name for project with ID: %s", projectId);
 
-        return mBucket.query(N1qlQuery.simple(select(Expression.x("name")).from(DBConfig.BUCKET_NAME)
-                .useKeys(Expression.s(projectId)))).timeout(1000, TimeUnit.MILLISECONDS)
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> Observable.just(row.value()))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return mStorage.get(projectId).map(projectDocument -> JsonObject.create().put("name", projectDocument.content().getString("name")))
+                .compose(DBPolicy.READ::apply)
                 .onErrorResumeNext(throwable -> {
 
-                    Logger.info(String.format("DB: Failed to Get project name for project with ID: %s, General DB exception", projectId));
+                    Log.warn(Log.DB, "Failed to Get project name for project with ID: %s, General DB exception", projectId);
 
                     return Observable.error(new CouchbaseException(String.format("Failed to get project name for project  with ID: %s, General DB exception", projectId)));
                 }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
@@ -302,7 +315,7 @@ public class Project {
      * Adds 1 to the contributions count of the project with the provided ID.
      *
      * @param projectId The ID of the project to update.
-     * @return An observable of Json object containing the project id and the new contributions count.
+     * @return An observable of Json object containing the project id and the count waiting to be written under pending, or the new contributions count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToProjectContributionCount(String projectId) {
         try {
@@ -311,24 +324,19 @@ public class Project {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: Adding 1 to contributions count of project with id: %s", projectId));
+        Log.info(Log.DB, "Adding 1 to contributions count of project with id: %s", projectId);
 
-        return mBucket.query(N1qlQuery.simple(update(Expression.x(DBConfig.BUCKET_NAME + " project")).useKeys(Expression.s(projectId))
-                .set("contributions_count", Expression.x("contributions_count + " + 1))
-                .returning(Expression.x("contributions_count, meta(project).id"))))
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> Observable.just(row.value()))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return Counter.addBuffered(projectId, contributionsCountKey, 1)
+                .doOnNext(count -> Rankings.addContributions(projectId, 1))
+                .compose(DBPolicy.COUNTER::apply)
                 .onErrorResumeNext(throwable -> {
                     if (throwable instanceof CASMismatchException) {
                         //// TODO: 4/1/16 needs more accurate handling in the future.
-                        Logger.info(String.format("DB: Failed to add 1 to contributions count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to add 1 to contributions count of project with id: %s", projectId);
 
                         return Observable.error(new CASMismatchException(String.format("DB: Failed to add 1 to contributions count of project with id: %s, General DB exception.", projectId)));
                     } else {
-                        Logger.info(String.format("DB: Failed to add 1 to contributions count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to add 1 to contributions count of project with id: %s", projectId);
 
                         return Observable.error(new CouchbaseException(String.format("DB: Failed to add 1 to contributions count of project with id: %s, General DB exception.", projectId)));
                     }
@@ -339,7 +347,7 @@ public class Project {
      * Adds 1 to the enrollments count of the project with the provided ID.
      *
      * @param projectId The ID of the project to update.
-     * @return An observable of Json object containing the project id and the new enrollments count.
+     * @return An observable of Json object containing the project id and the count waiting to be written under pending, or the new enrollments count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToProjectEnrollmentsCount(String projectId) {
         try {
@@ -348,24 +356,20 @@ public class Project {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: Adding 1 to contributions count of project with id: %s", projectId));
+        Log.info(Log.DB, "Adding 1 to contributions count of project with id: %s", projectId);
 
-        return mBucket.query(N1qlQuery.simple(update(Expression.x(DBConfig.BUCKET_NAME + " project")).useKeys(Expression.s(projectId))
-                .set("enrollments_count", Expression.x("enrollments_count + " + 1))
-                .returning(Expression.x("enrollments_count, meta(project).id"))))
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> Observable.just(row.value()))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return Counter.addBuffered(projectId, enrollmentsCountKey, 1)
+                .doOnNext(count -> SearchIndex.addPopularity(projectId, 1))
+                .doOnNext(count -> Rankings.addEnrollments(projectId, 1))
+                .compose(DBPolicy.COUNTER::apply)
                 .onErrorResumeNext(throwable -> {
                     if (throwable instanceof CASMismatchException) {
                         //// TODO: 4/1/16 needs more accurate handling in the future.
-                        Logger.info(String.format("DB: Failed to add 1 to enrollments count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to add 1 to enrollments count of project with id: %s", projectId);
 
                         return Observable.error(new CASMismatchException(String.format("DB: Failed to add 1 to enrollments count of project with id: %s, General DB exception.", projectId)));
                     } else {
-                        Logger.info(String.format("DB: Failed to add 1 to enrollments count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to add 1 to enrollments count of project with id: %s", projectId);
 
                         return Observable.error(new CouchbaseException(String.format("DB: Failed to add 1 to enrollments count of project with id: %s, General DB exception.", projectId)));
                     }
@@ -376,7 +380,7 @@ public class Project {
      * Remove 1 From the enrollments count of the project with the provided ID.
      *
      * @param projectId The ID of the project to update.
-     * @return An observable of Json object containing the project id and the new enrollments count.
+     * @return An observable of Json object containing the project id and the count waiting to be written under pending, or the new enrollments count if counter buffering is disabled.
      */
     public static Observable<JsonObject> remove1FromProjectEnrollmentsCount(String projectId) {
         try {
@@ -385,24 +389,20 @@ public class Project {
             return Observable.error(e);
         }
 
-        Logger.info(String.format("DB: Removing 1 from contributions count of project with id: %s", projectId));
+        Log.info(Log.DB, "Removing 1 from contributions count of project with id: %s", projectId);
 
-        return mBucket.query(N1qlQuery.simple(update(Expression.x(DBConfig.BUCKET_NAME + " project")).useKeys(Expression.s(projectId))
-                .set("enrollments_count", Expression.x("enrollments_count - " + 1))
-                .returning(Expression.x("enrollments_count, meta(project).id"))))
-                .flatMap(AsyncN1qlQueryResult::rows).flatMap(row -> Observable.just(row.value()))
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return Counter.addBuffered(projectId, enrollmentsCountKey, -1)
+                .doOnNext(count -> SearchIndex.addPopularity(projectId, -1))
+                .doOnNext(count -> Rankings.addEnrollments(projectId, -1))
+                .compose(DBPolicy.COUNTER::apply)
                 .onErrorResumeNext(throwable -> {
                     if (throwable instanceof CASMismatchException) {
                         //// TODO: 4/1/16 needs more accurate handling in the future.
-                        Logger.info(String.format("DB: Failed to remove 1 from enrollments count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to remove 1 from enrollments count of project with id: %s", projectId);
 
                         return Observable.error(new CASMismatchException(String.format("DB: Failed to remove 1 from enrollments count of project with id: %s, General DB exception.", projectId)));
                     } else {
-                        Logger.info(String.format("DB: Failed to remove 1 from enrollments count of project with id: %s", projectId));
+                        Log.warn(Log.DB, "Failed to remove 1 from enrollments count of project with id: %s", projectId);
 
                         return Observable.error(new CouchbaseException(String.format("DB: Failed to remove 1 from enrollments count of project with id: %s, General DB exception.", projectId)));
                     }
@@ -425,11 +425,8 @@ public class Project {
 
         JsonDocument projectDocument = JsonDocument.create(projectId, DBConfig.removeIdFromJson(projectJsonObject));
 
-        return mBucket.replace(projectDocument).timeout(500, TimeUnit.MILLISECONDS)
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return mStorage.replace(projectDocument)
+                .compose(DBPolicy.WRITE::apply)
                 .onErrorResumeNext(throwable -> {
                     if (throwable instanceof DocumentDoesNotExistException) {
                         return Observable.error(new DocumentDoesNotExistException("Failed to update project, ID dosen't exist in DB"));
@@ -440,7 +437,9 @@ public class Project {
                     } else {
                         return Observable.error(new CouchbaseException("Failed to update project, General DB exception "));
                     }
-                });
+                }).doOnNext(document -> SearchIndex.index(projectId, document.content()))
+                .doOnNext(document -> Rankings.index(projectId, document.content()))
+                .doOnNext(document -> UserProjects.index(projectId, document.content()));
     }
 
 
@@ -457,31 +456,80 @@ public class Project {
             return Observable.error(e);
         }
 
-        return mBucket.remove(projectId).timeout(500, TimeUnit.MILLISECONDS)
-                .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
-                        .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
-                .retryWhen(RetryBuilder.anyOf(TimeoutException.class)
-                        .delay(Delay.fixed(500, TimeUnit.MILLISECONDS)).once().build())
+        return mStorage.remove(projectId)
+                .compose(DBPolicy.WRITE::apply)
                 .onErrorResumeNext(throwable -> {
                     if (throwable instanceof DocumentDoesNotExistException) {
                         return Observable.error(new DocumentDoesNotExistException("Failed to delete project, ID dosen't exist in DB"));
                     } else {
                         return Observable.error(new CouchbaseException("Failed to delete project, General DB exception "));
                     }
-                });
+                }).doOnNext(document -> SearchIndex.remove(projectId))
+                .doOnNext(document -> Rankings.remove(projectId))
+                .doOnNext(document -> UserProjects.remove(projectId));
+    }
+
+
+    /**
+     * Put the current contributions and enrollments counts into a project.
+     *
+     * @param project the project json object with the id field added.
+     * @return an observable of the project.
+     */
+    static Observable<JsonObject> mergeCounters(JsonObject project) {
+        return Counter.merge(project.getString("id"), project, contributionsCountKey, enrollmentsCountKey);
+    }
+
+    /**
+     * Get a project of a page served by an index, by its id instead of querying the DB.
+     *
+     * @param projectId the id of the project.
+     * @param cursor the cursor of the page that starts after the project.
+     * @return an observable of the project merged with its category and counters and with the id and cursor fields added, empty if it doesn't exist anymore.
+     */
+    static Observable<JsonObject> getListedProject(String projectId, String cursor) {
+        return mStorage.get(projectId)
+                .flatMap(projectDocument -> DBConfig.embedIdAndCategoryIntoProject(projectDocument.id(), projectDocument.content()))
+                .concatMap(Project::mergeCounters)
+                .map(project -> project.put(Cursor.CURSOR_KEY, cursor));
+    }
+
+    /**
+     * Complete a project of a page queried from the DB.
+     *
+     * @param row the row of the listing, with the id and the project.
+     * @return an observable of the project merged with its category and counters and with the id and cursor fields added.
+     */
+    static Observable<JsonObject> getProjectOfRow(JsonObject row) {
+        return DBConfig.embedIdAndCategoryIntoProject(row.getString("id"), row.getObject("project"))
+                .concatMap(Project::mergeCounters)
+                .map(project -> Cursor.attach(row, project));
     }
 
+    /**
+     * @return the ranking serving the projects sorted by a field, null if the field has none.
+     */
+    private static String rankingOf(String sortBy) {
+        if (contributionsCountKey.equals(sortBy)) {
+            return Rankings.POPULAR;
+        }
+        return "created_at".equals(sortBy) ? Rankings.LATEST : null;
+    }
+
+    private static boolean isCounter(String field) {
+        return contributionsCountKey.equals(field) || enrollmentsCountKey.equals(field);
+    }
 
     private static void checkDBStatus() {
-        if (bucket.isClosed()) {
+        if (DBConfig.storage().isClosed()) {
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = bucket;
+                mStorage = DBConfig.storage();
             } else {
                 throw new BucketClosedException("Failed to open bucket due to timeout or backpressure");
 
             }
         } else {
-            mBucket = bucket;
+            mStorage = DBConfig.storage();
         }
     }
 
@@ -0,0 +1,251 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Process-local rankings of the projects for the first screens of the app: popular (by contributions count), latest (by creation time),
+ * featured (the featured projects by enrollments count) and every category (its projects by enrollments count).
+ * Every ranking is a sorted set kept up to date by the project writes and the count changes,
+ * so a page is read in O(page size) after a cursor, or O(offset + page size) without one, without querying the DB,
+ * in the order and with the cursors of the listings it replaces.
+ * Built when the DB is initialized, until then the listings query the DB.
+ */
+class Rankings {
+    static final String POPULAR = "popular";
+    static final String LATEST = "latest";
+    static final String FEATURED = "featured";
+    private static final String CATEGORY_PREFIX = "category:";
+
+    private static final Map<String, Ranked> projects = new ConcurrentHashMap<>();
+    private static final Map<String, NavigableSet<Entry>> rankings = new ConcurrentHashMap<>();
+    private static final Object writeLock = new Object();
+    private static volatile boolean loaded;
+
+    /**
+     * @return the name of the ranking of the projects of a category.
+     */
+    static String category(String categoryId) {
+        return CATEGORY_PREFIX + categoryId;
+    }
+
+    /**
+     * Rank all the projects in the DB with their current counts.
+     * @return an observable of the number of ranked projects.
+     */
+    static Observable<Integer> rebuild() {
+        return DBConfig.storage().list(Listing.of("project").whereIdHasPrefix().page(0, Integer.MAX_VALUE))
+                .concatMap(row -> Project.mergeCounters(row.getObject("project").put("id", row.getString("id"))))
+                .doOnNext(project -> index(project.getString("id"), project, true))
+                .count()
+                .doOnNext(count -> {
+                    loaded = true;
+                    Logger.info(String.format("DB: Rankings built with %s projects", count));
+                });
+    }
+
+    static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Add a project to the rankings or re-rank it after an update, the counts of an already ranked project are kept.
+     */
+    static void index(String projectId, JsonObject project) {
+        index(projectId, project, false);
+    }
+
+    private static void index(String projectId, JsonObject project, boolean replaceCounts) {
+        synchronized (writeLock) {
+            Ranked previous = projects.get(projectId);
+            long contributions = previous != null && !replaceCounts ? previous.contributions : count(project, "contributions_count");
+            long enrollments = previous != null && !replaceCounts ? previous.enrollments : count(project, "enrollments_count");
+            replace(projectId, previous, new Ranked(contributions, enrollments, project.getString("created_at"),
+                    Boolean.TRUE.equals(project.get("is_featured")), project.getString("category_id")));
+        }
+    }
+
+    static void remove(String projectId) {
+        synchronized (writeLock) {
+            replace(projectId, projects.get(projectId), null);
+        }
+    }
+
+    static void addContributions(String projectId, long delta) {
+        synchronized (writeLock) {
+            Ranked previous = projects.get(projectId);
+            if (previous != null) {
+                replace(projectId, previous, previous.withCounts(Math.max(0, previous.contributions + delta), previous.enrollments));
+            }
+        }
+    }
+
+    static void addEnrollments(String projectId, long delta) {
+        synchronized (writeLock) {
+            Ranked previous = projects.get(projectId);
+            if (previous != null) {
+                replace(projectId, previous, previous.withCounts(previous.contributions, Math.max(0, previous.enrollments + delta)));
+            }
+        }
+    }
+
+    /**
+     * @param ranking {@link #POPULAR}, {@link #LATEST}, {@link #FEATURED} or the ranking of a category.
+     * @param after the cursor to start after, null to start at the offset.
+     * @return the page of the ranking.
+     * @throws IllegalArgumentException if the cursor doesn't come from this ranking.
+     */
+    static List<Hit> page(String ranking, int offset, int limit, Cursor after) {
+        NavigableSet<Entry> entries = rankings.getOrDefault(ranking, Collections.emptyNavigableSet());
+        if (after != null) {
+            Object sortValue = after.sortValue() instanceof Number ? (Object) ((Number) after.sortValue()).longValue() : after.sortValue();
+            if (!sortValueType(ranking).isInstance(sortValue)) {
+                throw new IllegalArgumentException("Invalid cursor for ranking: " + ranking);
+            }
+            entries = entries.tailSet(new Entry(after.id(), (Comparable<?>) sortValue), false);
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        int skipped = 0;
+        for (Entry entry : entries) {
+            if (hits.size() >= limit) {
+                break;
+            }
+            if (after == null && skipped < offset) {
+                skipped++;
+                continue;
+            }
+            hits.add(new Hit(entry.id, entry.sortValue));
+        }
+        return hits;
+    }
+
+    /**
+     * @return the type of the sort values of a ranking, every entry of the ranking and every cursor after one of them has it.
+     */
+    private static Class<?> sortValueType(String ranking) {
+        return LATEST.equals(ranking) ? String.class : Long.class;
+    }
+
+    /**
+     * Move a project from the positions of its previous state to the positions of its new state.
+     */
+    private static void replace(String projectId, Ranked previous, Ranked next) {
+        if (previous != null) {
+            for (Map.Entry<String, Comparable<?>> position : previous.positions().entrySet()) {
+                NavigableSet<Entry> ranking = rankings.get(position.getKey());
+                if (ranking != null) {
+                    ranking.remove(new Entry(projectId, position.getValue()));
+                }
+            }
+        }
+        if (next == null) {
+            projects.remove(projectId);
+            return;
+        }
+        for (Map.Entry<String, Comparable<?>> position : next.positions().entrySet()) {
+            rankings.computeIfAbsent(position.getKey(), key -> new ConcurrentSkipListSet<>(Entry.ORDER))
+                    .add(new Entry(projectId, position.getValue()));
+        }
+        projects.put(projectId, next);
+    }
+
+    private static long count(JsonObject project, String field) {
+        Object count = project.get(field);
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    /**
+     * What a project is ranked by, never changed once ranked so its positions can be found and removed.
+     */
+    private static class Ranked {
+        private final long contributions;
+        private final long enrollments;
+        private final String createdAt;
+        private final boolean featured;
+        private final String categoryId;
+
+        Ranked(long contributions, long enrollments, String createdAt, boolean featured, String categoryId) {
+            this.contributions = contributions;
+            this.enrollments = enrollments;
+            this.createdAt = createdAt;
+            this.featured = featured;
+            this.categoryId = categoryId;
+        }
+
+        Ranked withCounts(long contributions, long enrollments) {
+            return new Ranked(contributions, enrollments, createdAt, featured, categoryId);
+        }
+
+        /**
+         * @return the sort value of the project in every ranking it is in.
+         */
+        Map<String, Comparable<?>> positions() {
+            Map<String, Comparable<?>> positions = new ConcurrentHashMap<>();
+            positions.put(POPULAR, contributions);
+            if (createdAt != null) {
+                positions.put(LATEST, createdAt);
+            }
+            if (featured) {
+                positions.put(FEATURED, enrollments);
+            }
+            if (categoryId != null) {
+                positions.put(category(categoryId), enrollments);
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * A project in a ranking, ranked by its sort value descending then by its id.
+     */
+    private static class Entry {
+        @SuppressWarnings("unchecked")
+        private static final Comparator<Entry> ORDER = (first, second) -> {
+            int bySortValue = ((Comparable<Object>) second.sortValue).compareTo(first.sortValue);
+            return bySortValue != 0 ? bySortValue : first.id.compareTo(second.id);
+        };
+
+        private final String id;
+        private final Comparable<?> sortValue;
+
+        Entry(String id, Comparable<?> sortValue) {
+            this.id = id;
+            this.sortValue = sortValue;
+        }
+    }
+
+    /**
+     * A project of a ranking page.
+     */
+    static class Hit {
+        private final String id;
+        private final Object sortValue;
+
+        Hit(String id, Object sortValue) {
+            this.id = id;
+            this.sortValue = sortValue;
+        }
+
+        String id() {
+            return id;
+        }
+
+        /**
+         * @return the cursor of the page that starts after this project.
+         */
+        String cursor() {
+            return Cursor.encode(sortValue, id);
+        }
+    }
+}
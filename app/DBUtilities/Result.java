@@ -1,37 +1,30 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonArray;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
-import java.util.concurrent.TimeUnit;
-
-import static com.couchbase.client.java.query.Select.select;
-import static com.couchbase.client.java.query.Update.update;
-import static com.couchbase.client.java.query.dsl.clause.UpdateForClause.forIn;
-import static com.couchbase.client.java.query.dsl.functions.ArrayFunctions.arrayAppend;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by rashwan on 3/29/16.
  */
 public class Result {
-    private static AsyncBucket mBucket;
+    private static final String RESULTS_SEGMENT_SIZE_CONFIG_KEY = "storage.results.segment-size";
+    private static final String TALLIES_KEY = "tallies";
+    private static final String TALLY_KEY_SEPARATOR = ":";
+    private static Storage mStorage;
 
     /**
      * Create and save a project's results. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
@@ -44,17 +37,14 @@ public class Result {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: Adding a result document with ID: %s ,to the DB ",resultId));
-        JsonDocument resultDocument = JsonDocument.create (resultId,resultObject);
-
-        return mBucket.insert (resultDocument).single ().timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Adding a result document with ID: %s ,to the DB ",resultId);
+        JsonDocument resultDocument = JsonDocument.create (resultId,Segments.header (resultObject,RESULTS_SEGMENT_SIZE_CONFIG_KEY));
+
+        return mStorage.insert (resultDocument).single ()
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentAlreadyExistsException) {
-                    Logger.info (String.format ("DB: Failed to add a result document with ID: %s ,to the DB ",resultId));
+                    Log.warn (Log.DB, "Failed to add a result document with ID: %s ,to the DB ",resultId);
 
                     return Observable.error (new DocumentAlreadyExistsException (String.format ("Failed to create result document with ID: %s , ID already exists",resultId)));
                 } else {
@@ -77,51 +67,87 @@ public class Result {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Getting a result document with ID: %s ,offset: %s and limit: %s",resultId,offset,limit));
+        Log.info (Log.DB, "Getting a result document with ID: %s ,offset: %s and limit: %s",resultId,offset,limit);
 
         String projectId = "project::" + DBConfig.stripIdFromPrefix (resultId);
-        Logger.info (String.format ("DB: Getting template ID for project with ID : %s",projectId));
-
-        int endIndex = offset + limit ;
+        Log.info (Log.DB, "Getting template ID for project with ID : %s",projectId);
 
-        return mBucket.query (N1qlQuery.simple (select(Expression.x ("template_id")).from (Expression.x (DBConfig.BUCKET_NAME + " project"))
-        .useKeys (Expression.s (projectId)))).flatMap (AsyncN1qlQueryResult::rows)
-        .flatMap (row -> Observable.just (row.value ())).flatMap (object -> {
-            Logger.info (String.format ("DB: Getting results for project with template ID: %s",object.getInt ("template_id")));
+        return mStorage.lookup (projectId,"template_id").flatMap (object -> {
+            Log.info (Log.DB, "Getting results for project with template ID: %s",object.getInt ("template_id"));
             if (object.getInt ("template_id") == 1){
 
-                return mBucket.query (N1qlQuery.simple (select ("contributions_count, " +
-                        Expression.x ("{") + Expression.s ("yes") + Expression.x (":results.yes[" + offset + ":array_min([(array_length(results.yes))," + endIndex + "])], ")
-                        + Expression.s ("no") + Expression.x (":results.no[" + offset + ":array_min([(array_length(results.no))," + endIndex + "])]}")
-                        + Expression.x (" as results"))
-                        .from (Expression.x (DBConfig.BUCKET_NAME)).useKeys (Expression.s (resultId))))
-                        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
+                return getResults (resultId,Arrays.asList ("results.yes","results.no"),offset,limit)
+                        .flatMap (object1 -> Counter.merge (resultId,object1,"contributions_count"))
                         .filter (object1 -> object1.getInt ("contributions_count")!=0);
 
-            }else if (object.getInt ("template_id") == 2 || object.getInt ("template_id") == 3 || object.getInt ("template_id") == 4){
+            }else if (object.getInt ("template_id") == 2 || object.getInt ("template_id") == 4){
+
+                return getResults (resultId,Collections.singletonList ("results"),offset,limit)
+                    .flatMap (object1 -> Counter.merge (resultId,object1,"contributions_count"))
+                    .filter (object1 -> object1.getInt ("contributions_count")!=0);
+
+            }else if (object.getInt ("template_id") == 3){
 
-                return mBucket.query (N1qlQuery.simple (select ("contributions_count, " + Expression.x ("results[" + offset
-                    + ":array_min([(array_length(results))," + endIndex + "])]")
-                    .as ("results")).from (DBConfig.BUCKET_NAME).useKeys (Expression.s (resultId))))
-                    .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
+                return mStorage.getWithSlices (resultId,Arrays.asList ("contributions_count",TALLIES_KEY),
+                    Collections.singletonList ("results"),offset,limit)
+                    .map (Result::mergeTallies)
+                    .flatMap (object1 -> Counter.merge (resultId,object1,"contributions_count"))
                     .filter (object1 -> object1.getInt ("contributions_count")!=0);
 
             }
                 return Observable.just (JsonObject.create ().put ("id",DBConfig.WRONG_TEMPLATE_NUMBER));
             })
 
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        .compose (DBPolicy.READ::apply)
         .onErrorResumeNext (throwable -> {
 
-            Logger.info (String.format ("DB: Failed to Get a result document with ID: %s ,offset: %s and limit: %s",resultId,offset,limit));
+            Log.warn (Log.DB, "Failed to Get a result document with ID: %s ,offset: %s and limit: %s",resultId,offset,limit);
             return Observable.error (new CouchbaseException (String.format ("DB: Failed to Get a result document with ID: %s ,offset: %s and limit: %s, General DB exception",resultId,offset,limit)));
         })
         .defaultIfEmpty(JsonObject.create().put ("id",DBConfig.EMPTY_JSON_OBJECT));
     }
 
+    /**
+     * Get the contributions count and a window of the results lists of a result document,
+     * reading only the segments overlapping the window if its lists are segmented.
+     * @param arrayPaths the paths of the results lists of the result documents that aren't segmented.
+     */
+    private static Observable<JsonObject> getResults (String resultId,List<String> arrayPaths,int offset,int limit){
+        return mStorage.lookup (resultId,"contributions_count",Segments.SEGMENT_SIZE_KEY,Segments.SEGMENTED_KEY)
+            .flatMap (header -> Segments.isSegmented (header)
+                    ? Segments.window (resultId,header,offset,limit,false)
+                    : mStorage.getWithSlices (resultId,Collections.singletonList ("contributions_count"),arrayPaths,offset,limit));
+    }
+
+    /**
+     * Add the tallies of the answers to the counts of their questions in the results list of a template 3 result, and remove them.
+     */
+    private static JsonObject mergeTallies (JsonObject result){
+        JsonObject tallies = result.getObject (TALLIES_KEY);
+        result.removeKey (TALLIES_KEY);
+        JsonArray questions = result.getArray ("results");
+        if (tallies == null || questions == null){
+            return result;
+        }
+
+        for (Object question : questions) {
+            if (!(question instanceof JsonObject)){
+                continue;
+            }
+            JsonObject questionObject = (JsonObject) question;
+            String prefix = questionObject.get ("id") + TALLY_KEY_SEPARATOR;
+            for (String key : tallies.getNames ()) {
+                if (key.startsWith (prefix) && tallies.get (key) instanceof Number){
+                    String answerCount = key.substring (prefix.length ());
+                    Object count = questionObject.get (answerCount);
+                    long current = count instanceof Number ? ((Number) count).longValue () : 0;
+                    questionObject.put (answerCount,MemoryStorage.number (current + ((Number) tallies.get (key)).longValue ()));
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Update results of a project. can error with {@link CouchbaseException},{@link DocumentDoesNotExistException},{@link CASMismatchException} and {@link BucketClosedException} .
      * @param resultId The id of the results document to be updated .
@@ -137,11 +163,8 @@ public class Result {
 
         JsonDocument resultDocument = JsonDocument.create (resultId,DBConfig.removeIdFromJson (resultJsonObject));
 
-        return mBucket.replace (resultDocument).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.replace (resultDocument)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException){
                     return Observable.error (new DocumentDoesNotExistException ("Failed to update result, ID dosen't exist in DB"));
@@ -159,7 +182,7 @@ public class Result {
     /**
      * Adds 1 to the contributions count of the result with the provided ID.
      * @param resultId The ID of the result to update.
-     * @return An observable of Json object containing the result id and the new contributions count.
+     * @return An observable of Json object containing the result id and the count waiting to be written under pending, or the new contributions count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToResultsContributionCount(String resultId){
         try {
@@ -168,24 +191,18 @@ public class Result {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding 1 to contributions count of result with id: %s",resultId));
+        Log.info (Log.DB, "Adding 1 to contributions count of result with id: %s",resultId);
 
-        return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " result")).useKeys (Expression.s (resultId))
-            .set ("contributions_count",Expression.x ("contributions_count + " + 1 ))
-            .returning (Expression.x ("contributions_count, meta(result).id"))))
-            .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return Counter.addBuffered (resultId,"contributions_count",1)
+            .compose (DBPolicy.COUNTER::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof CASMismatchException){
                     //// TODO: 4/1/16 needs more accurate handling in the future.
-                    Logger.info (String.format ("DB: Failed to add 1 to contributions count of result with id: %s",resultId));
+                    Log.warn (Log.DB, "Failed to add 1 to contributions count of result with id: %s",resultId);
 
                     return Observable.error (new CASMismatchException (String.format ("DB: Failed to add 1 to contributions count of result with id: %s, General DB exception.",resultId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to add 1 to contributions count of result with id: %s",resultId));
+                    Log.warn (Log.DB, "Failed to add 1 to contributions count of result with id: %s",resultId);
 
                     return Observable.error (new CouchbaseException (String.format ("DB: Failed to add 1 to contributions count of result with id: %s, General DB exception.",resultId)));
                 }
@@ -206,26 +223,20 @@ public class Result {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject.toString (),resultId));
+        Log.info (Log.DB, "Adding a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject,resultId);
 
-        return mBucket.query (N1qlQuery.simple (update(Expression.x (DBConfig.BUCKET_NAME + " result"))
-            .useKeys (Expression.s (resultId)).set (Expression.x ("results." + answer),
-                    arrayAppend(Expression.x ("results." + answer),Expression.x (locationObject)))
-            .returning (Expression.x ("results." + answer + "[-1] as location,meta(result).id")))).timeout (1000,TimeUnit.MILLISECONDS)
-            .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
+        return Segments.append (resultId,"results." + answer,locationObject)
+            .map (row -> JsonObject.create ().put ("location",row.get ("value")).put ("id",row.getString ("id")))
             .filter (result -> result.containsKey ("location"))
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof CASMismatchException){
                     //// TODO: 4/1/16 needs more accurate handling in the future.
-                    Logger.info (String.format ("DB: Failed to add a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject.toString (),resultId));
+                    Log.warn (Log.DB, "Failed to add a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject,resultId);
 
                     return Observable.error (new CASMismatchException (String.format ("DB: Failed to add a new result with answer: %s and contents: %s to activity with id: %s, General DB exception.",answer,locationObject.toString (),resultId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to add a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject.toString (),resultId));
+                    Log.warn (Log.DB, "Failed to add a new result with answer: %s and contents: %s to activity with id: %s",answer,locationObject,resultId);
 
                     return Observable.error (new CouchbaseException (String.format ("DB: Failed to add a new result with answer: %s and contents: %s to activity with id: %s, General DB exception.",answer,locationObject.toString (),resultId)));
                 }
@@ -234,6 +245,8 @@ public class Result {
 
     /**
      * Adds a result in the results document for projects that use Template 3.
+     * The answers are counted in the tallies object of the results document, under questionId:answer_count keys,
+     * all the answers of a contribution in one mutation.
      * @param resultId The Id of the result document to add the result to.
      * @param answers A Json array containing the answers for the questions .
      * @return An observable of Json object containing the result id .
@@ -245,37 +258,28 @@ public class Result {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding a new result to results document with id: %s",resultId));
+        Log.info (Log.DB, "Adding a new result to results document with id: %s",resultId);
 
-        return Observable.from (answers).flatMap (o -> {
+        Map<String,Long> tallies = new HashMap<> ();
+        for (Object o : answers) {
             JsonObject answerObject = ((JsonObject) o);
-            String answerCount = answerObject.getString ("ans") + "_count";
-            int questionId = answerObject.getInt ("id");
-
-            Logger.info (String.format ("DB: Adding result for answer with content: %s",answerObject.toString ()));
-
-            return mBucket.query (N1qlQuery.simple (update (DBConfig.BUCKET_NAME).useKeys (Expression.s (resultId))
-                .set (Expression.x ("result." + Expression.x (answerCount))
-                    ,Expression.x ("result." + Expression.x (answerCount) + " + 1")
-                    ,forIn("result","results").when (Expression.x ("result.id").eq (questionId)))
-                .returning (Expression.x("meta(default).id"))))
-                .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()));})
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-        .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-            .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+            tallies.merge (answerObject.get ("id") + TALLY_KEY_SEPARATOR + answerObject.getString ("ans") + "_count",1L,Long::sum);
+        }
+
+        return Observable.defer (() -> mStorage.incrementFields (resultId,TALLIES_KEY,tallies))
+        .compose (DBPolicy.COUNTER::apply)
         .onErrorResumeNext (throwable -> {
              if (throwable instanceof CASMismatchException){
                  //// TODO: 4/1/16 needs more accurate handling in the future.
-                 Logger.info (String.format ("DB: Failed to add a new result to results document with id: %s",resultId));
+                 Log.warn (Log.DB, "Failed to add a new result to results document with id: %s",resultId);
 
                  return Observable.error (new CASMismatchException (String.format ("DB: Failed to add a new result to results document with id: %s, General DB exception.",resultId)));
              } else {
-                 Logger.info (String.format ("DB: Failed to add a new result to results document with id: %s",resultId));
+                 Log.warn (Log.DB, "Failed to add a new result to results document with id: %s",resultId);
 
                  return Observable.error (new CouchbaseException (String.format ("DB: Failed to add a new result to results document with id: %s, General DB exception.",resultId)));
              }
-         }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT)).take (1);
+         }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
 
     }
 
@@ -293,32 +297,26 @@ public class Result {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding a new result with contents: %s to activity with id: %s",resultObject.toString (),resultId));
-
-        return mBucket.query (N1qlQuery.simple (update(Expression.x (DBConfig.BUCKET_NAME + " result"))
-            .useKeys (Expression.s (resultId)).set (Expression.x ("results"),
-                    arrayAppend(Expression.x ("results"),Expression.x (resultObject)))
-            .returning (Expression.x ("results[-1] as result,meta(result).id")))).timeout (1000,TimeUnit.MILLISECONDS)
-            .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Adding a new result with contents: %s to activity with id: %s",resultObject,resultId);
+
+        return Segments.append (resultId,"results",resultObject)
+            .map (row -> JsonObject.create ().put ("result",row.get ("value")).put ("id",row.getString ("id")))
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof CASMismatchException){
                     //// TODO: 4/1/16 needs more accurate handling in the future.
-                    Logger.info (String.format ("DB: Failed to add a new result with contents: %s to activity with id: %s",resultObject.toString (),resultId));
+                    Log.warn (Log.DB, "Failed to add a new result with contents: %s to activity with id: %s",resultObject,resultId);
 
                     return Observable.error (new CASMismatchException (String.format ("DB: Failed to add a new result with contents: %s to activity with id: %s, General DB exception.",resultObject.toString (),resultId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to add a new result with contents: %s to activity with id: %s",resultObject.toString (),resultId));
+                    Log.warn (Log.DB, "Failed to add a new result with contents: %s to activity with id: %s",resultObject,resultId);
 
                     return Observable.error (new CouchbaseException (String.format ("DB: Failed to add a new result with contents: %s to activity with id: %s, General DB exception.",resultObject.toString (),resultId)));
                 }
             }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
     }
     /**
-     * Delete results of a project using its id. can error with {@link CouchbaseException}, {@link DocumentDoesNotExistException} and {@link BucketClosedException} .
+     * Delete results of a project using its id, with the segments of its results lists. can error with {@link CouchbaseException}, {@link DocumentDoesNotExistException} and {@link BucketClosedException} .
      * @param resultId The id of the results document to be deleted.
      * @return An observable with Json document containing only the id .
      */
@@ -329,11 +327,9 @@ public class Result {
             return Observable.error(e);
         }
 
-        return mBucket.remove (resultId).timeout (500, TimeUnit.MILLISECONDS)
-                .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                        .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-                .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                        .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        return Segments.removeSegments (resultId).onErrorReturn (throwable -> 0)
+                .concatMap (removedSegments -> mStorage.remove (resultId))
+                .compose (DBPolicy.WRITE::apply)
                 .onErrorResumeNext (throwable -> {
                     if (throwable instanceof DocumentDoesNotExistException) {
                         return Observable.error (new DocumentDoesNotExistException ("Failed to delete result, ID dosen't exist in DB"));
@@ -344,14 +340,14 @@ public class Result {
     }
 
     private static void checkDBStatus () {
-        if (DBConfig.bucket.isClosed ()){
+        if (DBConfig.storage ().isClosed ()){
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = DBConfig.bucket;
+                mStorage = DBConfig.storage ();
             }else{
                 throw new BucketClosedException ("Failed to open bucket due to timeout or backpressure");
             }
         }else {
-            mBucket = DBConfig.bucket;
+            mStorage = DBConfig.storage ();
         }
     }
 }
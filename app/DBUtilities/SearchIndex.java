@@ -0,0 +1,351 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Process-local inverted index of the projects for the project search, built when the DB is initialized
+ * and kept up to date by the project writes.
+ * The name, description and category name of every project are split into tokens and every token into its n-grams of up to 3 characters,
+ * a search term of 3 characters or more only looks at the projects having all its trigrams, so the cost of a search depends on
+ * the number of matching projects and not on the number of projects.
+ * Results are ranked by relevance, then by enrollments count.
+ * The projects of a category are indexed again when the category is renamed or removed.
+ */
+class SearchIndex {
+    private static final int MAX_GRAM_LENGTH = 3;
+    private static final int EXACT_MATCH_SCORE = 3;
+    private static final int PREFIX_MATCH_SCORE = 2;
+    private static final int INFIX_MATCH_SCORE = 1;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> categoryProjects = new ConcurrentHashMap<>();
+    private static final Object writeLock = new Object();
+    private static volatile boolean loaded;
+
+    /**
+     * Index all the projects in the DB with their current enrollments counts.
+     * @return an observable of the number of indexed projects.
+     */
+    static Observable<Integer> rebuild() {
+        return DBConfig.storage().list(Listing.of("project").whereIdHasPrefix().page(0, Integer.MAX_VALUE))
+                .concatMap(row -> Project.mergeCounters(row.getObject("project").put("id", row.getString("id"))))
+                .doOnNext(project -> index(project.getString("id"), project, true))
+                .count()
+                .doOnNext(count -> {
+                    loaded = true;
+                    Logger.info(String.format("DB: Search index built with %s projects", count));
+                });
+    }
+
+    static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Add a project to the index or replace its indexed fields, the enrollments count of an already indexed project is kept.
+     */
+    static void index(String projectId, JsonObject project) {
+        index(projectId, project, false);
+    }
+
+    private static void index(String projectId, JsonObject project, boolean replacePopularity) {
+        synchronized (writeLock) {
+            Entry previous = entries.get(projectId);
+            long popularity = previous != null && !replacePopularity ? previous.popularity : enrollmentsCount(project);
+            List<String> description = new ArrayList<>(tokens(project.getString("brief_description")));
+            description.addAll(tokens(project.getString("detailed_description")));
+            String categoryId = project.getString("category_id");
+            replace(projectId, previous, new Entry(tokens(project.getString("name")), description,
+                    categoryId, tokens(CategoryCatalog.name(categoryId)), popularity));
+        }
+    }
+
+    static void remove(String projectId) {
+        synchronized (writeLock) {
+            Entry previous = entries.get(projectId);
+            if (previous != null) {
+                replace(projectId, previous, null);
+            }
+        }
+    }
+
+    /**
+     * Index the category name of the projects of a category again, after it was renamed or removed.
+     */
+    static void reindexCategory(String categoryId) {
+        synchronized (writeLock) {
+            List<String> category = tokens(CategoryCatalog.name(categoryId));
+            for (String projectId : new ArrayList<>(categoryProjects.getOrDefault(categoryId, Collections.emptySet()))) {
+                Entry previous = entries.get(projectId);
+                if (previous != null) {
+                    replace(projectId, previous, previous.withCategory(category));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a delta to the enrollments count used to rank a project.
+     */
+    static void addPopularity(String projectId, long delta) {
+        synchronized (writeLock) {
+            entries.computeIfPresent(projectId, (id, entry) -> entry.withPopularity(Math.max(0, entry.popularity + delta)));
+        }
+    }
+
+    /**
+     * @param text the search text, every word of it must be found in the name, the description or the category of a project.
+     * @param after the cursor to start after, null to start at the offset.
+     * @return the page of the matching projects, best matches first.
+     * @throws IllegalArgumentException if the cursor isn't a search cursor.
+     */
+    static List<Hit> search(String text, int offset, int limit, Cursor after) {
+        List<String> terms = tokens(text);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> candidates = null;
+        for (String term : terms) {
+            Set<String> termCandidates = candidates(term);
+            if (candidates == null) {
+                candidates = new HashSet<>(termCandidates);
+            } else {
+                candidates.retainAll(termCandidates);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (String projectId : candidates) {
+            Entry entry = entries.get(projectId);
+            int score = entry == null ? 0 : entry.score(terms);
+            if (score > 0) {
+                hits.add(new Hit(projectId, score, entry.popularity));
+            }
+        }
+        hits.sort(Hit.RANKING);
+
+        int start = Math.max(offset, 0);
+        if (after != null) {
+            Hit last = Hit.at(after);
+            start = 0;
+            while (start < hits.size() && Hit.RANKING.compare(hits.get(start), last) <= 0) {
+                start++;
+            }
+        }
+        return new ArrayList<>(hits.subList(Math.min(start, hits.size()), Math.min(hits.size(), start + Math.max(limit, 0))));
+    }
+
+    /**
+     * @return the projects that may contain the term, all of them contain its n-grams.
+     */
+    private static Set<String> candidates(String term) {
+        if (term.length() <= MAX_GRAM_LENGTH) {
+            return postings.getOrDefault(term, Collections.emptySet());
+        }
+        Set<String> candidates = null;
+        for (int i = 0; i + MAX_GRAM_LENGTH <= term.length(); i++) {
+            Set<String> gramPostings = postings.getOrDefault(term.substring(i, i + MAX_GRAM_LENGTH), Collections.emptySet());
+            if (candidates == null) {
+                candidates = new HashSet<>(gramPostings);
+            } else {
+                candidates.retainAll(gramPostings);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Replace the entry of a project and its postings, must be called holding the write lock.
+     * @param next the new entry, null to remove the project.
+     */
+    private static void replace(String projectId, Entry previous, Entry next) {
+        if (previous != null) {
+            unpost(projectId, previous);
+            if (previous.categoryId != null) {
+                Set<String> projectIds = categoryProjects.get(previous.categoryId);
+                if (projectIds != null) {
+                    projectIds.remove(projectId);
+                    if (projectIds.isEmpty()) {
+                        categoryProjects.remove(previous.categoryId, projectIds);
+                    }
+                }
+            }
+        }
+        if (next == null) {
+            entries.remove(projectId);
+            return;
+        }
+        for (String gram : next.grams()) {
+            postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(projectId);
+        }
+        if (next.categoryId != null) {
+            categoryProjects.computeIfAbsent(next.categoryId, key -> ConcurrentHashMap.newKeySet()).add(projectId);
+        }
+        entries.put(projectId, next);
+    }
+
+    private static void unpost(String projectId, Entry entry) {
+        for (String gram : entry.grams()) {
+            Set<String> projectIds = postings.get(gram);
+            if (projectIds != null) {
+                projectIds.remove(projectId);
+                if (projectIds.isEmpty()) {
+                    postings.remove(gram, projectIds);
+                }
+            }
+        }
+    }
+
+    private static List<String> tokens(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static long enrollmentsCount(JsonObject project) {
+        Object count = project.get("enrollments_count");
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    /**
+     * The indexed fields of a project, immutable so readers never see a half updated project.
+     */
+    private static class Entry {
+        private static final int NAME_WEIGHT = 3;
+        private static final int CATEGORY_WEIGHT = 2;
+        private static final int DESCRIPTION_WEIGHT = 1;
+
+        private final List<String> name;
+        private final List<String> description;
+        private final String categoryId;
+        private final List<String> category;
+        private final long popularity;
+
+        Entry(List<String> name, List<String> description, String categoryId, List<String> category, long popularity) {
+            this.name = name;
+            this.description = description;
+            this.categoryId = categoryId;
+            this.category = category;
+            this.popularity = popularity;
+        }
+
+        Entry withPopularity(long popularity) {
+            return new Entry(name, description, categoryId, category, popularity);
+        }
+
+        Entry withCategory(List<String> category) {
+            return new Entry(name, description, categoryId, category, popularity);
+        }
+
+        Set<String> grams() {
+            Set<String> grams = new HashSet<>();
+            for (List<String> field : Arrays.asList(name, description, category)) {
+                for (String token : field) {
+                    for (int length = 1; length <= MAX_GRAM_LENGTH; length++) {
+                        for (int i = 0; i + length <= token.length(); i++) {
+                            grams.add(token.substring(i, i + length));
+                        }
+                    }
+                }
+            }
+            return grams;
+        }
+
+        /**
+         * @return the sum of the best weighted match of every term, 0 if a term doesn't match.
+         */
+        int score(List<String> terms) {
+            int score = 0;
+            for (String term : terms) {
+                int termScore = Math.max(NAME_WEIGHT * match(name, term),
+                        Math.max(CATEGORY_WEIGHT * match(category, term), DESCRIPTION_WEIGHT * match(description, term)));
+                if (termScore == 0) {
+                    return 0;
+                }
+                score += termScore;
+            }
+            return score;
+        }
+
+        private static int match(List<String> tokens, String term) {
+            int best = 0;
+            for (String token : tokens) {
+                if (token.equals(term)) {
+                    return EXACT_MATCH_SCORE;
+                } else if (token.startsWith(term)) {
+                    best = Math.max(best, PREFIX_MATCH_SCORE);
+                } else if (token.contains(term)) {
+                    best = Math.max(best, INFIX_MATCH_SCORE);
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * A matching project with its rank.
+     */
+    static class Hit {
+        private static final Comparator<Hit> RANKING = Comparator.<Hit>comparingLong(hit -> hit.score).reversed()
+                .thenComparing(Comparator.<Hit>comparingLong(hit -> hit.popularity).reversed())
+                .thenComparing(hit -> hit.id);
+
+        private final String id;
+        private final long score;
+        private final long popularity;
+
+        Hit(String id, long score, long popularity) {
+            this.id = id;
+            this.score = score;
+            this.popularity = popularity;
+        }
+
+        private static Hit at(Cursor cursor) {
+            Object rank = cursor.sortValue();
+            if (!(rank instanceof JsonArray) || ((JsonArray) rank).size() != 2
+                    || !(((JsonArray) rank).get(0) instanceof Number) || !(((JsonArray) rank).get(1) instanceof Number)) {
+                throw new IllegalArgumentException("Invalid search cursor");
+            }
+            return new Hit(cursor.id(), ((Number) ((JsonArray) rank).get(0)).longValue(), ((Number) ((JsonArray) rank).get(1)).longValue());
+        }
+
+        String id() {
+            return id;
+        }
+
+        /**
+         * @return the cursor of the page that starts after this hit.
+         */
+        String cursor() {
+            return Cursor.encode(JsonArray.from(score, popularity), id);
+        }
+    }
+}
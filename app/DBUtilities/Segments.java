@@ -0,0 +1,221 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lists stored in fixed size segment documents instead of arrays growing inside their document, used for the results and the activities.
+ * The document becomes a small header holding the segment size and the paths of its segmented lists,
+ * the length of every list is kept in a counter document and segment n of a list, with id documentId::path::n,
+ * holds the elements from position n * segment_size, every element under the field of its position.
+ * An append reserves a position by incrementing the length counter then writes the element at it, so retrying the write
+ * can't duplicate the element or shift the following ones. A position reserved by an append that failed stays empty and is skipped.
+ * An append only touches the length counter and the tail segment, a read only gets the segments overlapping the requested window.
+ * Documents created before segmenting have no segment size and keep their lists inline.
+ */
+class Segments {
+    static final String SEGMENT_SIZE_KEY = "segment_size";
+    static final String SEGMENTED_KEY = "segmented";
+    private static final String POSITION_KEY_PREFIX = "item_";
+    private static final int DEFAULT_SEGMENT_SIZE = 100;
+
+    /**
+     * Turn the empty arrays of a new document, at most two levels deep, into segmented lists.
+     * The segment size is stored in the header, so changing the configuration only affects new documents.
+     * @param document the initial content of the document, changed in place.
+     * @param sizeConfigKey the configuration key of the segment size.
+     * @return the header to store as the document.
+     */
+    static JsonObject header(JsonObject document, String sizeConfigKey) {
+        JsonArray segmented = JsonArray.create();
+        for (String name : new ArrayList<>(document.getNames())) {
+            Object value = document.get(name);
+            if (value instanceof JsonArray && ((JsonArray) value).size() == 0) {
+                segmented.add(name);
+                document.removeKey(name);
+            } else if (value instanceof JsonObject) {
+                JsonObject lists = (JsonObject) value;
+                for (String listName : new ArrayList<>(lists.getNames())) {
+                    if (lists.get(listName) instanceof JsonArray && lists.getArray(listName).size() == 0) {
+                        segmented.add(name + "." + listName);
+                        lists.removeKey(listName);
+                    }
+                }
+            }
+        }
+
+        if (segmented.size() == 0) {
+            return document;
+        }
+        return document.put(SEGMENT_SIZE_KEY, segmentSize(sizeConfigKey)).put(SEGMENTED_KEY, segmented);
+    }
+
+    /**
+     * @param header the fields of a document, including its segment size.
+     */
+    static boolean isSegmented(JsonObject header) {
+        return header.get(SEGMENT_SIZE_KEY) instanceof Number && header.getArray(SEGMENTED_KEY) != null;
+    }
+
+    /**
+     * Append a value to a list of a document, in place for the documents that aren't segmented.
+     * The position is reserved once per returned observable, subscribing to it again after a failure writes at the same position.
+     * @return an observable of json object containing the id of the document and the appended value under "value", empty if it doesn't exist.
+     */
+    static Observable<JsonObject> append(String documentId, String path, Object value) {
+        return append(DBConfig.storage(), documentId, path, value);
+    }
+
+    static Observable<JsonObject> append(Storage storage, String documentId, String path, Object value) {
+        AtomicReference<Long> reserved = new AtomicReference<>();
+
+        return storage.lookup(documentId, SEGMENT_SIZE_KEY).flatMap(header -> {
+            if (!(header.get(SEGMENT_SIZE_KEY) instanceof Number)) {
+                return storage.arrayAppend(documentId, path, value);
+            }
+            long segmentSize = ((Number) header.get(SEGMENT_SIZE_KEY)).longValue();
+            Observable<Long> position = Observable.defer(() -> reserved.get() != null
+                    ? Observable.just(reserved.get())
+                    : storage.counter(lengthId(documentId, path), 1, 1).map(length -> length - 1).doOnNext(reserved::set));
+            return position
+                    .flatMap(at -> writeToSegment(storage, segmentId(documentId, path, at / segmentSize), at, value))
+                    .map(segment -> JsonObject.create().put("value", value).put("id", documentId));
+        });
+    }
+
+    /**
+     * Get a window of every segmented list of a document.
+     * @param header the fields of the document, including its segment size and segmented paths.
+     * @param offset the number of elements to skip from the start of every list, or from its end if newestFirst.
+     * @param limit the maximum number of elements to return from every list.
+     * @param newestFirst true to count the window from the end of the lists and return it last appended first.
+     * @return an observable of json object with the other fields of the header and every list cut to the window nested under its path.
+     */
+    static Observable<JsonObject> window(String documentId, JsonObject header, int offset, int limit, boolean newestFirst) {
+        Storage storage = DBConfig.storage();
+        long segmentSize = ((Number) header.get(SEGMENT_SIZE_KEY)).longValue();
+        JsonObject document = JsonObject.create();
+        for (String name : header.getNames()) {
+            if (!SEGMENT_SIZE_KEY.equals(name) && !SEGMENTED_KEY.equals(name)) {
+                document.put(name, header.get(name));
+            }
+        }
+
+        return Observable.from(header.getArray(SEGMENTED_KEY).toList())
+                .concatMap(path -> window(storage, documentId, (String) path, segmentSize, offset, limit, newestFirst)
+                        .doOnNext(items -> putAt(document, (String) path, items)))
+                .toList().map(lists -> document);
+    }
+
+    /**
+     * Remove the segments and the length counters of the segmented lists of a document.
+     * @return an observable of the number of removed documents.
+     */
+    static Observable<Integer> removeSegments(String documentId) {
+        Storage storage = DBConfig.storage();
+
+        return storage.lookup(documentId, SEGMENT_SIZE_KEY, SEGMENTED_KEY).filter(Segments::isSegmented)
+                .concatMap(header -> Observable.from(header.getArray(SEGMENTED_KEY).toList())
+                        .concatMap(path -> storage.getCounter(lengthId(documentId, (String) path)).defaultIfEmpty(0L)
+                                .concatMap(length -> {
+                                    long segmentSize = ((Number) header.get(SEGMENT_SIZE_KEY)).longValue();
+                                    List<String> ids = new ArrayList<>();
+                                    for (long segment = 0; segment * segmentSize < length; segment++) {
+                                        ids.add(segmentId(documentId, (String) path, segment));
+                                    }
+                                    ids.add(lengthId(documentId, (String) path));
+                                    return Observable.from(ids);
+                                })))
+                .flatMap(id -> storage.remove(id).onErrorResumeNext(throwable -> Observable.empty()))
+                .count();
+    }
+
+    private static Observable<JsonArray> window(Storage storage, String documentId, String path, long segmentSize,
+                                                int offset, int limit, boolean newestFirst) {
+        return storage.getCounter(lengthId(documentId, path)).defaultIfEmpty(0L).concatMap(length -> {
+            long skipped = Math.max(offset, 0);
+            long count = Math.max(limit, 0);
+            long start = newestFirst ? Math.max(0, length - skipped - count) : skipped;
+            long end = newestFirst ? length - skipped : Math.min(length, skipped + count);
+            if (start >= end) {
+                return Observable.just(JsonArray.create());
+            }
+
+            long firstSegment = start / segmentSize;
+            List<String> segmentIds = new ArrayList<>();
+            for (long segment = firstSegment; segment <= (end - 1) / segmentSize; segment++) {
+                segmentIds.add(segmentId(documentId, path, segment));
+            }
+
+            return Observable.from(segmentIds).flatMap(storage::get).toMap(JsonDocument::id).map(segments -> {
+                List<Object> items = new ArrayList<>();
+                for (long position = start; position < end; position++) {
+                    JsonDocument segment = segments.get(segmentId(documentId, path, position / segmentSize));
+                    Object item = segment == null ? null : segment.content().get(positionKey(position));
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+
+                JsonArray window = JsonArray.create();
+                for (int i = 0; i < items.size(); i++) {
+                    window.add(items.get(newestFirst ? items.size() - 1 - i : i));
+                }
+                return window;
+            });
+        });
+    }
+
+    /**
+     * Write an element at its position in a segment, creating the segment if this is its first element.
+     * Writing the same position again replaces the element.
+     */
+    private static Observable<JsonObject> writeToSegment(Storage storage, String segmentId, long position, Object value) {
+        JsonObject field = JsonObject.create().put(positionKey(position), value);
+        return storage.setFields(segmentId, field)
+                .switchIfEmpty(Observable.defer(() ->
+                        storage.insert(JsonDocument.create(segmentId, field))
+                                .map(JsonDocument::content)
+                                .onErrorResumeNext(throwable -> throwable instanceof DocumentAlreadyExistsException
+                                        ? storage.setFields(segmentId, field) : Observable.error(throwable))));
+    }
+
+    private static void putAt(JsonObject object, String path, JsonArray items) {
+        int dot = path.indexOf('.');
+        if (dot < 0) {
+            object.put(path, items);
+            return;
+        }
+        String parent = path.substring(0, dot);
+        if (object.getObject(parent) == null) {
+            object.put(parent, JsonObject.create());
+        }
+        object.getObject(parent).put(path.substring(dot + 1), items);
+    }
+
+    private static String lengthId(String documentId, String path) {
+        return Counter.counterId(documentId, path);
+    }
+
+    private static String positionKey(long position) {
+        return POSITION_KEY_PREFIX + position;
+    }
+
+    private static String segmentId(String documentId, String path, long segment) {
+        return documentId + Counter.COUNTER_ID_SEPARATOR + path + Counter.COUNTER_ID_SEPARATOR + segment;
+    }
+
+    private static int segmentSize(String sizeConfigKey) {
+        Config config = ConfigFactory.load();
+        return config.hasPath(sizeConfigKey) ? config.getInt(sizeConfigKey) : DEFAULT_SEGMENT_SIZE;
+    }
+}
@@ -0,0 +1,258 @@
+package DBUtilities;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.time.Delay;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.util.retry.RetryBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded stage running the DB writes that follow a request, like the counters, stats, activity and result of a contribution.
+ * Effects are queued per target document: the effects of a document run in submission order, in batches of at most batch-size,
+ * one batch at a time so they never contend with each other, and at most max-concurrency documents are written at once.
+ * Effects are submitted as factories, an effect's write is created once when its turn comes and a retry subscribes to the same write again,
+ * so the state it reserved on its first run, like the position of an appended element, is reused instead of reserved twice.
+ * An effect is only retried, with an exponential backoff, when it failed without being applied: on a temporary failure, backpressure
+ * or an open circuit breaker once the DB policy of its write gave up. A timed out effect may have been applied and isn't retried,
+ * other failures are permanent and aren't retried either. Once the queue holds capacity effects new submissions are refused
+ * so the callers can push back instead of overloading the cluster.
+ */
+public class SideEffectQueue {
+    private static final String CAPACITY_CONFIG_KEY = "side-effects.capacity";
+    private static final String MAX_CONCURRENCY_CONFIG_KEY = "side-effects.max-concurrency";
+    private static final String BATCH_SIZE_CONFIG_KEY = "side-effects.batch-size";
+    private static final String MAX_RETRIES_CONFIG_KEY = "side-effects.max-retries";
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long SHUTDOWN_DRAIN_TIMEOUT = 5000;
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private final Queue<Target> readyTargets = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger runningTargets = new AtomicInteger();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final int capacity;
+    private final int maxConcurrency;
+    private final int batchSize;
+    private final int maxRetries;
+    private volatile long lag;
+
+    SideEffectQueue(int capacity, int maxConcurrency, int batchSize, int maxRetries) {
+        this.capacity = capacity;
+        this.maxConcurrency = maxConcurrency;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Create a queue configured by side-effects.capacity, side-effects.max-concurrency, side-effects.batch-size and side-effects.max-retries.
+     */
+    static SideEffectQueue fromConfig() {
+        Config config = ConfigFactory.load();
+        return new SideEffectQueue(
+                config.hasPath(CAPACITY_CONFIG_KEY) ? config.getInt(CAPACITY_CONFIG_KEY) : DEFAULT_CAPACITY,
+                config.hasPath(MAX_CONCURRENCY_CONFIG_KEY) ? config.getInt(MAX_CONCURRENCY_CONFIG_KEY) : DEFAULT_MAX_CONCURRENCY,
+                config.hasPath(BATCH_SIZE_CONFIG_KEY) ? config.getInt(BATCH_SIZE_CONFIG_KEY) : DEFAULT_BATCH_SIZE,
+                config.hasPath(MAX_RETRIES_CONFIG_KEY) ? config.getInt(MAX_RETRIES_CONFIG_KEY) : DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Queue an effect, its write isn't created before its turn comes.
+     * @param targetId the id of the document the effect writes.
+     * @param effect the factory of the write to run, called once.
+     * @return false if the queue is full and the effect was refused.
+     */
+    public boolean submit(String targetId, Func0<? extends Observable<?>> effect) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            refused.increment();
+            Logger.warn(String.format("DB: Side effect queue is full, refused an effect on: %s", targetId));
+            return false;
+        }
+
+        Effect queued = new Effect(effect, System.currentTimeMillis());
+        while (true) {
+            Target target = targets.computeIfAbsent(targetId, Target::new);
+            synchronized (target) {
+                // a target is removed once it has nothing left to run, its document then gets a new one
+                if (target.removed) {
+                    continue;
+                }
+                target.effects.add(queued);
+                if (!target.scheduled) {
+                    target.scheduled = true;
+                    readyTargets.add(target);
+                }
+            }
+            break;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * @return true if the queue can't take a request's worth of effects anymore, new requests should be refused.
+     */
+    public boolean isSaturated() {
+        return depth.get() >= capacity - batchSize;
+    }
+
+    /**
+     * @return the number of queued effects, running ones included.
+     */
+    public int depth() {
+        return depth.get();
+    }
+
+    /**
+     * @return how long the last started effect waited in the queue, in milliseconds.
+     */
+    public long lag() {
+        return lag;
+    }
+
+    /**
+     * @return the number of effects that failed after all their retries.
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return the number of effects refused because the queue was full.
+     */
+    public long refused() {
+        return refused.sum();
+    }
+
+    /**
+     * Wait for the queued effects to run, at most a few seconds.
+     */
+    void stop() {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_TIMEOUT;
+        Logger.info(String.format("DB: Side effect queue stopping, waiting for %s effects", depth.get()));
+        while (depth.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (depth.get() > 0) {
+            Logger.warn(String.format("DB: Side effect queue stopped with %s effects not run", depth.get()));
+        }
+    }
+
+    /**
+     * Start a batch for every ready target while less than max-concurrency targets are running.
+     */
+    private void drain() {
+        while (true) {
+            int running = runningTargets.get();
+            if (running >= maxConcurrency) {
+                return;
+            }
+            if (readyTargets.isEmpty()) {
+                return;
+            }
+            if (!runningTargets.compareAndSet(running, running + 1)) {
+                continue;
+            }
+            Target target = readyTargets.poll();
+            if (target == null) {
+                runningTargets.decrementAndGet();
+                return;
+            }
+            runBatch(target);
+        }
+    }
+
+    private void runBatch(Target target) {
+        List<Effect> batch = new ArrayList<>();
+        synchronized (target) {
+            while (batch.size() < batchSize && !target.effects.isEmpty()) {
+                batch.add(target.effects.poll());
+            }
+        }
+
+        Observable.from(batch)
+                .concatMap(effect -> Observable.defer(() -> {
+                    lag = System.currentTimeMillis() - effect.submittedAt;
+                    // the write is created once, a retry subscribes to it again
+                    return effect.write.call()
+                            .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class,
+                                    DBPolicy.CircuitOpenException.class)
+                                    .delay(Delay.exponential(TimeUnit.MILLISECONDS, 2000, 100)).max(maxRetries).build());
+                })
+                        .ignoreElements()
+                        .onErrorResumeNext(throwable -> {
+                            failed.increment();
+                            Logger.error(String.format("DB: Side effect on: %s failed after %s retries, %s", target.id, maxRetries, throwable.getMessage()));
+                            return Observable.empty();
+                        })
+                        .doOnTerminate(depth::decrementAndGet))
+                .doOnTerminate(() -> {
+                    synchronized (target) {
+                        if (target.effects.isEmpty()) {
+                            target.scheduled = false;
+                            target.removed = true;
+                            targets.remove(target.id, target);
+                        } else {
+                            readyTargets.add(target);
+                        }
+                    }
+                    runningTargets.decrementAndGet();
+                    drain();
+                })
+                // batches finishing synchronously would otherwise start the next ones deeper in the same stack
+                .subscribeOn(Schedulers.computation())
+                .subscribe(ignored -> {
+                }, throwable -> {
+                });
+    }
+
+    private static class Effect {
+        private final Func0<? extends Observable<?>> write;
+        private final long submittedAt;
+
+        Effect(Func0<? extends Observable<?>> write, long submittedAt) {
+            this.write = write;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    /**
+     * The queued effects of a document, scheduled is true while it is ready or running.
+     */
+    private static class Target {
+        private final String id;
+        private final Deque<Effect> effects = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean removed;
+
+        Target(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.query.N1qlParams;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the N1QL statement shapes that were already prepared, so each shape is planned once per query node
+ * and later executions only send the prepared name and the parameters.
+ * The statements must not contain any user value, those are passed as positional parameters.
+ */
+class StatementCache {
+    private static final String SIZE_CONFIG_KEY = "storage.statement-cache-size";
+    private static final int DEFAULT_SIZE = 500;
+
+    private final Map<String, N1qlParams> statements;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    StatementCache(int size) {
+        statements = new LinkedHashMap<String, N1qlParams>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, N1qlParams> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Create a cache holding at most storage.statement-cache-size statements.
+     */
+    static StatementCache fromConfig() {
+        Config config = ConfigFactory.load();
+        return new StatementCache(config.hasPath(SIZE_CONFIG_KEY) ? config.getInt(SIZE_CONFIG_KEY) : DEFAULT_SIZE);
+    }
+
+    /**
+     * @param statement the statement with $1, $2, ... in place of the values.
+     * @param parameters the values of the positional parameters.
+     * @return a query executing the prepared statement, prepared by the client on its first use.
+     */
+    N1qlQuery prepared(String statement, JsonArray parameters) {
+        N1qlParams params;
+        boolean hit;
+        synchronized (statements) {
+            params = statements.get(statement);
+            hit = params != null;
+            if (!hit) {
+                params = N1qlParams.build().adhoc(false);
+                statements.put(statement, params);
+            }
+        }
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+            Logger.info(String.format("DB: Preparing statement: %s", statement));
+        }
+        return N1qlQuery.parameterized(statement, parameters, params);
+    }
+
+    /**
+     * @return the share of executions that reused an already prepared statement.
+     */
+    double hitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
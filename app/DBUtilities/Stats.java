@@ -1,35 +1,28 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
-import java.util.concurrent.TimeUnit;
-
-import static com.couchbase.client.java.query.Select.select;
-import static com.couchbase.client.java.query.Update.update;
-import static com.couchbase.client.java.query.dsl.functions.ArrayFunctions.arrayLength;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by rashwan on 3/29/16.
  */
 public class Stats {
-    private static AsyncBucket mBucket;
+    private static Storage mStorage;
+    private static String contributionsCountKey = "contributions_count";
+    private static String enrollmentsCountKey = "enrollments_count";
+    private static String contributorsGenderKey = "contributors_gender";
+    private static String contributorsCountKey = "contributors_count";
 
     /**
      * Create and save a project's stats. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
@@ -42,21 +35,18 @@ public class Stats {
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: creating stats document with ID: %s",statsId));
+        Log.info (Log.DB, "creating stats document with ID: %s",statsId);
         JsonDocument statsDocument = JsonDocument.create (statsId,statsObject);
 
-        return mBucket.insert (statsDocument).single ().timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.insert (statsDocument).single ()
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentAlreadyExistsException) {
-                    Logger.info (String.format ("DB: Failed to create stats document with ID: %s",statsId));
+                    Log.warn (Log.DB, "Failed to create stats document with ID: %s",statsId);
 
                     return Observable.error (new DocumentAlreadyExistsException (String.format ("DB: Failed to create stats document with ID: %s, ID already exists",statsId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to create stats document with ID: %s",statsId));
+                    Log.warn (Log.DB, "Failed to create stats document with ID: %s",statsId);
 
                     return Observable.error (new CouchbaseException (String.format ("DB: Failed to create stats document with ID: %s, General DB exception ",statsId)));
                 }
@@ -76,15 +66,13 @@ public class Stats {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Getting stats document with ID: %s",statsId));
+        Log.info (Log.DB, "Getting stats document with ID: %s",statsId);
 
-        return mBucket.get (statsId).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return DBConfig.hedgedReads ().get (mStorage,HedgedReads.STATS,statsId)
+            .flatMap (jsonDocument -> mergeCounters (statsId,jsonDocument.content ()).map (content -> jsonDocument))
+            .compose (DBPolicy.READ::apply)
             .onErrorResumeNext (throwable -> {
-                Logger.info (String.format ("DB: Failed to get stats document with ID: %s",statsId));
+                Log.warn (Log.DB, "Failed to get stats document with ID: %s",statsId);
 
                 return Observable.error (new CouchbaseException (String.format ("Failed to get stats document with ID: %s, General DB exception")));
             })
@@ -92,10 +80,32 @@ public class Stats {
             .flatMap (jsonDocument -> Observable.just (jsonDocument.content ().put ("id",jsonDocument.id ())));
     }
 
+    /**
+     * Get stats for a project with a window of its contributions and enrollments over time under time_series,
+     * read from the stats document alone whatever the number of contributions. can error with {@link CouchbaseException},
+     * {@link IllegalArgumentException} and {@link BucketClosedException}.
+     * @param statsId the id of the stats document to get.
+     * @param window the length of the window like 90m, 24h or 7d, null for all the buckets kept at the resolution.
+     * @param resolution minute, hour or day, null for the finest resolution keeping the whole window.
+     * @return an observable of the json document if it was found , if it wasn't found it returns an empty json document with id DBConfig.EMPTY_JSON_OBJECT .
+     */
+    public static Observable<JsonObject> getStatsWithTimeSeries(String statsId,String window,String resolution){
+        TimeSeries.Window timeWindow;
+        try {
+            checkDBStatus();
+            timeWindow = TimeSeries.Window.parse (window,resolution);
+        } catch (BucketClosedException | IllegalArgumentException e) {
+            return Observable.error(e);
+        }
+
+        return getStatsWithId (statsId).map (stats -> DBConfig.EMPTY_JSON_OBJECT.equals (stats.getString ("id"))
+                ? stats : stats.put ("time_series",DBConfig.timeSeries ().read (statsId,stats,timeWindow)));
+    }
+
     /**
      * Adds 1 to the contributions count of the stats with the provided ID.
      * @param statsId The ID of the stats to update.
-     * @return An observable of Json object containing the stats id and the new contributions count.
+     * @return An observable of Json object containing the stats id and the count waiting to be written under pending, or the new contributions count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToStatsContributionCount(String statsId){
         try {
@@ -104,24 +114,19 @@ public class Stats {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding 1 to contributions count of project with id: %s",statsId));
+        Log.info (Log.DB, "Adding 1 to contributions count of project with id: %s",statsId);
 
-        return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " stats")).useKeys (Expression.s (statsId))
-        .set ("contributions_count",Expression.x ("contributions_count + " + 1 ))
-        .returning (Expression.x ("contributions_count, meta(stats).id"))))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return Counter.addBuffered (statsId,contributionsCountKey,1)
+        .doOnNext (count -> DBConfig.timeSeries ().record (statsId,TimeSeries.CONTRIBUTIONS,1))
+        .compose (DBPolicy.COUNTER::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to add 1 to contributions count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to add 1 to contributions count of stats with id: %s",statsId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to add 1 to contributions count of stats with id: %s, General DB exception.",statsId)));
             } else {
-                Logger.info (String.format ("DB: Failed to add 1 to contributions count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to add 1 to contributions count of stats with id: %s",statsId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to add 1 to contributions count of stats with id: %s, General DB exception.",statsId)));
             }
@@ -131,7 +136,7 @@ public class Stats {
     /**
      * Adds 1 to the enrollments count of the stats with the provided ID.
      * @param statsId The ID of the stats to update.
-     * @return An observable of Json object containing the stats id and the new enrollments count.
+     * @return An observable of Json object containing the stats id and the count waiting to be written under pending, or the new enrollments count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToStatsEnrollmentsCount(String statsId){
         try {
@@ -140,24 +145,19 @@ public class Stats {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding 1 to contributions count of stats with id: %s",statsId));
+        Log.info (Log.DB, "Adding 1 to contributions count of stats with id: %s",statsId);
 
-        return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " stats")).useKeys (Expression.s (statsId))
-        .set ("enrollments_count",Expression.x ("enrollments_count + " + 1 ))
-        .returning (Expression.x ("enrollments_count, meta(stats).id"))))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return Counter.addBuffered (statsId,enrollmentsCountKey,1)
+        .doOnNext (count -> DBConfig.timeSeries ().record (statsId,TimeSeries.ENROLLMENTS,1))
+        .compose (DBPolicy.COUNTER::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to add 1 to enrollments count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to add 1 to enrollments count of stats with id: %s",statsId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to add 1 to enrollments count of stats with id: %s, General DB exception.",statsId)));
             } else {
-                Logger.info (String.format ("DB: Failed to add 1 to enrollments count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to add 1 to enrollments count of stats with id: %s",statsId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to add 1 to enrollments count of stats with id: %s, General DB exception.",statsId)));
             }
@@ -167,7 +167,7 @@ public class Stats {
     /**
      * Remove 1 from the enrollments count of the stats with the provided ID.
      * @param statsId The ID of the stats to update.
-     * @return An observable of Json object containing the stats id and the new enrollments count.
+     * @return An observable of Json object containing the stats id and the count waiting to be written under pending, or the new enrollments count if counter buffering is disabled.
      */
     public static Observable<JsonObject> remove1FromStatsEnrollmentsCount(String statsId){
         try {
@@ -176,24 +176,19 @@ public class Stats {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Removing 1 from contributions count of stats with id: %s",statsId));
+        Log.info (Log.DB, "Removing 1 from contributions count of stats with id: %s",statsId);
 
-        return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " stats")).useKeys (Expression.s (statsId))
-        .set ("enrollments_count",Expression.x ("enrollments_count - " + 1 ))
-        .returning (Expression.x ("enrollments_count, meta(stats).id"))))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return Counter.addBuffered (statsId,enrollmentsCountKey,-1)
+        .doOnNext (count -> DBConfig.timeSeries ().record (statsId,TimeSeries.ENROLLMENTS,-1))
+        .compose (DBPolicy.COUNTER::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to remove 1 from enrollments count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to remove 1 from enrollments count of stats with id: %s",statsId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to remove 1 from enrollments count of stats with id: %s, General DB exception.",statsId)));
             } else {
-                Logger.info (String.format ("DB: Failed to remove 1 from enrollments count of stats with id: %s",statsId));
+                Log.warn (Log.DB, "Failed to remove 1 from enrollments count of stats with id: %s",statsId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to remove 1 from enrollments count of stats with id: %s, General DB exception.",statsId)));
             }
@@ -201,11 +196,12 @@ public class Stats {
     }
 
     /**
-     * Update the gender stats for a project when a user contributes to it.
+     * Update the gender stats for a project when a user contributes to it, by adding the user to the distinct contributors sketches
+     * of the project overall and of the user's gender. A user contributing again leaves the sketches unchanged.
      * @param statsId The ID of the stats document to be updated.
      * @param userId  The ID of the user making the contribution.
      * @param userGender The gender of the contributing user.
-     * @return An Observable of Json object containing the stats ID and new gender count.
+     * @return An Observable of Json object containing the stats ID.
      */
     public static Observable<JsonObject> updateContributorsGender(String statsId,String userId, String userGender){
         try {
@@ -214,34 +210,12 @@ public class Stats {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Updating gender stats with ID: %s and gender: %s",statsId,userGender));
-
-        String contributionId = "contribution::" + DBConfig.stripIdFromPrefix (statsId) + "::" + DBConfig.stripIdFromPrefix (userId);
-
-        Logger.info (String.format ("DB: Constructed the contribution ID: %s",contributionId));
-
-        return mBucket.query (N1qlQuery.simple (select(arrayLength(Expression.x ("contributions")).as (Expression.x ("length")))
-        .from (Expression.x (DBConfig.BUCKET_NAME) + " contribution").useKeys (Expression.s (contributionId))))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> {
-            if (row.value ().getInt ("length") == 1){
-                Logger.info (String.format ("DB: First contribution for user with ID: %s ,updating the gender stats.",userId));
-
-                return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " stats"))
-                .useKeys (Expression.s (statsId))
-                .set (Expression.x ("contributors_gender." + userGender),Expression.x ("contributors_gender." + userGender + " +1"))
-                .returning (Expression.x ("meta(stats).id, contributors_gender." + userGender))))
-                .flatMap (AsyncN1qlQueryResult::rows).flatMap (statsRow -> Observable.just (statsRow.value ()))
-                .filter (object -> object.containsKey (userGender));
-            }else {
-                Logger.info (String.format ("DB: Not the first contribution for user with ID: %s ,not updating the gender stats.",userId));
-                return Observable.just (JsonObject.create ().put ("id", DBConfig.ALREADY_CONTRIBUTED));
-            }})
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Updating gender stats with ID: %s and gender: %s",statsId,userGender);
+
+        return mStorage.maxFields (statsId,ContributorSketch.SKETCH_KEY,ContributorSketch.registers (userId,userGender))
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
-                Logger.info (String.format ("DB: Failed to update gender stats with id: %s and gender: %s", statsId, userGender));
+                Log.warn (Log.DB, "Failed to update gender stats with id: %s and gender: %s", statsId, userGender);
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to update gender stats with id: %s and gender: %s, General DB exception.", statsId, userGender)));
             }).defaultIfEmpty(JsonObject.create().put("id", DBConfig.EMPTY_JSON_OBJECT));
     }
@@ -261,11 +235,8 @@ public class Stats {
 
         JsonDocument statsDocument = JsonDocument.create (statsId,DBConfig.removeIdFromJson (statsJsonObject));
 
-        return mBucket.replace (statsDocument).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.replace (statsDocument)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException){
                     return Observable.error (new DocumentDoesNotExistException ("Failed to update stats, ID dosen't exist in DB"));
@@ -293,11 +264,8 @@ public class Stats {
             return Observable.error(e);
         }
 
-        return mBucket.remove (statsId).timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.remove (statsId)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException) {
                     return Observable.error (new DocumentDoesNotExistException ("Failed to delete stats, ID dosen't exist in DB"));
@@ -307,15 +275,54 @@ public class Stats {
             });
     }
 
+    private static Observable<JsonObject> mergeCounters (String statsId,JsonObject stats){
+        List<String> fields = new ArrayList<> (Arrays.asList (contributionsCountKey,enrollmentsCountKey));
+        JsonObject genders = stats.getObject (contributorsGenderKey);
+        if (genders != null){
+            for (String gender : genders.getNames ()){
+                fields.add (contributorsGenderKey + "." + gender);
+            }
+        }
+        return Counter.merge (statsId,stats,fields.toArray (new String[fields.size ()])).map (Stats::mergeSketches);
+    }
+
+    /**
+     * Put the distinct contributors estimated by the sketches into the stats, the overall one under contributors_count.
+     * Stats counted by gender before the sketches keep their counts until the sketches estimate more.
+     */
+    private static JsonObject mergeSketches (JsonObject stats){
+        JsonObject sketches = stats.getObject (ContributorSketch.SKETCH_KEY);
+        if (sketches == null){
+            return stats;
+        }
+        stats.removeKey (ContributorSketch.SKETCH_KEY);
+        JsonObject genders = stats.getObject (contributorsGenderKey);
+        if (genders == null){
+            genders = JsonObject.create ();
+            stats.put (contributorsGenderKey,genders);
+        }
+        long contributors = 0;
+        for (String name : ContributorSketch.names (sketches)){
+            if (ContributorSketch.ALL.equals (name)){
+                contributors = ContributorSketch.estimate (sketches,name);
+                continue;
+            }
+            Object counted = genders.get (name);
+            long estimate = ContributorSketch.estimate (sketches,name);
+            genders.put (name,Math.max (counted instanceof Number ? ((Number) counted).longValue () : 0,estimate));
+        }
+        return stats.put (contributorsCountKey,contributors);
+    }
+
     private static void checkDBStatus () {
-        if (DBConfig.bucket.isClosed ()){
+        if (DBConfig.storage ().isClosed ()){
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = DBConfig.bucket;
+                mStorage = DBConfig.storage ();
             }else{
                 throw new BucketClosedException ("Failed to open bucket due to timeout or backpressure");
             }
         }else {
-            mBucket = DBConfig.bucket;
+            mStorage = DBConfig.storage ();
         }
     }
 }
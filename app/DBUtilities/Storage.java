@@ -0,0 +1,188 @@
+package DBUtilities;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import rx.Observable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The operations the DB utilities need from a storage backend.
+ * Every backend must return the same document shapes and fail with the same Couchbase exceptions,
+ * so the callers in this package don't know which backend they are running on.
+ */
+public interface Storage {
+
+    /**
+     * Open the backend.
+     * @return DBConfig.OPEN_BUCKET_OK if it succeeds and DBConfig.OPEN_BUCKET_ERROR if it fails.
+     */
+    int open();
+
+    boolean isClosed();
+
+    void close();
+
+    /**
+     * Get a document using its id.
+     * @param id the id of the document.
+     * @return an observable of the document, empty if it doesn't exist.
+     */
+    Observable<JsonDocument> get(String id);
+
+    /**
+     * Get a document from a replica, which can be behind the active copy.
+     * @param id the id of the document.
+     * @return an observable of the document, empty if the replica doesn't have it.
+     */
+    Observable<JsonDocument> getFromReplica(String id);
+
+    Observable<Boolean> exists(String id);
+
+    /**
+     * Insert a new document. can error with {@link DocumentAlreadyExistsException} and {@link CouchbaseException}.
+     */
+    Observable<JsonDocument> insert(JsonDocument document);
+
+    /**
+     * Replace an existing document. can error with {@link DocumentDoesNotExistException},{@link CASMismatchException} and {@link CouchbaseException}.
+     */
+    Observable<JsonDocument> replace(JsonDocument document);
+
+    /**
+     * Remove a document. can error with {@link DocumentDoesNotExistException} and {@link CouchbaseException}.
+     */
+    Observable<JsonDocument> remove(String id);
+
+    /**
+     * Get some top level fields of a document.
+     * @param id the id of the document.
+     * @param fields the names of the fields to return.
+     * @return an observable of a json object containing only the requested fields, empty if the document doesn't exist.
+     */
+    Observable<JsonObject> lookup(String id, String... fields);
+
+    /**
+     * Get a document with some of its arrays cut to a window.
+     * @param id the id of the document.
+     * @param fields top level fields copied as they are.
+     * @param arrayPaths paths (at most two levels deep, e.g. results.yes) of the arrays to cut.
+     * @param offset the index of the first array element to return.
+     * @param limit the maximum number of array elements to return.
+     * @return an observable of a json object with the fields and the cut arrays nested under their paths, empty if the document doesn't exist.
+     */
+    Observable<JsonObject> getWithSlices(String id, List<String> fields, List<String> arrayPaths, int offset, int limit);
+
+    /**
+     * Set top level fields of a document without replacing the rest of it.
+     * @return an observable of json object containing the id of the document, empty if it doesn't exist.
+     */
+    Observable<JsonObject> setFields(String id, JsonObject fields);
+
+    /**
+     * Append a value to an array inside a document.
+     * @return an observable of json object containing the id of the document and the appended value under "value", empty if it doesn't exist.
+     */
+    Observable<JsonObject> arrayAppend(String id, String path, Object value);
+
+    /**
+     * Append a value to a top level array of a document, creating the document with only that array if it doesn't exist,
+     * a document created concurrently is appended to, the value is never dropped.
+     * @return an observable of json object containing the id of the document and the appended value under "value".
+     */
+    Observable<JsonObject> appendOrCreate(String id, String field, Object value);
+
+    /**
+     * Add a value to an array inside a document if it is not already there.
+     * @return an observable of json object containing the id of the document and the added value under "value", empty if it doesn't exist.
+     */
+    Observable<JsonObject> arrayAddUnique(String id, String path, Object value);
+
+    /**
+     * Remove all occurrences of a value from an array inside a document.
+     * @return an observable of json object containing the id of the document, empty if it doesn't exist.
+     */
+    Observable<JsonObject> arrayRemove(String id, String path, Object value);
+
+    /**
+     * Check if an array inside a document contains a value, false if the document doesn't exist.
+     */
+    Observable<Boolean> arrayContains(String id, String path, Object value);
+
+    /**
+     * Add a delta to a numeric field of a document.
+     * @return an observable of json object containing the id of the document and the new value under the last segment of the path, empty if it doesn't exist.
+     */
+    Observable<JsonObject> increment(String id, String path, long delta);
+
+    /**
+     * Add deltas to numeric fields of a top level object of a document in one mutation,
+     * creating the object and the fields that don't exist yet.
+     * @param objectField the name of the top level object.
+     * @param deltas the deltas to add by field name.
+     * @return an observable of json object containing the id of the document, empty if it doesn't exist.
+     */
+    Observable<JsonObject> incrementFields(String id, String objectField, Map<String, Long> deltas);
+
+    /**
+     * Raise numeric fields of a top level object of a document to at least the given values in one mutation,
+     * creating the object and the fields that don't exist yet. Raising commutes, so concurrent writers can't lose each other's values.
+     * @param objectField the name of the top level object.
+     * @param values the values by field name.
+     * @return an observable of json object containing the id of the document, empty if it doesn't exist.
+     */
+    Observable<JsonObject> maxFields(String id, String objectField, Map<String, Long> values);
+
+    /**
+     * Remove fields of a top level object of a document in one mutation, the fields that don't exist are ignored.
+     * @param objectField the name of the top level object.
+     * @param names the names of the fields to remove.
+     * @return an observable of json object containing the id of the document, empty if it doesn't exist.
+     */
+    Observable<JsonObject> removeFields(String id, String objectField, Collection<String> names);
+
+    /**
+     * Add a delta to a counter document. can error with {@link DocumentDoesNotExistException} if the counter doesn't exist.
+     * @return an observable of the new value of the counter.
+     */
+    Observable<Long> counter(String id, long delta);
+
+    /**
+     * Add a delta to a counter document, creating it with the initial value if it doesn't exist.
+     * Counters never go below zero.
+     * @return an observable of the new value of the counter.
+     */
+    Observable<Long> counter(String id, long delta, long initial);
+
+    /**
+     * Get the value of a counter document.
+     * @return an observable of the value of the counter, empty if it doesn't exist.
+     */
+    Observable<Long> getCounter(String id);
+
+    /**
+     * Run a sorted and paginated listing.
+     * @param listing the description of the listing.
+     * @return an observable of one json object per row, containing the id of the document under "id",
+     * its content under the listing alias and the value it is sorted by under "sort_key".
+     */
+    Observable<JsonObject> list(Listing listing);
+
+    /**
+     * @return an observable of the query plan of a listing, empty if the backend doesn't plan its listings.
+     */
+    Observable<JsonObject> explain(Listing listing);
+
+    /**
+     * Create the missing indexes without building them, then build all the deferred indexes at once
+     * and wait for them to be online.
+     * @return an observable of the names of the created indexes.
+     */
+    Observable<String> provisionIndexes(List<IndexCatalog.Index> indexes);
+}
@@ -0,0 +1,384 @@
+package DBUtilities;
+
+import com.couchbase.client.core.BackpressureException;
+import com.couchbase.client.core.time.Delay;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.TemporaryFailureException;
+import com.couchbase.client.java.util.retry.RetryBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contributions and enrollments of the projects bucketed per minute, hour and day, for the trends of the project stats.
+ * Every bucket is kept in the stats document of its project under metric_per_resolution, keyed by its bucket number
+ * (the milliseconds since the epoch divided by the bucket length), and only the last ring size buckets of every resolution are kept.
+ * Recorded events are rolled up in memory into a ring buffer of pending counts per project, metric and resolution
+ * and written every flush interval in one mutation per field, so a window is read from the stats document alone,
+ * at a cost bounded by the ring size however many contributions the project has.
+ */
+class TimeSeries {
+    static final String CONTRIBUTIONS = "contributions";
+    static final String ENROLLMENTS = "enrollments";
+    private static final String[] METRICS = {CONTRIBUTIONS, ENROLLMENTS};
+    private static final String FLUSH_INTERVAL_CONFIG_KEY = "stats.time-series.flush-interval";
+    private static final long DEFAULT_FLUSH_INTERVAL = 10000;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 5000;
+
+    private final Map<String, Series> pendingSeries = new ConcurrentHashMap<>();
+    private final Map<String, Long> prunedBuckets = new ConcurrentHashMap<>();
+    private final long flushInterval;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFlush;
+
+    TimeSeries(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Create a time series configured by stats.time-series.flush-interval, in milliseconds.
+     */
+    static TimeSeries fromConfig() {
+        Config config = ConfigFactory.load();
+        return new TimeSeries(config.hasPath(FLUSH_INTERVAL_CONFIG_KEY) ? config.getLong(FLUSH_INTERVAL_CONFIG_KEY) : DEFAULT_FLUSH_INTERVAL);
+    }
+
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "time-series-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledFlush = scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        Logger.info(String.format("DB: Time series started, flushing every %s ms", flushInterval));
+    }
+
+    /**
+     * Stop the scheduled flushes and write every pending count, waiting for the writes to finish.
+     */
+    synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduledFlush.cancel(false);
+        scheduler.shutdown();
+        scheduler = null;
+
+        Logger.info(String.format("DB: Time series stopping, flushing %s projects", pendingSeries.size()));
+        for (Map.Entry<String, Series> entry : pendingSeries.entrySet()) {
+            try {
+                flush(entry.getKey(), entry.getValue()).timeout(SHUTDOWN_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS).toBlocking().lastOrDefault(null);
+            } catch (RuntimeException e) {
+                Logger.info(String.format("DB: Failed to flush the time series of: %s on shutdown", entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Count an event of a project now, in every resolution.
+     * @param statsId the id of the stats document of the project.
+     * @param metric {@link #CONTRIBUTIONS} or {@link #ENROLLMENTS}.
+     * @param delta the value to add, negative to subtract.
+     */
+    void record(String statsId, String metric, long delta) {
+        long now = System.currentTimeMillis();
+        for (Resolution resolution : Resolution.values()) {
+            add(statsId, resolution, resolution.field(metric), resolution.bucket(now), delta);
+        }
+    }
+
+    /**
+     * Read a window of the time series of a project.
+     * @param statsId the id of the stats document of the project.
+     * @param stats the stats document, holding the written buckets.
+     * @return a json object with the window, the resolution, the start time of the first bucket
+     * and for every metric its count per bucket, oldest first, and its total over the window.
+     */
+    JsonObject read(String statsId, JsonObject stats, Window window) {
+        long last = window.resolution.bucket(System.currentTimeMillis());
+        long first = last - window.buckets + 1;
+        JsonObject timeSeries = JsonObject.create()
+                .put("window", window.name)
+                .put("resolution", window.resolution.label)
+                .put("start", first * window.resolution.length);
+
+        Series series = pendingSeries.get(statsId);
+        for (String metric : METRICS) {
+            String field = window.resolution.field(metric);
+            JsonObject written = stats.getObject(field);
+            JsonArray counts = JsonArray.create();
+            long total = 0;
+            for (long bucket = first; bucket <= last; bucket++) {
+                Object count = written == null ? null : written.get(String.valueOf(bucket));
+                long value = count instanceof Number ? ((Number) count).longValue() : 0;
+                if (series != null) {
+                    synchronized (series) {
+                        value += series.ring(field, window.resolution).get(bucket);
+                    }
+                }
+                counts.add(value);
+                total += value;
+            }
+            timeSeries.put(metric, counts).put(metric + "_total", total);
+        }
+        return timeSeries;
+    }
+
+    private void flush() {
+        for (Map.Entry<String, Series> entry : pendingSeries.entrySet()) {
+            flush(entry.getKey(), entry.getValue()).subscribe(ignored -> {}, throwable -> {});
+        }
+    }
+
+    /**
+     * Write the pending counts of a project, one mutation per field, and drop the buckets that left the rings.
+     * A project with nothing pending is removed so idle projects don't keep their rings in memory.
+     */
+    private Observable<?> flush(String statsId, Series series) {
+        Map<Resolution, Map<String, Map<String, Long>>> pending = new HashMap<>();
+        boolean empty = true;
+        synchronized (series) {
+            for (Resolution resolution : Resolution.values()) {
+                Map<String, Map<String, Long>> fields = new HashMap<>();
+                for (String metric : METRICS) {
+                    Map<String, Long> counts = series.ring(resolution.field(metric), resolution).drain();
+                    if (!counts.isEmpty()) {
+                        fields.put(resolution.field(metric), counts);
+                        empty = false;
+                    }
+                }
+                pending.put(resolution, fields);
+            }
+            if (empty) {
+                series.removed = true;
+                pendingSeries.remove(statsId, series);
+                return Observable.empty();
+            }
+        }
+
+        Storage storage = DBConfig.storage();
+        long now = System.currentTimeMillis();
+        List<Observable<?>> writes = new ArrayList<>();
+        for (Map.Entry<Resolution, Map<String, Map<String, Long>>> fields : pending.entrySet()) {
+            Resolution resolution = fields.getKey();
+            for (Map.Entry<String, Map<String, Long>> counts : fields.getValue().entrySet()) {
+                writes.add(storage.incrementFields(statsId, counts.getKey(), counts.getValue())
+                        .retryWhen(RetryBuilder.anyOf(TemporaryFailureException.class, BackpressureException.class)
+                                .delay(Delay.fixed(200, TimeUnit.MILLISECONDS)).max(3).build())
+                        .doOnError(throwable -> {
+                            Logger.info(String.format("DB: Failed to flush the %s of: %s, keeping them for the next flush", counts.getKey(), statsId));
+                            for (Map.Entry<String, Long> count : counts.getValue().entrySet()) {
+                                add(statsId, resolution, counts.getKey(), Long.parseLong(count.getKey()), count.getValue());
+                            }
+                        })
+                        .concatMap(written -> prune(storage, statsId, counts.getKey(), resolution, resolution.bucket(now))));
+            }
+        }
+        return Observable.merge(writes);
+    }
+
+    /**
+     * Remove the buckets of a field older than its ring, at most once per bucket of the field.
+     */
+    private Observable<?> prune(Storage storage, String statsId, String field, Resolution resolution, long lastBucket) {
+        String key = statsId + Counter.COUNTER_ID_SEPARATOR + field;
+        if (Long.valueOf(lastBucket).equals(prunedBuckets.put(key, lastBucket))) {
+            return Observable.empty();
+        }
+        return storage.lookup(statsId, field).concatMap(stats -> {
+            JsonObject buckets = stats.getObject(field);
+            List<String> expired = new ArrayList<>();
+            if (buckets != null) {
+                for (String bucket : buckets.getNames()) {
+                    if (Long.parseLong(bucket) <= lastBucket - resolution.size) {
+                        expired.add(bucket);
+                    }
+                }
+            }
+            return expired.isEmpty() ? Observable.empty() : storage.removeFields(statsId, field, expired);
+        });
+    }
+
+    private void add(String statsId, Resolution resolution, String field, long bucket, long delta) {
+        while (true) {
+            Series series = pendingSeries.computeIfAbsent(statsId, id -> new Series());
+            synchronized (series) {
+                // a series is removed once it has nothing pending, its project then gets a new one
+                if (series.removed) {
+                    continue;
+                }
+                series.ring(field, resolution).add(bucket, delta);
+            }
+            return;
+        }
+    }
+
+    /**
+     * The bucket lengths, each with the number of buckets kept.
+     */
+    enum Resolution {
+        MINUTE("minute", "m", TimeUnit.MINUTES.toMillis(1), 120),
+        HOUR("hour", "h", TimeUnit.HOURS.toMillis(1), 72),
+        DAY("day", "d", TimeUnit.DAYS.toMillis(1), 90);
+
+        private final String label;
+        private final String unit;
+        private final long length;
+        private final int size;
+
+        Resolution(String label, String unit, long length, int size) {
+            this.label = label;
+            this.unit = unit;
+            this.length = length;
+            this.size = size;
+        }
+
+        String field(String metric) {
+            return metric + "_per_" + label;
+        }
+
+        long bucket(long time) {
+            return time / length;
+        }
+    }
+
+    /**
+     * A requested window, like 24h at hour resolution.
+     */
+    static class Window {
+        private final String name;
+        private final Resolution resolution;
+        private final long buckets;
+
+        private Window(String name, Resolution resolution, long buckets) {
+            this.name = name;
+            this.resolution = resolution;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @param window a number followed by m, h or d like 90m, 24h or 7d, null for the whole ring of the resolution.
+         * @param resolution minute, hour or day, null for the finest resolution keeping the whole window.
+         * @throws IllegalArgumentException if the window or the resolution can't be parsed, or if the resolution doesn't keep the whole window.
+         */
+        static Window parse(String window, String resolution) {
+            Resolution bucketLength = null;
+            if (resolution != null && !resolution.isEmpty()) {
+                for (Resolution candidate : Resolution.values()) {
+                    if (candidate.label.equals(resolution)) {
+                        bucketLength = candidate;
+                    }
+                }
+                if (bucketLength == null) {
+                    throw new IllegalArgumentException("Invalid resolution: " + resolution + ", expected minute, hour or day");
+                }
+            }
+            if (window == null || window.isEmpty()) {
+                Resolution whole = bucketLength == null ? Resolution.DAY : bucketLength;
+                return new Window(whole.size + whole.unit, whole, whole.size);
+            }
+
+            long length;
+            try {
+                length = Long.parseLong(window.substring(0, window.length() - 1)) * unitLength(window.substring(window.length() - 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid window: " + window + ", expected a number followed by m, h or d", e);
+            }
+            if (length <= 0) {
+                throw new IllegalArgumentException("Invalid window: " + window + ", expected a number followed by m, h or d");
+            }
+
+            for (Resolution candidate : Resolution.values()) {
+                long buckets = (length + candidate.length - 1) / candidate.length;
+                if ((bucketLength == null || bucketLength == candidate) && buckets <= candidate.size) {
+                    return new Window(window, candidate, buckets);
+                }
+            }
+            throw new IllegalArgumentException(String.format("Window: %s is longer than the %s buckets kept at %s resolution",
+                    window, (bucketLength == null ? Resolution.DAY : bucketLength).size, (bucketLength == null ? Resolution.DAY : bucketLength).label));
+        }
+
+        private static long unitLength(String unit) {
+            for (Resolution resolution : Resolution.values()) {
+                if (resolution.unit.equals(unit)) {
+                    return resolution.length;
+                }
+            }
+            throw new NumberFormatException("Invalid unit: " + unit);
+        }
+    }
+
+    /**
+     * The pending counts of a project, removed is true once it was dropped from the pending series.
+     */
+    private static class Series {
+        private final Map<String, Ring> rings = new HashMap<>();
+        private boolean removed;
+
+        Ring ring(String field, Resolution resolution) {
+            return rings.computeIfAbsent(field, name -> new Ring(resolution.size));
+        }
+    }
+
+    /**
+     * Counts of the last buckets of a field, bucket n at slot n modulo the ring size, older buckets are overwritten as the ring moves.
+     */
+    private static class Ring {
+        private final long[] counts;
+        private long head = -1;
+
+        Ring(int size) {
+            counts = new long[size];
+        }
+
+        void add(long bucket, long delta) {
+            if (bucket > head) {
+                long cleared = Math.min(bucket - head, counts.length);
+                for (long moved = bucket - cleared + 1; moved <= bucket; moved++) {
+                    counts[slot(moved)] = 0;
+                }
+                head = bucket;
+            }
+            if (bucket > head - counts.length) {
+                counts[slot(bucket)] += delta;
+            }
+        }
+
+        long get(long bucket) {
+            return bucket <= head && bucket > head - counts.length ? counts[slot(bucket)] : 0;
+        }
+
+        /**
+         * @return the non zero counts by bucket number, which are reset.
+         */
+        Map<String, Long> drain() {
+            Map<String, Long> drained = new HashMap<>();
+            for (long bucket = Math.max(0, head - counts.length + 1); bucket <= head; bucket++) {
+                if (counts[slot(bucket)] != 0) {
+                    drained.put(String.valueOf(bucket), counts[slot(bucket)]);
+                    counts[slot(bucket)] = 0;
+                }
+            }
+            return drained;
+        }
+
+        private int slot(long bucket) {
+            return (int) (bucket % counts.length);
+        }
+    }
+}
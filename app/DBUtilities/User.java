@@ -1,38 +1,22 @@
 package DBUtilities;
 
-import com.couchbase.client.core.BackpressureException;
 import com.couchbase.client.core.BucketClosedException;
 import com.couchbase.client.core.CouchbaseException;
-import com.couchbase.client.core.time.Delay;
-import com.couchbase.client.deps.io.netty.handler.timeout.TimeoutException;
-import com.couchbase.client.java.AsyncBucket;
 import com.couchbase.client.java.document.JsonDocument;
 import com.couchbase.client.java.document.json.JsonObject;
 import com.couchbase.client.java.error.CASMismatchException;
 import com.couchbase.client.java.error.DocumentAlreadyExistsException;
 import com.couchbase.client.java.error.DocumentDoesNotExistException;
-import com.couchbase.client.java.error.TemporaryFailureException;
-import com.couchbase.client.java.query.AsyncN1qlQueryResult;
-import com.couchbase.client.java.query.AsyncN1qlQueryRow;
-import com.couchbase.client.java.query.N1qlQuery;
-import com.couchbase.client.java.query.dsl.Expression;
-import com.couchbase.client.java.query.dsl.Sort;
-import com.couchbase.client.java.util.retry.RetryBuilder;
-import play.Logger;
+import helpers.Log;
 import rx.Observable;
 
-import java.util.concurrent.TimeUnit;
-
-import static DBUtilities.DBConfig.bucket;
-import static com.couchbase.client.java.query.Select.select;
-import static com.couchbase.client.java.query.Update.update;
-import static com.couchbase.client.java.query.dsl.functions.ArrayFunctions.*;
+import java.util.List;
 
 /**
  * Created by rashwan on 3/28/16.
  */
 public class User {
-    private static AsyncBucket mBucket;
+    private static Storage mStorage;
 
     /**
      * Create and save a user. can error with {@link CouchbaseException},{@link DocumentAlreadyExistsException} and {@link BucketClosedException}.
@@ -49,11 +33,8 @@ public class User {
         String userId =  DBConfig.getIdFromJson (userJsonObject);
         JsonDocument userDocument = JsonDocument.create (userId,DBConfig.removeIdFromJson (userJsonObject));
 
-        return mBucket.insert (userDocument).single ().timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.insert (userDocument).single ()
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentAlreadyExistsException) {
                     return Observable.error (new DocumentAlreadyExistsException ("Failed to create user, ID already exists"));
@@ -75,11 +56,9 @@ public class User {
         }
 
 
-        return mBucket.get (userId).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return DBConfig.hedgedReads ().get (mStorage,HedgedReads.USERS,userId)
+            .flatMap (jsonDocument -> Counter.merge (userId,jsonDocument.content (),"stats.contributions").map (content -> jsonDocument))
+            .compose (DBPolicy.READ::apply)
             .onErrorResumeNext (throwable -> {
                 return Observable.error (new CouchbaseException ("Failed to get user, General DB exception"));
             })
@@ -92,30 +71,36 @@ public class User {
      * @param userId The user id to get enrolled projects for.
      * @param offset an index to determine where how much result to omit from the beginning.
      * @param limit the maximum number of document returned.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return an observable of json object that contains all the resulted projects merged with their categories and with id field added.
      */
-    public static Observable<JsonObject> getEnrolledProjectsForUser(String userId,int offset, int limit){
+    public static Observable<JsonObject> getEnrolledProjectsForUser(String userId,int offset, int limit,String cursor){
+        Cursor after;
+        List<UserProjects.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode (cursor);
+            if (UserProjects.isLoaded ()){
+                hits = UserProjects.page (UserProjects.ENROLLED,userId,offset,limit,after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: Bulk getting enrolled projects for user with id: %s with offset: %s and limit: %s", userId,offset,limit));
-
-        return mBucket.query (N1qlQuery.simple (select(Expression.x ("meta(project).id,project, category"))
-            .from (Expression.x (DBConfig.BUCKET_NAME + " aUser")).useKeys (Expression.s (userId))
-            .join (Expression.x (DBConfig.BUCKET_NAME + " project")).onKeys (Expression.x ("aUser.enrolled_projects"))
-            .join (Expression.x (DBConfig.BUCKET_NAME + " category")).onKeys (Expression.x ("project.category_id"))
-            .orderBy (Sort.asc (Expression.x ("project.name"))).limit (limit).offset (offset)))
-            .timeout (1000,TimeUnit.MILLISECONDS)
-            .flatMap (AsyncN1qlQueryResult::rows)
-            .flatMap (row -> DBConfig.embedIdAndCategoryIntoProject (row.value ().getString ("id"),row))
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Bulk getting enrolled projects for user with id: %s with offset: %s and limit: %s", userId,offset,limit);
+
+        Observable<JsonObject> projects;
+        if (hits != null){
+            projects = DBConfig.multiGet ().get (hits,hit -> Project.getListedProject (hit.id (),hit.cursor ()));
+        }else {
+            projects = DBConfig.multiGet ().getEach (mStorage.list (Listing.of ("project").withKeysFrom (userId,"enrolled_projects")
+                .orderBy ("name",false).page (offset,limit).after (after)),
+                Project::getProjectOfRow);
+        }
+
+        return projects
+            .compose (DBPolicy.QUERY::apply)
             .onErrorResumeNext (throwable -> {
-                Logger.info (String.format ("DB: Failed to Bulk get enrolled projects for user with id: %s with offset: %s and limit: %s",userId,limit,offset));
+                Log.warn (Log.DB, "Failed to Bulk get enrolled projects for user with id: %s with offset: %s and limit: %s",userId,limit,offset);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to Bulk get enrolled projects for user with id: %s with offset: %s and limit: %s, general DB exception.",userId,offset,limit)));
             })
@@ -127,30 +112,37 @@ public class User {
      * @param userId The user id to get created projects for.
      * @param offset an index to determine where how much result to omit from the beginning.
      * @param limit the maximum number of document returned.
+     * @param cursor a cursor returned with a previous page to continue after it instead of using the offset, null to use the offset.
      * @return an observable of json object that contains all the resulted projects merged with their categories and with id field added.
      */
 
-    public static Observable<JsonObject> getProjectsCreatedByUser(String userId,int offset,int limit){
+    public static Observable<JsonObject> getProjectsCreatedByUser(String userId,int offset,int limit,String cursor){
+        Cursor after;
+        List<UserProjects.Hit> hits = null;
         try {
             checkDBStatus();
-        } catch (BucketClosedException e) {
+            after = Cursor.decode (cursor);
+            if (UserProjects.isLoaded ()){
+                hits = UserProjects.page (UserProjects.CREATED,userId,offset,limit,after);
+            }
+        } catch (BucketClosedException | IllegalArgumentException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: Bulk getting created projects for user with id: %s with offset: %s and limit: %s", userId,offset,limit));
-
-        return mBucket.query (N1qlQuery.simple (select(Expression.x ("meta(project).id, *")).from (Expression.x (DBConfig.BUCKET_NAME + " project"))
-            .join (Expression.x (DBConfig.BUCKET_NAME + " category")).onKeys (Expression.x ("project.category_id"))
-            .where (Expression.x ("project.owner.id").eq (Expression.s (userId))).orderBy (Sort.desc (Expression.x ("project.name")))
-            .limit (limit).offset (offset)))
-            .timeout (1000,TimeUnit.MILLISECONDS)
-            .flatMap (AsyncN1qlQueryResult::rows)
-            .flatMap (row -> DBConfig.embedIdAndCategoryIntoProject (row.value ().getString ("id"),row))
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Bulk getting created projects for user with id: %s with offset: %s and limit: %s", userId,offset,limit);
+
+        Observable<JsonObject> projects;
+        if (hits != null){
+            projects = DBConfig.multiGet ().get (hits,hit -> Project.getListedProject (hit.id (),hit.cursor ()));
+        }else {
+            projects = DBConfig.multiGet ().getEach (mStorage.list (Listing.of ("project").whereIdHasPrefix ().whereEquals ("owner.id",userId)
+                .orderBy ("name",true).page (offset,limit).after (after)),
+                Project::getProjectOfRow);
+        }
+
+        return projects
+            .compose (DBPolicy.QUERY::apply)
             .onErrorResumeNext (throwable -> {
-                Logger.info (String.format ("DB: Failed to Bulk get created projects for user with id: %s with offset: %s and limit: %s",userId,limit,offset));
+                Log.warn (Log.DB, "Failed to Bulk get created projects for user with id: %s with offset: %s and limit: %s",userId,limit,offset);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to Bulk get created projects for user with id: %s with offset: %s and limit: %s, general DB exception.",userId,offset,limit)));
             })
@@ -164,38 +156,33 @@ public class User {
      * @param lastName the updated last name of the user.
      * @param imageURL the updated image name of the user.
      * @param about the updated about of the user.
-     * @return an Observable of AsyncN1qlQueryRow containing the id of the updated user.
+     * @return an Observable of json object containing the id of the updated user.
      */
-    public static Observable<AsyncN1qlQueryRow> updateSigningInUser(String userId, String firstName, String lastName, String imageURL, JsonObject about){
+    public static Observable<JsonObject> updateSigningInUser(String userId, String firstName, String lastName, String imageURL, JsonObject about){
         try {
             checkDBStatus();
         } catch (BucketClosedException e) {
             return Observable.error(e);
         }
-        Logger.info (String.format ("DB: Partial updating user with ID: %s", userId));
+        Log.info (Log.DB, "Partial updating user with ID: %s", userId);
 
 
-        return mBucket.query (N1qlQuery.simple (update(DBConfig.BUCKET_NAME).useKeys (Expression.s (userId))
-                .set ("first_name",firstName).set ("last_name",lastName)
-                .set ("image",imageURL).set ("about",about).returning ("meta(default).id")))
-                .flatMap (AsyncN1qlQueryResult::rows)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.setFields (userId,JsonObject.create ().put ("first_name",firstName).put ("last_name",lastName)
+                .put ("image",imageURL).put ("about",about))
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException){
-                    Logger.info (String.format ("DB: Failed to partial update user with ID: %s, no user exists with this id.",userId));
+                    Log.warn (Log.DB, "Failed to partial update user with ID: %s, no user exists with this id.",userId);
 
                     return Observable.error (new DocumentDoesNotExistException (String.format ("DB: Failed to partial update user with ID: %s, no user exists with this id.",userId)));
 
                 }else if (throwable instanceof CASMismatchException){
                     //// TODO: 4/1/16 needs more accurate handling in the future.
-                    Logger.info (String.format ("DB: Failed to partial update user with ID: %s, CAS value is changed.",userId));
+                    Log.warn (Log.DB, "Failed to partial update user with ID: %s, CAS value is changed.",userId);
 
                     return Observable.error (new CASMismatchException (String.format ("DB: Failed to partial update user with ID: %s, CAS value is changed.",userId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to partial update user with ID: %s, General DB exception.",userId));
+                    Log.warn (Log.DB, "Failed to partial update user with ID: %s, General DB exception.",userId);
 
                     return Observable.error (new CouchbaseException (String.format ("Failed to partial update user with ID: %s , General DB exception.",userId)));
                 }
@@ -205,7 +192,7 @@ public class User {
     /**
      * Adds 1 to the contributions count of the user with the provided ID.
      * @param userId The ID of the user to update.
-     * @return An observable of Json object containing the user id and the new contributions count.
+     * @return An observable of Json object containing the user id and the count waiting to be written under pending, or the new contributions count if counter buffering is disabled.
      */
     public static Observable<JsonObject> add1ToUserContributionCount(String userId){
         try {
@@ -214,24 +201,18 @@ public class User {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding 1 to contributions count of user with id: %s",userId));
+        Log.info (Log.DB, "Adding 1 to contributions count of user with id: %s",userId);
 
-        return mBucket.query (N1qlQuery.simple (update (Expression.x (DBConfig.BUCKET_NAME + " aUser")).useKeys (Expression.s (userId))
-        .set ("stats.contributions",Expression.x ("stats.contributions + " + 1 ))
-        .returning (Expression.x ("stats.contributions, meta(aUser).id"))))
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return Counter.addBuffered (userId,"stats.contributions",1)
+        .compose (DBPolicy.COUNTER::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to add 1 to contributions count of user with id: %s",userId));
+                Log.warn (Log.DB, "Failed to add 1 to contributions count of user with id: %s",userId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to add 1 to contributions count of user with id: %s, General DB exception.",userId)));
             } else {
-                Logger.info (String.format ("DB: Failed to add 1 to contributions count of user with id: %s",userId));
+                Log.warn (Log.DB, "Failed to add 1 to contributions count of user with id: %s",userId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to add 1 to contributions count of user with id: %s, General DB exception.",userId)));
             }
@@ -251,47 +232,38 @@ public class User {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Adding project with ID: %s to enrolled projects for user with id: %s",projectId,userId));
+        Log.info (Log.DB, "Adding project with ID: %s to enrolled projects for user with id: %s",projectId,userId);
 
-        return mBucket.query (N1qlQuery.simple (select (Expression.x ("meta(project).id")).from (Expression.x (DBConfig.BUCKET_NAME + " project"))
-                .useKeys(Expression.s(projectId)))).flatMap(result1 -> result1.rows().isEmpty())
-            .flatMap (isEmpty1 -> {
-                if (isEmpty1){
-                    Logger.info (String.format ("DB: No such project with ID: %s",projectId));
+        return mStorage.exists (projectId)
+            .flatMap (projectExists -> {
+                if (!projectExists){
+                    Log.info (Log.DB, "No such project with ID: %s",projectId);
                     return Observable.just (JsonObject.create ().put ("id",DBConfig.NO_SUCH_PROJECT));
                 }else {
-                    Logger.info (String.format ("DB: Found project with ID: %s",projectId));
+                    Log.info (Log.DB, "Found project with ID: %s",projectId);
 
-                    return mBucket.query (N1qlQuery.simple (select(Expression.x ("meta(aUser).id")).from (Expression.x (DBConfig.BUCKET_NAME + " aUser"))
-                        .useKeys (Expression.s (userId))
-                        .where (arrayContains (Expression.x ("enrolled_projects"),Expression.s (projectId)))))
-                        .flatMap (result2 -> result2.rows ().isEmpty ())
-                        .flatMap (isEmpty2 -> {
-                            if (!isEmpty2){
-                                Logger.info (String.format ("DB: User with ID: %s is already enrolled in project with ID: %s",userId,projectId));
+                    return EnrollmentIndex.isEnrolled (userId,projectId)
+                        .flatMap (alreadyEnrolled -> {
+                            if (alreadyEnrolled){
+                                Log.info (Log.DB, "User with ID: %s is already enrolled in project with ID: %s",userId,projectId);
 
                                 return Observable.just (JsonObject.create ().put ("id",DBConfig.ALREADY_ENROLLED));
                             }else {
-                                return mBucket.query (N1qlQuery.simple (update(Expression.x (DBConfig.BUCKET_NAME + " project"))
-                                    .useKeys (Expression.s (userId)).set (Expression.x ("enrolled_projects"),
-                                            arrayPut (Expression.x ("enrolled_projects"),Expression.s (projectId)))
-                                    .returning (Expression.x ("enrolled_projects[-1] as projectId,meta(project).id"))))
-                                    .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()));
+                                return mStorage.arrayAddUnique (userId,"enrolled_projects",projectId)
+                                    .doOnNext (row -> EnrollmentIndex.enroll (userId,projectId))
+                                    .map (row -> JsonObject.create ().put ("projectId",projectId).put ("id",row.getString ("id")));
                             }});
                 }
             })
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof CASMismatchException){
                     //// TODO: 4/1/16 needs more accurate handling in the future.
-                    Logger.info (String.format ("DB: Failed to add project with ID: %s to enrolled projects for user with id: %s",projectId,userId));
+                    Log.warn (Log.DB, "Failed to add project with ID: %s to enrolled projects for user with id: %s",projectId,userId);
 
                     return Observable.error (new CASMismatchException (String.format ("DB: Failed to add project with ID: %s to enrolled projects for user with id: %s, General DB exception.",projectId,userId)));
                 } else {
-                    Logger.info (String.format ("DB: Failed to add project with ID: %s to enrolled projects for user with id: %s",projectId,userId));
+                    Log.warn (Log.DB, "Failed to add project with ID: %s to enrolled projects for user with id: %s",projectId,userId);
 
                     return Observable.error (new CouchbaseException (String.format ("DB: Failed to add project with ID: %s to enrolled projects for user with id: %s, General DB exception.",projectId,userId)));
                 }
@@ -311,26 +283,20 @@ public class User {
             return Observable.error(e);
         }
 
-        Logger.info (String.format ("DB: Removing project with ID: %s to enrolled projects for user with id: %s",userId,projectId));
-
-        return mBucket.query (N1qlQuery.simple (update(Expression.x (DBConfig.BUCKET_NAME + " aUser"))
-        .useKeys (Expression.s (userId)).set (Expression.x ("enrolled_projects"),
-                arrayRemove (Expression.x ("enrolled_projects"),Expression.s (projectId)))
-        .returning (Expression.x ("meta(aUser).id," + Expression.s (projectId) + "as projectId"))))
-        .timeout (1000,TimeUnit.MILLISECONDS)
-        .flatMap (AsyncN1qlQueryResult::rows).flatMap (row -> Observable.just (row.value ()))
-        .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-        .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        Log.info (Log.DB, "Removing project with ID: %s to enrolled projects for user with id: %s",userId,projectId);
+
+        return mStorage.arrayRemove (userId,"enrolled_projects",projectId)
+        .doOnNext (row -> EnrollmentIndex.withdraw (userId,projectId))
+        .map (row -> row.put ("projectId",projectId))
+        .compose (DBPolicy.WRITE::apply)
         .onErrorResumeNext (throwable -> {
             if (throwable instanceof CASMismatchException){
                 //// TODO: 4/1/16 needs more accurate handling in the future.
-                Logger.info (String.format ("DB: Failed to remove project with ID: %s to enrolled projects for user with id: %s",userId,projectId));
+                Log.warn (Log.DB, "Failed to remove project with ID: %s to enrolled projects for user with id: %s",userId,projectId);
 
                 return Observable.error (new CASMismatchException (String.format ("DB: Failed to remove project with ID: %s to enrolled projects for user with id: %s, General DB exception.",userId,projectId)));
             } else {
-                Logger.info (String.format ("DB: Failed to remove project with ID: %s to enrolled projects for user with id: %s",userId,projectId));
+                Log.warn (Log.DB, "Failed to remove project with ID: %s to enrolled projects for user with id: %s",userId,projectId);
 
                 return Observable.error (new CouchbaseException (String.format ("DB: Failed to remove project with ID: %s to enrolled projects for user with id: %s, General DB exception.",userId,projectId)));
             }
@@ -352,11 +318,8 @@ public class User {
 
         JsonDocument userDocument = JsonDocument.create (userId,DBConfig.removeIdFromJson (userJsonObject));
 
-        return mBucket.replace (userDocument).timeout (500,TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500,TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.replace (userDocument)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException){
                     return Observable.error (new DocumentDoesNotExistException ("Failed to update user, ID dosen't exist in DB"));
@@ -383,11 +346,8 @@ public class User {
             return Observable.error(e);
         }
 
-        return mBucket.remove (userId).timeout (500, TimeUnit.MILLISECONDS)
-            .retryWhen (RetryBuilder.anyOf (TemporaryFailureException.class, BackpressureException.class)
-                    .delay (Delay.fixed (200, TimeUnit.MILLISECONDS)).max (3).build ())
-            .retryWhen (RetryBuilder.anyOf (TimeoutException.class)
-                    .delay (Delay.fixed (500, TimeUnit.MILLISECONDS)).once ().build ())
+        return mStorage.remove (userId)
+            .compose (DBPolicy.WRITE::apply)
             .onErrorResumeNext (throwable -> {
                 if (throwable instanceof DocumentDoesNotExistException) {
                     return Observable.error (new DocumentDoesNotExistException ("Failed to delete user, ID dosen't exist in DB"));
@@ -398,15 +358,15 @@ public class User {
     }
 
     private static void checkDBStatus () {
-        if (bucket.isClosed ()){
+        if (DBConfig.storage ().isClosed ()){
             if (DBConfig.initDB() == DBConfig.OPEN_BUCKET_OK) {
-                mBucket = bucket;
+                mStorage = DBConfig.storage ();
             }else{
                 throw new BucketClosedException ("Failed to open bucket due to timeout or backpressure");
 
             }
         }else {
-            mBucket = bucket;
+            mStorage = DBConfig.storage ();
         }
     }
 }
@@ -0,0 +1,214 @@
+package DBUtilities;
+
+import com.couchbase.client.java.document.json.JsonObject;
+import play.Logger;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Process-local lists of the projects every user is enrolled in and created, sorted by name
+ * in the order and with the cursors of the listings they replace: enrolled projects by name ascending, created projects by name descending.
+ * A page of a list is read in O(page size) after a cursor and its projects are got by id, instead of querying the DB
+ * for the whole enrollment history of the user.
+ * Kept up to date by the project writes and by the {@link EnrollmentIndex}, built after it when the DB is initialized,
+ * until then the listings query the DB.
+ */
+class UserProjects {
+    static final String ENROLLED = "enrolled";
+    static final String CREATED = "created";
+    private static final Comparator<Entry> BY_NAME = Comparator.<Entry, String>comparing(entry -> entry.name)
+            .thenComparing(entry -> entry.id);
+    private static final Comparator<Entry> BY_NAME_DESCENDING = Comparator.<Entry, String>comparing(entry -> entry.name).reversed()
+            .thenComparing(entry -> entry.id);
+
+    private static final Map<String, Listed> projects = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> enrollees = new ConcurrentHashMap<>();
+    private static final Map<String, NavigableSet<Entry>> lists = new ConcurrentHashMap<>();
+    private static final Object writeLock = new Object();
+    private static volatile boolean loaded;
+
+    /**
+     * List all the projects in the DB under their owners and enrollees, the enrollment index must already be built.
+     * @return an observable of the number of listed projects.
+     */
+    static Observable<Integer> rebuild() {
+        return DBConfig.storage().list(Listing.of("project").whereIdHasPrefix().page(0, Integer.MAX_VALUE))
+                .doOnNext(row -> index(row.getString("id"), row.getObject("project")))
+                .count()
+                .doOnNext(count -> {
+                    loaded = true;
+                    Logger.info(String.format("DB: User project lists built with %s projects", count));
+                });
+    }
+
+    static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Add a project to the lists of its owner and enrollees, or move it after it was renamed.
+     */
+    static void index(String projectId, JsonObject project) {
+        JsonObject owner = project.getObject("owner");
+        String name = project.getString("name");
+        synchronized (writeLock) {
+            replace(projectId, projects.get(projectId),
+                    name == null ? null : new Listed(name, owner == null ? null : owner.getString("id")));
+        }
+    }
+
+    static void remove(String projectId) {
+        synchronized (writeLock) {
+            replace(projectId, projects.get(projectId), null);
+        }
+    }
+
+    static void enroll(String userId, String projectId) {
+        synchronized (writeLock) {
+            enrollees.computeIfAbsent(projectId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+            Listed project = projects.get(projectId);
+            if (project != null) {
+                list(ENROLLED, userId).add(new Entry(projectId, project.name));
+            }
+        }
+    }
+
+    static void withdraw(String userId, String projectId) {
+        synchronized (writeLock) {
+            Set<String> users = enrollees.get(projectId);
+            if (users != null) {
+                users.remove(userId);
+            }
+            Listed project = projects.get(projectId);
+            if (project != null) {
+                list(ENROLLED, userId).remove(new Entry(projectId, project.name));
+            }
+        }
+    }
+
+    /**
+     * @param list {@link #ENROLLED} or {@link #CREATED}.
+     * @param after the cursor to start after, null to start at the offset.
+     * @return the page of the projects of the user.
+     * @throws IllegalArgumentException if the cursor isn't a cursor of a list sorted by name.
+     */
+    static List<Hit> page(String list, String userId, int offset, int limit, Cursor after) {
+        NavigableSet<Entry> entries = lists.getOrDefault(key(list, userId), Collections.emptyNavigableSet());
+        if (after != null) {
+            if (!(after.sortValue() instanceof String)) {
+                throw new IllegalArgumentException("Invalid cursor for the projects sorted by name");
+            }
+            entries = entries.tailSet(new Entry(after.id(), (String) after.sortValue()), false);
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        int skipped = 0;
+        for (Entry entry : entries) {
+            if (hits.size() >= limit) {
+                break;
+            }
+            if (after == null && skipped < offset) {
+                skipped++;
+                continue;
+            }
+            hits.add(new Hit(entry.id, entry.name));
+        }
+        return hits;
+    }
+
+    /**
+     * Move a project from the lists of its previous state to the lists of its new state.
+     */
+    private static void replace(String projectId, Listed previous, Listed next) {
+        Set<String> users = enrollees.getOrDefault(projectId, Collections.emptySet());
+        if (previous != null) {
+            Entry entry = new Entry(projectId, previous.name);
+            if (previous.ownerId != null) {
+                list(CREATED, previous.ownerId).remove(entry);
+            }
+            for (String userId : users) {
+                list(ENROLLED, userId).remove(entry);
+            }
+        }
+        if (next == null) {
+            projects.remove(projectId);
+            return;
+        }
+        Entry entry = new Entry(projectId, next.name);
+        if (next.ownerId != null) {
+            list(CREATED, next.ownerId).add(entry);
+        }
+        for (String userId : users) {
+            list(ENROLLED, userId).add(entry);
+        }
+        projects.put(projectId, next);
+    }
+
+    private static NavigableSet<Entry> list(String list, String userId) {
+        return lists.computeIfAbsent(key(list, userId),
+                key -> new ConcurrentSkipListSet<>(CREATED.equals(list) ? BY_NAME_DESCENDING : BY_NAME));
+    }
+
+    private static String key(String list, String userId) {
+        return list + ":" + userId;
+    }
+
+    /**
+     * What a project is listed by, never changed once listed so its entries can be found and removed.
+     */
+    private static class Listed {
+        private final String name;
+        private final String ownerId;
+
+        Listed(String name, String ownerId) {
+            this.name = name;
+            this.ownerId = ownerId;
+        }
+    }
+
+    /**
+     * A project in a list of a user.
+     */
+    private static class Entry {
+        private final String id;
+        private final String name;
+
+        Entry(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A project of a page of a list.
+     */
+    static class Hit {
+        private final String id;
+        private final String name;
+
+        Hit(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        String id() {
+            return id;
+        }
+
+        /**
+         * @return the cursor of the page that starts after this project.
+         */
+        String cursor() {
+            return Cursor.encode(name, id);
+        }
+    }
+}
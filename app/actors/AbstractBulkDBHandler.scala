@@ -1,26 +1,86 @@
 package actors
 
-import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
+import actors.AbstractBulkDBHandler._
 import actors.AbstractDBActor.Terminate
-import akka.actor.ActorRef
+import akka.actor.{ActorRef, ReceiveTimeout}
 import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
-import models.Response
+import helpers.Log
+import models.errors.Error
+import models.{Response, StreamedResponse}
+import play.api.libs.json.{JsArray, JsNull, JsString, JsValue, Json}
 
+import scala.collection.mutable
+import scala.concurrent.duration._
+import scala.util.Try
 
-abstract class AbstractBulkDBHandler(out: ActorRef) extends AbstractDBActor[JsonArray](out) {
+
+abstract class AbstractBulkDBHandler extends AbstractDBActor[JsonArray] {
 
 
   /**
     * field to aggregate the json objects retrieved from DB
     */
   // todo reduce null values
-  val finalResultArray: JsonArray = JsonArray.create()
+  private var resultArray: JsonArray = JsonArray.create()
+
+  def finalResultArray: JsonArray = resultArray
+
+  /**
+    * the cursor the page was requested with, None when it was requested with an offset
+    */
+  private var requestedCursor: Option[String] = None
+
+  private var pageItems: Int = 0
+
+  /**
+    * the cursor of the last aggregated item, the next page starts right after it
+    */
+  private var lastCursor: Option[String] = None
+
+  /**
+    * the state of a streamed page, its items are encoded into chunks as the query emits them and sent when they are pulled
+    */
+  private var streaming = false
+  private var streamStarted = false
+  private var streamFailed = false
+  private var queryCompleted = false
+  private var itemRequested = false
+  private var streamedItems = 0
+  private var subscriber: Option[DemandSubscriber] = None
+  private var puller: Option[ActorRef] = None
+  private val chunks = mutable.Queue[Array[Byte]]()
 
 
-  override def onComplete: () => Unit = { () => {
-    self ! BulkResult(finalResultArray)
-    self ! Terminate
+  /**
+    * every request aggregates its own items and page
+    */
+  override def startRequest(): Unit = {
+    resultArray = JsonArray.create()
+    requestedCursor = None
+    pageItems = 0
+    lastCursor = None
+    streaming = false
+    streamStarted = false
+    streamFailed = false
+    queryCompleted = false
+    itemRequested = false
+    streamedItems = 0
+    subscriber = None
+    puller = None
+    chunks.clear()
   }
+
+  override def onComplete: () => Unit = {
+    val toSelf = correlated()
+    val items = finalResultArray
+    if (streaming) {
+      () => toSelf(QueryCompleted)
+    } else {
+      () => {
+        toSelf(BulkResult(items))
+        toSelf(Terminate)
+      }
+    }
   }
 
   /**
@@ -34,19 +94,177 @@ abstract class AbstractBulkDBHandler(out: ActorRef) extends AbstractDBActor[Json
     *
     */
   override def onNext(): (JsonObject) => Unit = {
+    val toSelf = correlated()
     obj: JsonObject => {
-      self ! ItemResult(obj)
+      toSelf(ItemResult(obj))
+    }
+  }
+
+  /**
+    * a streamed page asks the query for its items one at a time, the next one once the previous one is encoded
+    */
+  override def executeQuery(observable: rx.Observable[JsonObject]): Unit = {
+    if (streaming) {
+      val demandSubscriber = new DemandSubscriber(onNext(), onError(), onComplete())
+      subscriber = Some(demandSubscriber)
+      itemRequested = true
+      observable.subscribe(demandSubscriber)
+    } else {
+      super.executeQuery(observable)
     }
   }
 
 
   /**
-    * aggregate new JsonOject
+    * aggregate new JsonOject, or encode it into the next chunk of a streamed page
     *
     * @param jsonObject
     */
   def appendFinalResult(jsonObject: JsonObject): Unit = {
-    finalResultArray.add(jsonObject)
+    Option(jsonObject.getString(DBUtilities.Cursor.CURSOR_KEY)).foreach(cursor => lastCursor = Some(cursor))
+    val item = jsonObject.removeKey(DBUtilities.Cursor.CURSOR_KEY)
+    if (streaming) streamItem(item)
+    else finalResultArray.add(item)
+  }
+
+  /**
+    * remember how the page is requested, must be called before executing the query
+    *
+    * @param cursor the cursor sent by the client, None to paginate with the offset
+    * @param limit  the page size
+    * @param stream true to stream the items as chunks instead of responding with the whole page
+    * @return the page size to query, limit capped by listings.max-page-size
+    */
+  def startPage(cursor: Option[String], limit: Int, stream: Boolean = false): Int = {
+    requestedCursor = cursor
+    pageItems = pageSize(limit)
+    streaming = stream
+    pageItems
+  }
+
+  /**
+    * wrap the items of the page into {"data": items, "next_cursor": cursor} when the page is requested with a cursor,
+    * next_cursor is null once the listing has no more items.
+    * the chunks of a streamed page carry the wrapping themselves, so its items are left as they are
+    */
+  def paginate(items: JsValue): JsValue = requestedCursor match {
+    case Some(_) if !streaming =>
+      Json.obj("data" -> items, "next_cursor" -> nextCursor(finalResultArray.size).map(JsString).getOrElse[JsValue](JsNull))
+    case _ =>
+      items
+  }
+
+  /**
+    * an empty page requested with a cursor is the end of the listing, not an error
+    */
+  def emptyPage: Option[Response] = requestedCursor.map(_ => Response(paginate(JsArray())))
+
+  /**
+    * the items of a streamed page, the chunks pulled by the controller and the end of its query
+    */
+  override def baseHandle: Receive = {
+    case item: ItemResult if streaming =>
+      handle.applyOrElse(item, unhandled)
+      itemRequested = false
+      if (!streamStarted && chunks.nonEmpty) {
+        streamStarted = true
+        context.setReceiveTimeout(StreamIdleTimeout)
+        out ! StreamedResponse(self, correlationID)
+      }
+      pump()
+
+    case QueryCompleted if streaming =>
+      queryCompleted = true
+      itemRequested = false
+      if (streamStarted) {
+        pump()
+      } else {
+        // no item to stream, respond like a page that isn't streamed
+        streaming = false
+        handle.applyOrElse(BulkResult(finalResultArray), unhandled)
+        correlated()(Terminate)
+      }
+
+    case NextChunk if streamStarted =>
+      puller = Some(sender())
+      if (streamFailed) endStream()
+      else pump()
+
+    case err: Error if streamStarted =>
+      // the response has already started, the stream can only be cut short
+      Log.warn(Log.ACTOR, "actor %s - stream failed : %s", self.path, err)
+      streamFailed = true
+      if (puller.isDefined) endStream()
+
+    case Terminate if streamStarted =>
+      // the stream ends the request once its last chunk is pulled
+
+    case CancelStream if streamStarted =>
+      endStream()
+
+    case ReceiveTimeout if streamStarted =>
+      Log.warn(Log.ACTOR, "actor %s - no chunk pulled for %s, cancelling the stream", self.path, StreamIdleTimeout)
+      endStream()
+  }
+
+  private def streamItem(item: JsonObject): Unit = {
+    Try(constructResponse(JsonArray.create().add(item))).toOption.flatten match {
+      case Some(Response(JsArray(Seq(encoded)))) =>
+        val prefix =
+          if (streamedItems > 0) ","
+          else if (requestedCursor.isDefined) "{\"data\":["
+          else "["
+        chunks.enqueue((prefix + Json.stringify(encoded)).getBytes("UTF-8"))
+        streamedItems += 1
+
+      case _ =>
+        Log.warn(Log.ACTOR, "actor %s - couldn't encode a streamed item, skipping it : %s", self.path, item)
+    }
+  }
+
+  /**
+    * send the next chunk to the controller if it is waiting for one, and ask the query for the next item
+    * so that one chunk is ready ahead of the client
+    */
+  private def pump(): Unit = {
+    puller.foreach { waiting =>
+      if (chunks.nonEmpty) {
+        waiting ! Chunk(chunks.dequeue(), last = false)
+        puller = None
+      } else if (queryCompleted) {
+        waiting ! Chunk(closingChunk, last = true)
+        puller = None
+        endStream()
+      }
+    }
+    if (!itemRequested && !queryCompleted && chunks.isEmpty) {
+      itemRequested = true
+      subscriber.foreach(_.demand(1))
+    }
+  }
+
+  private def closingChunk: Array[Byte] = {
+    val opening = if (streamedItems > 0) "" else if (requestedCursor.isDefined) "{\"data\":[" else "["
+    val closing = requestedCursor match {
+      case Some(_) => "],\"next_cursor\":" + Json.stringify(nextCursor(streamedItems).map(JsString).getOrElse[JsValue](JsNull)) + "}"
+      case None => "]"
+    }
+    (opening + closing).getBytes("UTF-8")
+  }
+
+  private def nextCursor(items: Int): Option[String] = if (items >= pageItems) lastCursor else None
+
+  /**
+    * stop the query and end the request, a controller still waiting for a chunk is told the stream failed
+    */
+  private def endStream(): Unit = {
+    puller.foreach(_ ! StreamFailed)
+    puller = None
+    subscriber.foreach(_.unsubscribe())
+    context.setReceiveTimeout(Duration.Undefined)
+    streaming = false
+    streamStarted = false
+    correlated()(Terminate)
   }
 
 
@@ -55,8 +273,52 @@ abstract class AbstractBulkDBHandler(out: ActorRef) extends AbstractDBActor[Json
 
 object AbstractBulkDBHandler {
 
+  /**
+    * a streamed page cancels itself when its chunks stop being pulled for this long, like when the client went away
+    */
+  val StreamIdleTimeout: FiniteDuration = 30.seconds
+
   case class BulkResult(jsonArray: JsonArray)
 
   case class ItemResult(jsonObject: JsonObject)
 
-}
\ No newline at end of file
+  /**
+    * sent by the controller to pull the next chunk of a streamed page, correlated with the request
+    */
+  case object NextChunk
+
+  /**
+    * the next bytes of a streamed page, last is true for the chunk closing the page
+    */
+  case class Chunk(bytes: Array[Byte], last: Boolean)
+
+  /**
+    * the stream ended before its last chunk, the response can only be cut short
+    */
+  case object StreamFailed
+
+  /**
+    * sent by the controller when the client stopped reading the stream
+    */
+  case object CancelStream
+
+  private case object QueryCompleted
+
+  /**
+    * subscribes to the query requesting one item at a time, more are requested with demand
+    */
+  private class DemandSubscriber(next: (JsonObject) => Unit, error: (Throwable) => Unit, complete: () => Unit)
+    extends rx.Subscriber[JsonObject] {
+
+    override def onStart(): Unit = request(1)
+
+    override def onNext(jsonObject: JsonObject): Unit = next(jsonObject)
+
+    override def onError(throwable: Throwable): Unit = error(throwable)
+
+    override def onCompleted(): Unit = complete()
+
+    def demand(items: Long): Unit = request(items)
+  }
+
+}
@@ -1,17 +1,22 @@
 package actors
 
-import actors.AbstractDBActor.Terminate
+import java.util.concurrent.atomic.AtomicLong
+
+import actors.AbstractDBActor.{Correlated, Handle, Handled, Terminate}
 import akka.actor.{Actor, ActorRef}
 import com.couchbase.client.core.{BucketClosedException, CouchbaseException}
 import com.couchbase.client.java.document.json.JsonObject
+import com.typesafe.config.ConfigFactory
+import helpers.{JsonConverter, Log}
 import models.Response
 import models.errors.DBErrors.{BucketClosedError, CouchbaseError, GeneralServerError}
-import models.errors.GeneralErrors.NotFoundError
+import models.errors.GeneralErrors.{BadRequestError, NotFoundError}
 import play.api.Logger
-import play.api.libs.json.{JsValue, Json}
+import play.api.libs.json.JsValue
+import rx.functions.Func0
 import rx.lang.scala.JavaConversions._
 
-abstract class AbstractDBActor[T](out: ActorRef) extends Actor {
+abstract class AbstractDBActor[T] extends Actor {
 
 
   /**
@@ -19,6 +24,107 @@ abstract class AbstractDBActor[T](out: ActorRef) extends Actor {
     */
   val ErrorMsg: String
 
+  /**
+    * the actor waiting for the response of the request being handled
+    */
+  private var replyTo: ActorRef = context.system.deadLetters
+
+  /**
+    * handling requests one at a time, the id of the current one.
+    * every incarnation of the handler, a restart included, numbers its requests from its own epoch
+    * so the late messages of the requests of a previous incarnation are never taken for the current one
+    */
+  private var requestID: Long = AbstractDBActor.nextEpoch()
+
+  private var handling = false
+
+  /**
+    * the pool the handler goes back to once the request is handled, None if it is stopped instead
+    */
+  private var pool: Option[ActorRef] = None
+
+  /**
+    * the actor waiting for the response of the request being handled
+    */
+  def out: ActorRef = replyTo
+
+  /**
+    * handle the request sent by the manager and the messages sent to self while handling it
+    */
+  def handle: Receive
+
+  /**
+    * called before handling every request, reset the state kept for the previous one here
+    */
+  def startRequest(): Unit = {}
+
+  /**
+    * messages handled by the base handlers before handle, like the chunks of a streamed listing
+    */
+  def baseHandle: Receive = PartialFunction.empty
+
+  /**
+    * the id of the request being handled, messages wrapped in Correlated with it are dropped once the request is handled
+    */
+  def correlationID: Long = requestID
+
+  /**
+    * @return the page size to query, limit capped by listings.max-page-size
+    */
+  def pageSize(limit: Int): Int = math.min(limit, AbstractDBActor.MaxPageSize)
+
+  /**
+    * unwrap the requests and the messages correlated with them, then pass them to handle.
+    * messages of an already handled request, like a late result of one of its queries, are dropped.
+    */
+  final override def receive: Receive = {
+    case Handle(request, requester, handlerPool) =>
+      requestID += 1
+      replyTo = requester
+      pool = handlerPool
+      handling = true
+      startRequest()
+      dispatch(request)
+
+    case Correlated(id, msg) =>
+      if (handling && id == requestID) dispatch(msg)
+
+    case msg =>
+      if (handling) dispatch(msg)
+  }
+
+  private def dispatch(msg: Any): Unit = msg match {
+    case _ if baseHandle.isDefinedAt(msg) =>
+      baseHandle(msg)
+
+    case Terminate =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, Terminate)
+      finishRequest()
+
+    case _ =>
+      handle.applyOrElse(msg, unhandled)
+  }
+
+  /**
+    * done with the current request, go back to the pool or stop
+    */
+  private def finishRequest(): Unit = {
+    handling = false
+    replyTo = context.system.deadLetters
+    pool match {
+      case Some(handlerPool) => handlerPool ! Handled
+      case None => context stop self
+    }
+  }
+
+  /**
+    * @return a function sending messages to self correlated with the current request, for the callbacks of the DB queries
+    */
+  def correlated(): (Any) => Unit = {
+    val id = requestID
+    msg: Any => self ! Correlated(id, msg)
+  }
+
   def onNext(): (JsonObject) => Unit
 
   /**
@@ -40,14 +146,20 @@ abstract class AbstractDBActor[T](out: ActorRef) extends Actor {
   def constructResponse(retrievedData: T): Option[Response]
 
   /**
-    * this methods takes any number of observables and subscribe for it
+    * this methods takes any number of writes and queues them on the DB side effects stage
+    * which runs, batches and retries them per document
     *
-    * @param observables any number of observables to subscribe on
+    * @param effects any number of pairs of the id of the document written and the function creating the observable writing it,
+    *                called when the write's turn comes and again for every retry
     */
-  def executeSideEffectsQueries(observables: rx.Observable[JsonObject]*): Unit = {
-    observables.foreach(o => toScalaObservable(o).subscribe(
-      item => {},
-      throwable => Logger.error(s"side effect error on Actor ${this.getClass.toString}" + throwable.getMessage)))
+  def executeSideEffectsQueries(effects: (String, () => rx.Observable[JsonObject])*): Unit = {
+    effects.foreach { case (documentID, effect) =>
+      val write = new Func0[rx.Observable[JsonObject]] {
+        override def call(): rx.Observable[JsonObject] = effect()
+      }
+      if (!DBUtilities.DBConfig.sideEffects().submit(documentID, write))
+        Logger.error(s"side effect on $documentID dropped on Actor ${this.getClass.toString}, the side effects queue is full")
+    }
   }
 
 
@@ -55,38 +167,79 @@ abstract class AbstractDBActor[T](out: ActorRef) extends Actor {
     * called when error happens within the db query
     */
   def onError(msg: String = ErrorMsg): (Throwable) => Unit = {
-    { y => {
+    val toSelf = correlated()
+    val errorHandler: (Throwable) => Unit = { y => {
       y match {
         case ex: NoSuchElementException =>
-          self ! NotFoundError(msg, ex.getMessage, this.getClass.toString)
+          toSelf(NotFoundError(msg, ex.getMessage, this.getClass.toString))
+
+        case ex: IllegalArgumentException =>
+          toSelf(BadRequestError(msg, ex.getMessage, this.getClass.toString))
 
         case ex: BucketClosedException =>
-          self ! BucketClosedError(msg, ex.getMessage, this.getClass.toString)
+          toSelf(BucketClosedError(msg, ex.getMessage, this.getClass.toString))
 
         case ex: CouchbaseException =>
-          self ! CouchbaseError(msg, ex.getMessage, this.getClass.toString)
+          toSelf(CouchbaseError(msg, ex.getMessage, this.getClass.toString))
 
         case ex: Exception =>
-          self ! GeneralServerError(msg, ex.getMessage, this.getClass.toString)
+          toSelf(GeneralServerError(msg, ex.getMessage, this.getClass.toString))
       }
-      self ! Terminate
+      toSelf(Terminate)
     }
     }
-
+    errorHandler
   }
 
   /**
     * convert JsValue to JsonObject value to be passed to the DB observables
     */
-  def toJsonObject(js: JsValue): JsonObject = JsonObject.fromJson(Json.stringify(js))
+  def toJsonObject(js: JsValue): JsonObject = JsonConverter.toJsonObject(js)
 
 }
 
 object AbstractDBActor {
 
+  private val MaxPageSizeConfigKey = "listings.max-page-size"
+  private val DefaultMaxPageSize = 100
+
+  private val epochs = new AtomicLong()
+
   /**
-    * this message is sent to self when completing the actor job to be killed
+    * @return the first request id of a new handler incarnation, leaving 2^32 ids to every incarnation
+    */
+  private def nextEpoch(): Long = epochs.incrementAndGet() << 32
+
+  /**
+    * the largest page a listing returns whatever limit it is requested with
+    */
+  val MaxPageSize: Int = {
+    val config = ConfigFactory.load()
+    if (config.hasPath(MaxPageSizeConfigKey)) config.getInt(MaxPageSizeConfigKey) else DefaultMaxPageSize
+  }
+
+  /**
+    * this message is sent to self when the request is handled, the handler then goes back to its pool or is stopped
     */
   case object Terminate
 
+  /**
+    * a request sent to a handler by its manager
+    *
+    * @param request   the message of the request
+    * @param requester the actor waiting for the response
+    * @param pool      the pool of the handler when it is long-lived, None when it is created for this request only
+    */
+  case class Handle(request: Any, requester: ActorRef, pool: Option[ActorRef])
+
+  /**
+    * a message sent to self while handling the request with the given id
+    */
+  case class Correlated(requestID: Long, msg: Any)
+
+  /**
+    * sent by a pooled handler to its pool when it is done with its request
+    */
+  case object Handled
+
 }
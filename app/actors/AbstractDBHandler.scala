@@ -2,7 +2,6 @@ package actors
 
 import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.ActorRef
 import com.couchbase.client.java.document.json.JsonObject
 import models.Response
 
@@ -12,15 +11,16 @@ import models.Response
   * method executeQuery has to be called within the actor and pass Observable[JsonObject].
   */
 
-abstract class AbstractDBHandler(out: ActorRef) extends AbstractDBActor[JsonObject](out) {
+abstract class AbstractDBHandler extends AbstractDBActor[JsonObject] {
 
 
   /**
     * called when the db query get data back as JsonObject
     */
   override def onNext(): (JsonObject) => Unit = {
+    val toSelf = correlated()
     jsonObject: JsonObject => {
-      self ! QueryResult(jsonObject)
+      toSelf(QueryResult(jsonObject))
     }
   }
 
@@ -28,9 +28,11 @@ abstract class AbstractDBHandler(out: ActorRef) extends AbstractDBActor[JsonObje
   /**
     * called when the db query completes and all Json Objects retrieved
     */
-  override def onComplete(): () => Unit = { () => {
-    self ! Terminate
-  }
+  override def onComplete(): () => Unit = {
+    val toSelf = correlated()
+    () => {
+      toSelf(Terminate)
+    }
   }
 
   /**
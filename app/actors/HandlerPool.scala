@@ -0,0 +1,64 @@
+package actors
+
+import actors.AbstractDBActor.{Handle, Handled}
+import akka.actor.SupervisorStrategy.Restart
+import akka.actor.{Actor, ActorRef, OneForOneStrategy, Props}
+import models.errors.GeneralErrors.ServiceUnavailableError
+import play.api.Logger
+
+import scala.collection.mutable
+
+/**
+  * a pool of long-lived handlers of one kind, each handling one request at a time.
+  * handlers are created as requests come, up to size, then the requests wait for a handler to be done with its request.
+  * once maxWaiting requests are waiting the new ones are refused as service unavailable.
+  *
+  * @param handlerProps the props of the handlers
+  * @param size         the maximum number of handlers
+  * @param maxWaiting   the maximum number of requests waiting for a handler
+  */
+class HandlerPool(handlerProps: Props, size: Int, maxWaiting: Int) extends Actor {
+
+  private val idleHandlers = mutable.Queue[ActorRef]()
+  private val busyHandlers = mutable.Set[ActorRef]()
+  private val waitingRequests = mutable.Queue[Handle]()
+
+  /**
+    * a handler failing is restarted and its request is lost, like when the handler of a single request fails
+    */
+  override val supervisorStrategy = OneForOneStrategy() {
+    case _ =>
+      release(sender())
+      Restart
+  }
+
+  override def receive = {
+    case request: Handle =>
+      if (idleHandlers.nonEmpty) assign(idleHandlers.dequeue(), request)
+      else if (busyHandlers.size < size) assign(context.actorOf(handlerProps), request)
+      else if (waitingRequests.size < maxWaiting) waitingRequests.enqueue(request)
+      else request.requester ! ServiceUnavailableError("the server is busy, try again later",
+        s"the ${self.path.name} handlers have $maxWaiting requests waiting", this.getClass.toString)
+
+    case Handled =>
+      release(sender())
+  }
+
+  private def assign(handler: ActorRef, request: Handle): Unit = {
+    busyHandlers += handler
+    handler ! request.copy(pool = Some(self))
+  }
+
+  private def release(handler: ActorRef): Unit = {
+    if (busyHandlers.remove(handler)) {
+      if (waitingRequests.nonEmpty) assign(handler, waitingRequests.dequeue())
+      else idleHandlers.enqueue(handler)
+    } else {
+      Logger.info(s"actor ${self.path} - released handler ${handler.path} which wasn't handling a request")
+    }
+  }
+}
+
+object HandlerPool {
+  def props(handlerProps: Props, size: Int, maxWaiting: Int): Props = Props(new HandlerPool(handlerProps, size, maxWaiting))
+}
@@ -0,0 +1,54 @@
+package actors
+
+import actors.AbstractDBActor.Handle
+import akka.actor.{ActorContext, Props}
+import com.typesafe.config.ConfigFactory
+
+/**
+  * sends the requests of one kind to their handlers, as configured by actors.handlers.mode:
+  * pooled sends them to a pool of at most actors.handlers.pool-size long-lived handlers
+  * with at most actors.handlers.max-waiting requests waiting for them,
+  * per-request creates a handler for every request which is stopped once the request is handled.
+  *
+  * must be created by the actor receiving the requests, within its constructor
+  *
+  * @param handlerProps the props of the handlers
+  * @param name         the name of the pool, unique among the children of the actor
+  * @param pooled       true to use a pool of long-lived handlers, false to create a handler per request
+  * @param poolSize     the maximum number of handlers of the pool
+  * @param maxWaiting   the maximum number of requests waiting for a handler of the pool
+  */
+class Handlers(handlerProps: Props, name: String, pooled: Boolean = Handlers.Pooled, poolSize: Int = Handlers.PoolSize,
+               maxWaiting: Int = Handlers.MaxWaiting)
+              (implicit context: ActorContext) {
+
+  private val pool = if (pooled) Some(context.actorOf(HandlerPool.props(handlerProps, poolSize, maxWaiting), name)) else None
+
+  /**
+    * send a request to a handler, the handler responds to the sender of the message being received
+    */
+  def forward(request: Any): Unit = pool match {
+    case Some(handlerPool) =>
+      handlerPool ! Handle(request, context.sender(), None)
+    case None =>
+      context.actorOf(handlerProps) ! Handle(request, context.sender(), None)
+  }
+}
+
+object Handlers {
+  private val ModeConfigKey = "actors.handlers.mode"
+  private val PoolSizeConfigKey = "actors.handlers.pool-size"
+  private val MaxWaitingConfigKey = "actors.handlers.max-waiting"
+  private val DefaultPoolSize = 64
+  private val DefaultMaxWaiting = 1000
+
+  private val config = ConfigFactory.load()
+
+  val Pooled: Boolean = !config.hasPath(ModeConfigKey) || config.getString(ModeConfigKey) != "per-request"
+
+  val PoolSize: Int = if (config.hasPath(PoolSizeConfigKey)) config.getInt(PoolSizeConfigKey) else DefaultPoolSize
+
+  val MaxWaiting: Int = if (config.hasPath(MaxWaitingConfigKey)) config.getInt(MaxWaitingConfigKey) else DefaultMaxWaiting
+
+  def apply(handlerProps: Props, name: String)(implicit context: ActorContext): Handlers = new Handlers(handlerProps, name)(context)
+}
@@ -6,6 +6,7 @@ import actors.enrollment.EnrollmentManager
 import actors.project.ProjectManager
 import actors.user.UserManager
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.CategoryManagerMessages.CategoryMessage
 import messages.ContributionManagerMessages.ContributionMessage
 import messages.EnrollmentManagerMessages.EnrollmentMessage
@@ -26,25 +27,25 @@ class Receptionist extends Actor {
 
   override def receive = {
     case msg: ProjectMessage =>
-      Logger.info(s"actor ${self.path} - received msg : $msg ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, msg)
       projectManager forward msg
 
     case msg: UserMessage =>
-      Logger.info(s"actor ${self.path} - received msg : $msg ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, msg)
       userManager forward msg
 
     case msg: CategoryMessage =>
-      Logger.info(s"actor ${self.path} - received msg : $msg")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, msg)
       categoryManager forward msg
 
 
     case msg: EnrollmentMessage =>
-      Logger.info(s"actor ${self.path} - received msg : $msg ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, msg)
       enrollmentManager forward msg
 
 
     case msg: ContributionMessage =>
-      Logger.info(s"actor ${self.path} - received msg : $msg")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, msg)
       contributionManager forward msg
   }
 
@@ -58,6 +59,11 @@ class Receptionist extends Actor {
     }
   }
 
+  override def postStop = {
+    Logger.info(s"actor ${self.path} is stopping - Flushing counters and closing DB")
+    DBUtilities.DBConfig.closeDB()
+  }
+
 
 }
 
@@ -2,30 +2,31 @@ package actors.category
 
 import actors.AbstractBulkDBHandler
 import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
-import actors.AbstractDBActor.Terminate
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonArray
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.CategoryManagerMessages.RetrieveCategories
+import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.{DetailedCategory, Response}
-import play.api.Logger
 import play.api.libs.json._
 
 
-class CategoriesRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
+class CategoriesRetriever extends AbstractBulkDBHandler {
 
   // this is the msg to user when error happens while querying from db
   override val ErrorMsg: String = "Retrieving categories failed"
 
-  override def receive = {
-    case RetrieveCategories(offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${RetrieveCategories(offset, limit)}")
-      executeQuery(DBUtilities.Category.bulkGetCategories(offset, limit))
+  override def handle: Receive = {
+    case RetrieveCategories(offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, RetrieveCategories(offset, limit, cursor, stream))
+      val pageLimit = startPage(cursor, limit, stream)
+      executeQuery(DBUtilities.Category.bulkGetCategories(offset, pageLimit, cursor.orNull))
 
     case ItemResult(jsonObject) =>
       // received new item , aggregate it to the final result Array
-      Logger.info(s"actor ${self.path} - received msg : ${ItemResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ItemResult(jsonObject))
 
       if (jsonObject.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         appendFinalResult(jsonObject)
@@ -35,8 +36,8 @@ class CategoriesRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
 
     case BulkResult(jsArray) =>
       if (jsArray.isEmpty) {
-        out ! NotFoundError("Couldn't find categories",
-          "Constructed json array is empty", this.getClass.toString)
+        out ! emptyPage.getOrElse(NotFoundError("Couldn't find categories",
+          "Constructed json array is empty", this.getClass.toString))
       } else {
         val response = constructResponse(jsArray)
         response match {
@@ -48,15 +49,17 @@ class CategoriesRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
               "couldn't parse json retrieved from the db ", this.getClass.toString)
         }
       }
+
+    case err: Error =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
+      out ! err
+
     // self terminate
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : Terminate ")
-      context stop self
   }
 
   // try to convert the retrieved JsonDocument from db to a GetCategoriesResponse
   override def constructResponse(jsonArray: JsonArray): Option[Response] = {
-    val parsedJson = Json.parse(jsonArray.toString).as[JsArray]
+    val parsedJson = JsonConverter.toJsValue(jsonArray).as[JsArray]
     val categories = parsedJson.value.seq.map { categoryItem => {
       val CategoryObj = categoryItem.as[JsObject]
       // add category url to the json retrieved
@@ -64,12 +67,12 @@ class CategoriesRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
       FullCategoryObj.as[DetailedCategory]
     }
     }
-    if (categories.isEmpty) None else Some(Response(Json.toJson(categories)))
+    if (categories.isEmpty) None else Some(Response(paginate(Json.toJson(categories))))
   }
 }
 
 object CategoriesRetriever {
-  def props(out: ActorRef): Props = Props(new CategoriesRetriever(out))
+  def props(): Props = Props(new CategoriesRetriever)
 }
 
 
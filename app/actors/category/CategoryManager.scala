@@ -1,25 +1,25 @@
 package actors.category
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.CategoryManagerMessages.{RetrieveCategories, RetrieveCategoryProjects}
-import play.Logger
 
 class CategoryManager extends Actor {
 
+  val categoriesRetrievers = Handlers(CategoriesRetriever.props(), "categoriesRetrievers")
+  val categoryProjectsRetrievers = Handlers(CategoryProjectsRetriever.props(), "categoryProjectsRetrievers")
+
   override def receive = {
-    case RetrieveCategories(offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${RetrieveCategories(offset, limit)}")
-      // get an instance of CategoriesRetriever actor
-      val categoriesRetriever = context.actorOf(CategoriesRetriever.props(sender()), "categoriesRetriever")
+    case RetrieveCategories(offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, RetrieveCategories(offset, limit, cursor, stream))
       // forward message to categoriesRetriever
-      categoriesRetriever forward RetrieveCategories(offset, limit)
+      categoriesRetrievers forward RetrieveCategories(offset, limit, cursor, stream)
 
-    case RetrieveCategoryProjects(categoryID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${RetrieveCategories(offset, limit)}")
-      // get an instance of CategoryProjectsRetriever actor
-      val categoryProjectsRetriever = context.actorOf(CategoryProjectsRetriever.props(sender()), "categoryProjectsRetriever")
+    case RetrieveCategoryProjects(categoryID, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, RetrieveCategories(offset, limit, cursor, stream))
       // forward message to categoryProjectsRetriever
-      categoryProjectsRetriever forward RetrieveCategoryProjects(categoryID, offset, limit)
+      categoryProjectsRetrievers forward RetrieveCategoryProjects(categoryID, offset, limit, cursor, stream)
   }
 }
 
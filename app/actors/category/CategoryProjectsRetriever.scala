@@ -2,29 +2,30 @@ package actors.category
 
 import actors.AbstractBulkDBHandler
 import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
-import actors.AbstractDBActor.Terminate
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonArray
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.CategoryManagerMessages.RetrieveCategoryProjects
 import models.Response
+import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.project.Project.EmbeddedProject
-import play.api.Logger
 import play.api.libs.json._
 
-class CategoryProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
+class CategoryProjectsRetriever extends AbstractBulkDBHandler {
 
   override val ErrorMsg: String = "Retrieving category failed"
 
-  override def receive = {
-    case RetrieveCategoryProjects(categoryID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${RetrieveCategoryProjects(categoryID, offset, limit)}")
-      executeQuery(DBUtilities.Project.getProjectWithSpecificCategory(categoryID, offset, limit))
+  override def handle: Receive = {
+    case RetrieveCategoryProjects(categoryID, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, RetrieveCategoryProjects(categoryID, offset, limit, cursor, stream))
+      val pageLimit = startPage(cursor, limit, stream)
+      executeQuery(DBUtilities.Project.getProjectWithSpecificCategory(categoryID, offset, pageLimit, cursor.orNull))
 
     case ItemResult(jsonObject) =>
       // received new item , aggregate it to the final result Array
-      Logger.info(s"actor ${self.path} - received msg : ${ItemResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ItemResult(jsonObject))
 
       if (jsonObject.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         appendFinalResult(jsonObject)
@@ -33,11 +34,11 @@ class CategoryProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out
       }
 
     case BulkResult(jsArray) =>
-      Logger.info(s"actor ${self.path} - received msg : ${BulkResult(jsArray)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, BulkResult(jsArray))
 
       if (jsArray.isEmpty) {
-        out ! NotFoundError("Couldn't find projects",
-          "Constructed json array is empty", this.getClass.toString)
+        out ! emptyPage.getOrElse(NotFoundError("Couldn't find projects",
+          "Constructed json array is empty", this.getClass.toString))
       } else {
         val response = constructResponse(jsArray)
         response match {
@@ -50,18 +51,19 @@ class CategoryProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out
         }
       }
 
+    case err: Error =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
+      out ! err
+
     // self terminate
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : Terminate ")
-      context stop self
   }
 
 
   override def constructResponse(jsonArray: JsonArray): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonArray.toString).as[JsArray]
+      val parsedJson = JsonConverter.toJsValue(jsonArray).as[JsArray]
       val categoryProjects: Seq[EmbeddedProject] = BulkProjectsResponseHelper(parsedJson)
-      if (categoryProjects.isEmpty) None else Some(Response(Json.toJson(categoryProjects)))
+      if (categoryProjects.isEmpty) None else Some(Response(paginate(Json.toJson(categoryProjects))))
     } catch {
       case e: Exception => None
     }
@@ -70,5 +72,5 @@ class CategoryProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out
 }
 
 object CategoryProjectsRetriever {
-  def props(out: ActorRef): Props = Props(new CategoryProjectsRetriever(out))
+  def props(): Props = Props(new CategoryProjectsRetriever)
 }
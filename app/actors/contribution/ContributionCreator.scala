@@ -4,46 +4,50 @@ import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
 import actors.contribution.ContributionCreator.ExtendedQueryResult
-import akka.actor.{ActorRef, Props}
-import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import akka.actor.Props
+import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.ContributionManagerMessages.CreateContribution
 import models.contribution.Contribution
 import models.contribution.ContributionDataTypes._
 import models.errors.Error
-import models.errors.GeneralErrors.{CouldNotParseJSON, Forbidden}
+import models.errors.GeneralErrors.{CouldNotParseJSON, Forbidden, ServiceUnavailableError}
 import models.{Contributor, Response}
-import play.api.Logger
 import play.api.libs.json.{JsObject, JsString, JsValue, Json}
 import rx.lang.scala.JavaConversions._
 
-class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
+class ContributionCreator extends AbstractDBHandler {
   override val ErrorMsg: String = "Failed to add contribution"
 
 
-  override def receive = {
+  override def handle: Receive = {
     case CreateContribution(contribution, contributor) =>
-      Logger.info(s"actor ${self.path} - received msg : ${CreateContribution(contribution, contributor)} ")
-
-      val contributionObj = toJsonObject(Json.toJson(contribution)).put("contributor", contributor.id)
-
-      toScalaObservable(DBUtilities.Contribution.createContribution(contribution.project_id, contributor.id, contributionObj))
-        .subscribe(jsonObj => {
-          self ! ExtendedQueryResult(jsonObj, contribution, contributor)
-        }, onError(), onComplete())
-
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : Terminate ")
-      context.stop(self)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, CreateContribution(contribution, contributor))
+
+      // refuse new contributions while their side effects can't be queued
+      if (DBUtilities.DBConfig.sideEffects().isSaturated) {
+        self ! ServiceUnavailableError("the server is busy, try again later",
+          "the side effects queue is saturated", this.getClass.toString)
+        self ! Terminate
+      } else {
+        val contributionObj = toJsonObject(Json.toJson(contribution)).put("contributor", contributor.id)
+
+        val toSelf = correlated()
+        toScalaObservable(DBUtilities.Contribution.createContribution(contribution.project_id, contributor.id, contributionObj))
+          .subscribe(jsonObj => {
+            toSelf(ExtendedQueryResult(jsonObj, contribution, contributor))
+          }, onError(), onComplete())
+      }
 
     // error happened send to Out
     case err: Error =>
-      Logger.info(s"actor ${self.path} - received msg : $err")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
       out ! err
 
     // if the user not enrolled to the project
     case ExtendedQueryResult(jsonObject, contribution, contributor) if jsonObject.get("id") == DBUtilities.DBConfig.NOT_ENROLLED =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObject))
 
       out ! Forbidden("can't submit contribution, enroll to the project first",
         "User is not enrolled in this project", this.getClass.toString)
@@ -51,7 +55,7 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
     // if the user is enrolled to the project
 
     case ExtendedQueryResult(jsonObject, contribution, contributor) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObject))
 
       val response = constructResponse(jsonObject)
 
@@ -79,6 +83,9 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
 
     val projectID = contribution.project_id
     val trimmedProjectID = Helper.trimEntityID(projectID)
+    val statsID = Helper.StatsIDPrefix + trimmedProjectID
+    val resultID = Helper.ResultIDPrefix + trimmedProjectID
+    val activityID = Helper.ActivityIDPrefix + Helper.trimEntityID(contributor.id)
 
     // construct new activity object
     val activityUUID = java.util.UUID.randomUUID.toString
@@ -91,26 +98,26 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
 
     // construct proper observable to handle adding new result
 
-    val addResult = result.contribution.data match {
+    def addResult: rx.Observable[JsonObject] = result.contribution.data match {
       // add Result for Template Type One
       case ContributionDataTypeOne(location, answer) =>
         DBUtilities.Result.addResult(Helper.ResultIDPrefix + trimmedProjectID,
           answer,
-          JsonObject.fromJson(Json.stringify(Json.toJson(location))))
+          JsonConverter.toJsonObject(Json.toJson(location)))
 
       // add Result for Template Type Two
       case ContributionDataTypeTwo(image, caption) =>
         DBUtilities.Result.addResult(Helper.ResultIDPrefix + trimmedProjectID,
-          JsonObject.fromJson(Json.stringify(Json.toJson(ContributionDataTypeTwo(image, caption)))))
+          JsonConverter.toJsonObject(Json.toJson(ContributionDataTypeTwo(image, caption))))
 
       // add Result for Template Type Three
       case ContributionDataTypeThree(answers) =>
-        DBUtilities.Result.addResult(Helper.ResultIDPrefix + trimmedProjectID, JsonArray.fromJson(Json.stringify(Json.toJson(answers))))
+        DBUtilities.Result.addResult(Helper.ResultIDPrefix + trimmedProjectID, JsonConverter.toJsonArray(Json.toJson(answers)))
 
       // add Result for Template Type Four
       case ContributionDataTypeFour(image, caption, location) =>
         DBUtilities.Result.addResult(Helper.ResultIDPrefix + trimmedProjectID,
-          JsonObject.fromJson(Json.stringify(Json.toJson(ContributionDataTypeFour(image, caption, location)))))
+          JsonConverter.toJsonObject(Json.toJson(ContributionDataTypeFour(image, caption, location))))
 
     }
 
@@ -118,19 +125,19 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
     executeSideEffectsQueries(
 
       // add 1 to contributions count in the User document
-      DBUtilities.User.add1ToUserContributionCount(contributor.id),
+      contributor.id -> (() => DBUtilities.User.add1ToUserContributionCount(contributor.id)),
       // add 1 to contributions count in the Project document
-      DBUtilities.Project.add1ToProjectContributionCount(projectID),
+      projectID -> (() => DBUtilities.Project.add1ToProjectContributionCount(projectID)),
       // add 1 to contributions count in the Project Stats document
-      DBUtilities.Stats.add1ToStatsContributionCount(Helper.StatsIDPrefix + trimmedProjectID),
+      statsID -> (() => DBUtilities.Stats.add1ToStatsContributionCount(statsID)),
       // add 1 to contributions count in the Project Results document
-      DBUtilities.Result.add1ToResultsContributionCount(Helper.ResultIDPrefix + trimmedProjectID),
+      resultID -> (() => DBUtilities.Result.add1ToResultsContributionCount(resultID)),
       // update gender numbers in the Project Stats document
-      DBUtilities.Stats.updateContributorsGender(Helper.StatsIDPrefix + trimmedProjectID, contributor.id, contributor.gender),
+      statsID -> (() => DBUtilities.Stats.updateContributorsGender(statsID, contributor.id, contributor.gender)),
       // add new Activity in the User Activity document
-      DBUtilities.Activity.addActivity(projectID, Helper.ActivityIDPrefix + trimmedProjectID, activityObject),
+      activityID -> (() => DBUtilities.Activity.addActivity(projectID, activityID, activityObject)),
       // add new Result in the Project Results document
-      addResult
+      resultID -> (() => addResult)
 
     )
   }
@@ -141,7 +148,7 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
     */
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson: JsValue = Json.parse(jsonObject.toString)
+      val parsedJson: JsValue = JsonConverter.toJsValue(jsonObject)
 
       val jsResponse = JsObject(Seq(
         "id" -> JsString((parsedJson \ "id").as[String]),
@@ -155,7 +162,7 @@ class ContributionCreator(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object ContributionCreator {
-  def props(out: ActorRef): Props = Props(new ContributionCreator(out))
+  def props(): Props = Props(new ContributionCreator)
 
   case class ExtendedQueryResult(jsonObject: JsonObject, contribution: Contribution, contributor: Contributor)
 
@@ -1,8 +1,8 @@
 package actors.contribution
 
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.ContributionManagerMessages.{CreateContribution, ValidateContribution}
-import play.api.Logger
 
 class ContributionManager extends Actor {
 
@@ -10,7 +10,7 @@ class ContributionManager extends Actor {
 
   override def receive = {
     case CreateContribution(contribution, contributor) =>
-      Logger.info(s"actor ${self.path} - received msg : ${CreateContribution(contribution, contributor)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, CreateContribution(contribution, contributor))
 
       contributionValidator forward ValidateContribution(contribution, contributor)
   }
@@ -1,18 +1,20 @@
 package actors.contribution
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.ContributionManagerMessages.{CreateContribution, ValidateContribution}
 import models.contribution.Contribution
-import play.api.Logger
 
 class ContributionValidator extends Actor {
+
+  val contributionCreators = Handlers(ContributionCreator.props(), "contributionCreators")
+
   override def receive = {
     case ValidateContribution(contribution, contributor) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ValidateContribution(contribution, contributor)}")
-
-      val contributionCreator = context.actorOf(ContributionCreator.props(sender()))
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ValidateContribution(contribution, contributor))
       // check if a contribution is valid
-      if (isValid(contribution)) contributionCreator forward CreateContribution(contribution, contributor)
+      if (isValid(contribution)) contributionCreators forward CreateContribution(contribution, contributor)
       else {
         //        sender() ! Error(Results.BadRequest(ErrorMsg("project creation failed", "not valid project").toJson))
       }
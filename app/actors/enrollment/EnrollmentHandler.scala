@@ -2,29 +2,29 @@ package actors.enrollment
 
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.EnrollmentManagerMessages.Enroll
 import models.Response
 import models.errors.GeneralErrors.{AlreadyExists, CouldNotParseJSON, NotFoundError}
-import play.Logger
-import play.api.libs.json.{JsObject, JsString, Json}
+import play.api.libs.json.{JsObject, JsString}
 
 
-class EnrollmentHandler(out: ActorRef) extends AbstractDBHandler(out) {
+class EnrollmentHandler extends AbstractDBHandler {
   // this is the msg to user when error happens while querying from db
   override val ErrorMsg: String = "Enroll to project failed"
 
-  override def receive = {
+  override def handle: Receive = {
     case Enroll(userID, projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${Enroll(userID, projectID)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, Enroll(userID, projectID))
 
       executeQuery(DBUtilities.User.addProjectToEnrolledProjects(userID, projectID))
 
     case QueryResult(jsonObject) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObject)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObject))
 
       if (jsonObject.containsKey("projectId")) {
         val response = constructResponse(jsonObject)
@@ -55,7 +55,7 @@ class EnrollmentHandler(out: ActorRef) extends AbstractDBHandler(out) {
 
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonObject.toString)
+      val parsedJson = JsonConverter.toJsValue(jsonObject)
       //add project url
       val url = addField(parsedJson.as[JsObject], "url", helpers.Helper.ProjectPath + (parsedJson \ "projectId").as[String])
 
@@ -72,5 +72,5 @@ class EnrollmentHandler(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object EnrollmentHandler {
-  def props(out: ActorRef): Props = Props(new EnrollmentHandler(out: ActorRef))
+  def props(): Props = Props(new EnrollmentHandler)
 }
\ No newline at end of file
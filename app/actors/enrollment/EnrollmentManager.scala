@@ -1,20 +1,23 @@
 package actors.enrollment
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.EnrollmentManagerMessages.{Enroll, Withdraw}
-import play.api.Logger
 
 class EnrollmentManager extends Actor {
+
+  val enrollmentHandlers = Handlers(EnrollmentHandler.props(), "enrollmentHandlers")
+  val withdrawHandlers = Handlers(WithdrawHandler.props(), "withdrawHandlers")
+
   override def receive = {
     case Enroll(userID: String, projectID: String) =>
-      Logger.info(s"actor ${self.path} - received msg : ${Enroll(userID: String, projectID: String)}")
-      val enrollmentHandler = context.actorOf(EnrollmentHandler.props(sender()), "enrollmentHandler")
-      enrollmentHandler forward Enroll(userID: String, projectID: String)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, Enroll(userID: String, projectID: String))
+      enrollmentHandlers forward Enroll(userID: String, projectID: String)
 
     case Withdraw(userID: String, projectID: String) =>
-      Logger.info(s"actor ${self.path} - received msg : ${Withdraw(userID: String, projectID: String)}")
-      val withdrawHandler = context.actorOf(WithdrawHandler.props(sender()), "withdrawHandler")
-      withdrawHandler forward Withdraw(userID: String, projectID: String)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, Withdraw(userID: String, projectID: String))
+      withdrawHandlers forward Withdraw(userID: String, projectID: String)
   }
 }
 
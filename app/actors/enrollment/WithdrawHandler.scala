@@ -2,22 +2,22 @@ package actors.enrollment
 
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.EnrollmentManagerMessages.Withdraw
 import models.Response
 import models.errors.GeneralErrors.CouldNotParseJSON
-import play.api.Logger
-import play.api.libs.json.{JsObject, JsString, Json}
+import play.api.libs.json.{JsObject, JsString}
 
-class WithdrawHandler(out: ActorRef) extends AbstractDBHandler(out) {
+class WithdrawHandler extends AbstractDBHandler {
   // this is the msg to user when error happens while querying from db
   override val ErrorMsg: String = "Withdraw from project failed"
 
-  override def receive = {
-    case Withdraw(userID: String, projectID: String) => Logger.info(s"actor ${self.path} - received msg : ${Withdraw(userID, projectID)}")
+  override def handle: Receive = {
+    case Withdraw(userID: String, projectID: String) => Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, Withdraw(userID, projectID))
       executeQuery(DBUtilities.User.removeProjectFromEnrolledProjects(userID, projectID))
 
 
@@ -41,7 +41,7 @@ class WithdrawHandler(out: ActorRef) extends AbstractDBHandler(out) {
 
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonObject.toString)
+      val parsedJson = JsonConverter.toJsValue(jsonObject)
       //add project url
       val url = addField(parsedJson.as[JsObject], "url", helpers.Helper.ProjectPath + (parsedJson \ "projectId").as[String])
 
@@ -57,5 +57,5 @@ class WithdrawHandler(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object WithdrawHandler {
-  def props(out: ActorRef): Props = Props(new WithdrawHandler(out: ActorRef))
+  def props(): Props = Props(new WithdrawHandler)
 }
\ No newline at end of file
@@ -2,43 +2,44 @@ package actors.project
 
 import actors.AbstractBulkDBHandler
 import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
-import actors.AbstractDBActor.Terminate
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonArray
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.ListProjects
 import models.Response
+import models.errors.Error
 import models.errors.GeneralErrors.CouldNotParseJSON
 import models.project.Project.EmbeddedProject
-import play.api.Logger
 import play.api.libs.json._
 
-class BulkProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
+class BulkProjectsRetriever extends AbstractBulkDBHandler {
 
   override val ErrorMsg: String = "Failed to retrieve projects"
 
   private val contributionsCountField = "contributions_count"
   private val createdAtField = "created_at"
 
-  def receive = {
-    case ListProjects(filter, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjects(filter, offset, limit)}")
+  override def handle: Receive = {
+    case ListProjects(filter, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjects(filter, offset, limit, cursor, stream))
+      val pageLimit = startPage(cursor, limit, stream)
 
       filter match {
         case FeaturedKeyword =>
-          executeQuery(DBUtilities.Project.getFeaturedProjets(offset, limit))
+          executeQuery(DBUtilities.Project.getFeaturedProjets(offset, pageLimit, cursor.orNull))
 
         case PopularKeyword =>
-          executeQuery(DBUtilities.Project.bulkGetProjects(contributionsCountField, offset, limit))
+          executeQuery(DBUtilities.Project.bulkGetProjects(contributionsCountField, offset, pageLimit, cursor.orNull))
 
         case LatestKeyword =>
-          executeQuery(DBUtilities.Project.bulkGetProjects(createdAtField, offset, limit))
+          executeQuery(DBUtilities.Project.bulkGetProjects(createdAtField, offset, pageLimit, cursor.orNull))
 
       }
 
     case ItemResult(jsonObject) =>
       // received new item , aggregate it to the final result Array
-      Logger.info(s"actor ${self.path} - received msg : ${ItemResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ItemResult(jsonObject))
 
       if (!jsonObject.isEmpty) {
         appendFinalResult(jsonObject)
@@ -47,7 +48,7 @@ class BulkProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
       }
 
     case BulkResult(jsArray) =>
-      val response = constructResponse(jsArray)
+      val response = if (jsArray.isEmpty && emptyPage.isDefined) emptyPage else constructResponse(jsArray)
       response match {
         case Some(Response(jsonResult)) =>
           out ! Response(jsonResult)
@@ -58,9 +59,9 @@ class BulkProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
             "couldn't parse json retrieved from the db ", this.getClass.toString)
       }
 
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
+    case err: Error =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
+      out ! err
   }
 
   /**
@@ -68,9 +69,9 @@ class BulkProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
     */
   override def constructResponse(jsonArray: JsonArray): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonArray.toString).as[JsArray]
+      val parsedJson = JsonConverter.toJsValue(jsonArray).as[JsArray]
       val categoryProjects: Seq[EmbeddedProject] = BulkProjectsResponseHelper(parsedJson)
-      if (categoryProjects.isEmpty) None else Some(Response(Json.toJson(categoryProjects)))
+      if (categoryProjects.isEmpty) None else Some(Response(paginate(Json.toJson(categoryProjects))))
     } catch {
       case e: Exception => None
     }
@@ -78,6 +79,6 @@ class BulkProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
 }
 
 object BulkProjectsRetriever {
-  def props(out: ActorRef): Props = Props(new BulkProjectsRetriever(out))
+  def props(): Props = Props(new BulkProjectsRetriever)
 }
 
@@ -1,29 +1,28 @@
 package actors.project
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.CreateProject
 import models.Response
 import models.errors.Error
 import models.errors.GeneralErrors.CouldNotParseJSON
-import play.api.Logger
 import play.api.libs.json._
 
-class ProjectCreator(out: ActorRef) extends AbstractDBHandler(out) {
+class ProjectCreator extends AbstractDBHandler {
 
   // this msg would sent to user when error happens while querying from db
   override val ErrorMsg: String = "Creating project failed"
 
 
-  override def receive: Receive = {
+  override def handle: Receive = {
 
 
     case CreateProject(project, userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${CreateProject(project, userID)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, CreateProject(project, userID))
 
       // add contributions_count , enrollments_count with default values = 0  and entity_type with value = project
       val completedProject = Json.toJson(project).as[JsObject].
@@ -38,21 +37,15 @@ class ProjectCreator(out: ActorRef) extends AbstractDBHandler(out) {
       executeQuery(DBUtilities.Project.createProject(userID, projectObj))
 
 
-    // terminate self
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : Terminate ")
-      context.stop(self)
-
-
     // error happened send to Out
     case err: Error =>
-      Logger.info(s"actor ${self.path} - received msg : $err")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
       out ! err
 
 
     // got a json object , construct proper response from it and send the response to out
     case QueryResult(jsonObject) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObject))
 
       val response = constructResponse(jsonObject)
 
@@ -65,8 +58,10 @@ class ProjectCreator(out: ActorRef) extends AbstractDBHandler(out) {
           val createdProjectID = jsonObject.getString("id")
           val trimmedProjectID = Helper.trimEntityID(createdProjectID)
           executeSideEffectsQueries(
-            DBUtilities.Stats.createStats(Helper.StatsIDPrefix + trimmedProjectID, generateInitialStats()),
-            DBUtilities.Result.createResult(Helper.ResultIDPrefix + trimmedProjectID, generateInitialResult(jsonObject)))
+            Helper.StatsIDPrefix + trimmedProjectID ->
+              (() => DBUtilities.Stats.createStats(Helper.StatsIDPrefix + trimmedProjectID, generateInitialStats())),
+            Helper.ResultIDPrefix + trimmedProjectID ->
+              (() => DBUtilities.Result.createResult(Helper.ResultIDPrefix + trimmedProjectID, generateInitialResult(jsonObject))))
 
           // send response to out
           out ! Response(jsonResult)
@@ -82,7 +77,7 @@ class ProjectCreator(out: ActorRef) extends AbstractDBHandler(out) {
   override def constructResponse(jsonObj: JsonObject): Option[Response] = {
 
     try {
-      val parsedJson: JsValue = Json.parse(jsonObj.toString)
+      val parsedJson: JsValue = JsonConverter.toJsValue(jsonObj)
 
       val jsResponse = JsObject(Seq(
         "id" -> JsString((parsedJson \ "id").as[String]),
@@ -152,5 +147,5 @@ class ProjectCreator(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object ProjectCreator {
-  def props(out: ActorRef): Props = Props(new ProjectCreator(out))
+  def props(): Props = Props(new ProjectCreator)
 }
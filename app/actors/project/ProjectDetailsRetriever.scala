@@ -1,42 +1,37 @@
 package actors.project
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.GetProjectDetails
 import models.Response
 import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.project.Project.DetailedProject
-import play.api.Logger
 import play.api.libs.json._
 
 
-class ProjectDetailsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class ProjectDetailsRetriever extends AbstractDBHandler {
 
   // this msg would sent to user when error happens while querying from db
   override val ErrorMsg: String = "failed to get project details"
 
 
-  override def receive: Receive = {
+  override def handle: Receive = {
     case GetProjectDetails(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetails(projectID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetails(projectID))
 
       executeQuery(DBUtilities.Project.getProjectWithId(projectID))
 
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
-
     case err: Error =>
-      Logger.info(s"actor ${self.path} - received msg : $err")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
       out ! err
 
     case QueryResult(jsonObj) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObj)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObj))
 
       if (jsonObj.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(jsonObj)
@@ -60,7 +55,7 @@ class ProjectDetailsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
   override def constructResponse(jsonObj: JsonObject): Option[Response] = {
 
     try {
-      val parsedJson = Json.parse(jsonObj.toString).as[JsObject]
+      val parsedJson = JsonConverter.toJsValue(jsonObj).as[JsObject]
 
       // add project url to the json retrieved
       val modifiedJson = addField(parsedJson, "url", helpers.Helper.ProjectPath + (parsedJson \ "id").as[String])
@@ -89,5 +84,5 @@ class ProjectDetailsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 
 
 object ProjectDetailsRetriever {
-  def props(out: ActorRef): Props = Props(new ProjectDetailsRetriever(out))
+  def props(): Props = Props(new ProjectDetailsRetriever)
 }
\ No newline at end of file
@@ -1,39 +1,34 @@
 package actors.project
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.GetProjectDetailsWithTemplateBody
 import models.Response
 import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.project.Project.DetailedProjectWithTemplateBody
-import play.api.Logger
 import play.api.libs.json._
 
-class ProjectDetailsWithTemplateBodyRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class ProjectDetailsWithTemplateBodyRetriever extends AbstractDBHandler {
 
   override val ErrorMsg: String = "failed to get project details with template body"
 
-  override def receive: Receive = {
+  override def handle: Receive = {
     case GetProjectDetailsWithTemplateBody(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetailsWithTemplateBody(projectID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetailsWithTemplateBody(projectID))
 
       executeQuery(DBUtilities.Project.getProjectWithId(projectID))
 
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
-
     case err: Error =>
-      Logger.info(s"actor ${self.path} - received msg : $err")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
       out ! err
 
     case QueryResult(jsonObj) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObj)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObj))
 
       if (jsonObj.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(jsonObj)
@@ -58,7 +53,7 @@ class ProjectDetailsWithTemplateBodyRetriever(out: ActorRef) extends AbstractDBH
     */
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonObject.toString).as[JsObject]
+      val parsedJson = JsonConverter.toJsValue(jsonObject).as[JsObject]
 
       // add project url to the json retrieved
       val modifiedJson = addField(parsedJson, "url", helpers.Helper.ProjectPath + (parsedJson \ "id").as[String])
@@ -88,5 +83,5 @@ class ProjectDetailsWithTemplateBodyRetriever(out: ActorRef) extends AbstractDBH
 }
 
 object ProjectDetailsWithTemplateBodyRetriever {
-  def props(out: ActorRef): Props = Props(new ProjectDetailsWithTemplateBodyRetriever(out))
+  def props(): Props = Props(new ProjectDetailsWithTemplateBodyRetriever)
 }
\ No newline at end of file
@@ -1,8 +1,8 @@
 package actors.project
 
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.ProjectManagerMessages._
-import play.api.Logger
 
 class ProjectManager extends Actor {
 
@@ -11,33 +11,33 @@ class ProjectManager extends Actor {
 
   override def receive = {
     case CreateProject(project, userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${CreateProject(project, userID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, CreateProject(project, userID))
       projectValidator forward ValidateProject(project, userID)
 
-    case ListProjects(filter, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjects(filter, offset, limit)} ")
-      projectRetriever forward ListProjects(filter, offset, limit)
+    case ListProjects(filter, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjects(filter, offset, limit, cursor, stream))
+      projectRetriever forward ListProjects(filter, offset, limit, cursor, stream)
 
 
     case GetProjectDetails(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetails(projectID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetails(projectID))
       projectRetriever forward GetProjectDetails(projectID)
 
     case GetProjectDetailsWithTemplateBody(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetailsWithTemplateBody(projectID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetailsWithTemplateBody(projectID))
       projectRetriever forward GetProjectDetailsWithTemplateBody(projectID)
 
     case GetProjectResults(projectID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectResults(projectID, offset, limit)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectResults(projectID, offset, limit))
       projectRetriever forward GetProjectResults(projectID, offset, limit)
 
-    case GetProjectStats(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectStats(projectID)} ")
-      projectRetriever forward GetProjectStats(projectID)
+    case GetProjectStats(projectID, window, resolution) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectStats(projectID, window, resolution))
+      projectRetriever forward GetProjectStats(projectID, window, resolution)
 
-    case SearchProjects(keyword, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${SearchProjects(keyword, offset, limit)} ")
-      projectRetriever forward SearchProjects(keyword, offset, limit)
+    case SearchProjects(keyword, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, SearchProjects(keyword, offset, limit, cursor, stream))
+      projectRetriever forward SearchProjects(keyword, offset, limit, cursor, stream)
 
   }
 }
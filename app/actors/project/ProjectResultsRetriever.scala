@@ -1,38 +1,33 @@
 package actors.project
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.GetProjectResults
 import models.Response
 import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.results.ProjectResult
-import play.api.Logger
 import play.api.libs.json._
 
-class ProjectResultsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class ProjectResultsRetriever extends AbstractDBHandler {
   override val ErrorMsg: String = "Failed to retrieve project results"
 
-  override def receive: Receive = {
+  override def handle: Receive = {
     case GetProjectResults(projectID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectResults(projectID, offset, limit)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectResults(projectID, offset, limit))
 
-      executeQuery(DBUtilities.Result.getResultWithId(Helper.ResultIDPrefix + Helper.trimEntityID(projectID), offset, limit))
-
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
+      executeQuery(DBUtilities.Result.getResultWithId(Helper.ResultIDPrefix + Helper.trimEntityID(projectID), offset, pageSize(limit)))
 
     case err: Error =>
-      Logger.info(s"actor ${self.path} - received msg : $err")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
       out ! err
 
     case QueryResult(jsonObj) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(jsonObj)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(jsonObj))
 
       if (jsonObj.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(jsonObj)
@@ -56,7 +51,7 @@ class ProjectResultsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
     */
   override def constructResponse(jsonObject: JsonObject): Option[Response] =
     try {
-      val results = Json.parse(jsonObject.toString).as[ProjectResult]
+      val results = JsonConverter.toJsValue(jsonObject).as[ProjectResult]
       Some(Response(Json.toJson(results)))
 
     } catch {
@@ -65,5 +60,5 @@ class ProjectResultsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object ProjectResultsRetriever {
-  def props(out: ActorRef): Props = Props(new ProjectResultsRetriever(out))
+  def props(): Props = Props(new ProjectResultsRetriever)
 }
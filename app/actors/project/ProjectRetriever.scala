@@ -1,46 +1,43 @@
 package actors.project
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.ProjectManagerMessages._
-import play.api.Logger
 
 class ProjectRetriever extends Actor {
+
+  val projectDetailsRetrievers = Handlers(ProjectDetailsRetriever.props(), "projectDetailsRetrievers")
+  val projectDetailsWithTemplateBodyRetrievers = Handlers(ProjectDetailsWithTemplateBodyRetriever.props(), "projectDetailsWithTemplateBodyRetrievers")
+  val bulkProjectsRetrievers = Handlers(BulkProjectsRetriever.props(), "bulkProjectsRetrievers")
+  val projectsSearchRetrievers = Handlers(ProjectsSearchRetriever.props(), "projectsSearchRetrievers")
+  val projectStatsRetrievers = Handlers(ProjectStatsRetriever.props(), "projectStatsRetrievers")
+  val projectResultsRetrievers = Handlers(ProjectResultsRetriever.props(), "projectResultsRetrievers")
+
   override def receive = {
     case GetProjectDetails(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetails(projectID)} ")
-
-      val projectDetailsRetriever = context.actorOf(ProjectDetailsRetriever.props(sender()), "projectDetailsRetriever")
-      projectDetailsRetriever forward GetProjectDetails(projectID)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetails(projectID))
+      projectDetailsRetrievers forward GetProjectDetails(projectID)
 
     case GetProjectDetailsWithTemplateBody(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectDetailsWithTemplateBody(projectID)} ")
-
-      val projectDetailsWithTemplateBodyRetriever = context.actorOf(ProjectDetailsWithTemplateBodyRetriever.props(sender()), "projectDetailsWithTemplateBodyRetriever")
-      projectDetailsWithTemplateBodyRetriever forward GetProjectDetailsWithTemplateBody(projectID)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectDetailsWithTemplateBody(projectID))
+      projectDetailsWithTemplateBodyRetrievers forward GetProjectDetailsWithTemplateBody(projectID)
 
-    case ListProjects(filter, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjects(filter, offset, limit)} ")
+    case ListProjects(filter, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjects(filter, offset, limit, cursor, stream))
+      bulkProjectsRetrievers forward ListProjects(filter, offset, limit, cursor, stream)
 
-      val bulkProjectsRetriever = context.actorOf(BulkProjectsRetriever.props(sender()), "bulkProjectsRetriever")
-      bulkProjectsRetriever forward ListProjects(filter, offset, limit)
+    case SearchProjects(keyword, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, SearchProjects(keyword, offset, limit, cursor, stream))
+      projectsSearchRetrievers forward SearchProjects(keyword, offset, limit, cursor, stream)
 
-    case SearchProjects(keyword, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${SearchProjects(keyword, offset, limit)} ")
-
-      val projectsSearchRetriever = context.actorOf(ProjectsSearchRetriever.props(sender()), "projectsSearchRetriever")
-      projectsSearchRetriever forward SearchProjects(keyword, offset, limit)
-
-    case GetProjectStats(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectStats(projectID)} ")
-
-      val projectStatsRetriever = context.actorOf(ProjectStatsRetriever.props(sender()), "projectStatsRetriever")
-      projectStatsRetriever forward GetProjectStats(projectID)
+    case GetProjectStats(projectID, window, resolution) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectStats(projectID, window, resolution))
+      projectStatsRetrievers forward GetProjectStats(projectID, window, resolution)
 
     case GetProjectResults(projectID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectResults(projectID, offset, limit)} ")
-
-      val projectResultsRetriever = context.actorOf(ProjectResultsRetriever.props(sender()), "projectResultsRetriever")
-      projectResultsRetriever forward GetProjectResults(projectID, offset, limit)
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectResults(projectID, offset, limit))
+      projectResultsRetrievers forward GetProjectResults(projectID, offset, limit)
   }
 }
 
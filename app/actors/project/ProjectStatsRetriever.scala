@@ -1,33 +1,31 @@
 package actors.project
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.GetProjectStats
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.{Response, Stats}
-import play.Logger
-import play.api.libs.json.Json
+import play.api.libs.json.{JsObject, Json}
 
-class ProjectStatsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class ProjectStatsRetriever extends AbstractDBHandler {
   override val ErrorMsg: String = "Retrieving project stats failed"
 
-  override def receive = {
+  override def handle: Receive = {
 
-    case GetProjectStats(projectID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetProjectStats(projectID)} ")
-      executeQuery(DBUtilities.Stats.getStatsWithId(Helper.StatsIDPrefix
-        + Helper.trimEntityID(projectID)))
-
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context stop self
+    case GetProjectStats(projectID, window, resolution) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetProjectStats(projectID, window, resolution))
+      val statsID = Helper.StatsIDPrefix + Helper.trimEntityID(projectID)
+      if (window.isDefined || resolution.isDefined)
+        executeQuery(DBUtilities.Stats.getStatsWithTimeSeries(statsID, window.orNull, resolution.orNull))
+      else
+        executeQuery(DBUtilities.Stats.getStatsWithId(statsID))
 
     case QueryResult(doc) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(doc)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(doc))
 
       if (doc.getString("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(doc)
@@ -51,8 +49,13 @@ class ProjectStatsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
     */
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val stats = Json.parse(jsonObject.toString).as[Stats]
-      Some(Response(Json.toJson(stats)))
+      val stats = Json.toJson(JsonConverter.toJsValue(jsonObject).as[Stats]).as[JsObject]
+      Option(jsonObject.getObject("time_series")) match {
+        case Some(timeSeries) =>
+          Some(Response(stats + ("time_series" -> JsonConverter.toJsValue(timeSeries))))
+        case None =>
+          Some(Response(stats))
+      }
     } catch {
       case e: Exception => None
     }
@@ -60,5 +63,5 @@ class ProjectStatsRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object ProjectStatsRetriever {
-  def props(out: ActorRef): Props = Props(new ProjectStatsRetriever(out))
+  def props(): Props = Props(new ProjectStatsRetriever)
 }
@@ -1,20 +1,20 @@
 package actors.project
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.ProjectManagerMessages.{CreateProject, ValidateProject}
 import models.project.Project.NewProject
-import play.api.Logger
 
 class ProjectValidator extends Actor {
 
+  val projectCreators = Handlers(ProjectCreator.props(), "projectCreators")
 
   override def receive = {
     case ValidateProject(project, userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ValidateProject(project, userID)} ")
-
-      val projectCreator = context.actorOf(ProjectCreator.props(sender()), "projectCreator")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ValidateProject(project, userID))
       // check if a project is valid
-      if (isValid(project)) projectCreator forward CreateProject(project, userID)
+      if (isValid(project)) projectCreators forward CreateProject(project, userID)
       else {
         //        sender() ! Error(Results.BadRequest(ErrorMsg("project creation failed", "not valid project").toJson))
       }
@@ -2,29 +2,30 @@ package actors.project
 
 import actors.AbstractBulkDBHandler
 import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
-import actors.AbstractDBActor.Terminate
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonArray
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.ProjectManagerMessages.SearchProjects
 import models.Response
+import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.project.Project.EmbeddedProject
-import play.api.Logger
 import play.api.libs.json._
 
-class ProjectsSearchRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
+class ProjectsSearchRetriever extends AbstractBulkDBHandler {
 
   override val ErrorMsg: String = "Failed to search for projects"
 
-  def receive = {
-    case SearchProjects(keyword, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${SearchProjects(keyword, offset, limit)}")
-      executeQuery(DBUtilities.Project.searchForProjectsByName(keyword, offset, limit))
+  override def handle: Receive = {
+    case SearchProjects(keyword, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, SearchProjects(keyword, offset, limit, cursor, stream))
+      val pageLimit = startPage(cursor, limit, stream)
+      executeQuery(DBUtilities.Project.searchForProjectsByName(keyword, offset, pageLimit, cursor.orNull))
 
     case ItemResult(jsonObject) =>
       // received new item , aggregate it to the final result Array
-      Logger.info(s"actor ${self.path} - received msg : ${ItemResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ItemResult(jsonObject))
 
       if (jsonObject.get("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         appendFinalResult(jsonObject)
@@ -33,11 +34,11 @@ class ProjectsSearchRetriever(out: ActorRef) extends AbstractBulkDBHandler(out)
       }
 
     case BulkResult(jsonArray) =>
-      Logger.info(s"actor ${self.path} - received msg : ${BulkResult(jsonArray)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, BulkResult(jsonArray))
 
       if (jsonArray.isEmpty) {
-        out ! NotFoundError("Couldn't find projects",
-          "Constructed json array is empty", this.getClass.toString)
+        out ! emptyPage.getOrElse(NotFoundError("Couldn't find projects",
+          "Constructed json array is empty", this.getClass.toString))
       } else {
         val response = constructResponse(jsonArray)
         response match {
@@ -52,9 +53,9 @@ class ProjectsSearchRetriever(out: ActorRef) extends AbstractBulkDBHandler(out)
 
       }
 
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
+    case err: Error =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
+      out ! err
 
 
   }
@@ -65,9 +66,9 @@ class ProjectsSearchRetriever(out: ActorRef) extends AbstractBulkDBHandler(out)
 
   override def constructResponse(jsonArray: JsonArray): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonArray.toString).as[JsArray]
+      val parsedJson = JsonConverter.toJsValue(jsonArray).as[JsArray]
       val projects: Seq[EmbeddedProject] = BulkProjectsResponseHelper(parsedJson)
-      if (projects.isEmpty) None else Some(Response(Json.toJson(projects)))
+      if (projects.isEmpty) None else Some(Response(paginate(Json.toJson(projects))))
     } catch {
       case e: Exception => None
     }
@@ -75,5 +76,5 @@ class ProjectsSearchRetriever(out: ActorRef) extends AbstractBulkDBHandler(out)
 }
 
 object ProjectsSearchRetriever {
-  def props(out: ActorRef): Props = Props(new ProjectsSearchRetriever(out))
+  def props(): Props = Props(new ProjectsSearchRetriever)
 }
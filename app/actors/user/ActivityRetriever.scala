@@ -1,35 +1,30 @@
 package actors.user
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.UserManagerMessages.ListUserActivity
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.{Activities, Response}
-import play.Logger
 import play.api.libs.json._
 
-class ActivityRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class ActivityRetriever extends AbstractDBHandler {
 
   override val ErrorMsg: String = "Retrieving user activity failed"
 
-  override def receive = {
+  override def handle: Receive = {
     case ListUserActivity(userID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListUserActivity(userID, offset, limit)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListUserActivity(userID, offset, limit))
 
       // Here we will send the result
       executeQuery(DBUtilities.Activity.getActivityWithId(
-        Helper.ActivityIDPrefix + Helper.trimEntityID(userID), offset, limit))
-
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context stop self
+        Helper.ActivityIDPrefix + Helper.trimEntityID(userID), offset, pageSize(limit)))
 
     case QueryResult(doc) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(doc)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(doc))
 
       if (doc.getString("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(doc)
@@ -50,7 +45,7 @@ class ActivityRetriever(out: ActorRef) extends AbstractDBHandler(out) {
   //todo enhancement
   def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonObject.toString)
+      val parsedJson = JsonConverter.toJsValue(jsonObject)
       val activityListTransform = (__ \ "activities")
         .json.pickBranch(Helper.tfList(Activities.dp2resp))
       val activities = (parsedJson.transform(activityListTransform).get \ "activities")
@@ -65,5 +60,5 @@ class ActivityRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object ActivityRetriever {
-  def props(out: ActorRef): Props = Props(new ActivityRetriever(out))
+  def props(): Props = Props(new ActivityRetriever)
 }
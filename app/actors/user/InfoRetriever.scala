@@ -1,33 +1,29 @@
 package actors.user
 
-import actors.AbstractDBActor.Terminate
 import actors.AbstractDBHandler
 import actors.AbstractDBHandler.QueryResult
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonObject
 import helpers.Helper
+import helpers.{JsonConverter, Log}
 import messages.UserManagerMessages.GetUserProfile
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.{Response, UserInfo}
 import play.Logger
 import play.api.libs.json.{JsObject, Json}
 
-class InfoRetriever(out: ActorRef) extends AbstractDBHandler(out) {
+class InfoRetriever extends AbstractDBHandler {
 
   override val ErrorMsg: String = "Retrieving user info failed"
 
-  override def receive = {
+  override def handle: Receive = {
 
     case GetUserProfile(userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetUserProfile(userID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetUserProfile(userID))
       executeQuery(DBUtilities.User.getUserWithId(userID))
 
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context stop self
-
     case QueryResult(doc) =>
-      Logger.info(s"actor ${self.path} - received msg : ${QueryResult(doc)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, QueryResult(doc))
 
       if (doc.getString("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         val response = constructResponse(doc)
@@ -48,7 +44,7 @@ class InfoRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 
   override def constructResponse(jsonObject: JsonObject): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonObject.toString).as[JsObject]
+      val parsedJson = JsonConverter.toJsValue(jsonObject).as[JsObject]
       val id = jsonObject.getString("id")
       val fullResponse = Helper.addField(parsedJson, "id", id) ++
         Helper.addField(parsedJson, "url", Helper.UserPath + id)
@@ -64,5 +60,5 @@ class InfoRetriever(out: ActorRef) extends AbstractDBHandler(out) {
 }
 
 object InfoRetriever {
-  def props(out: ActorRef): Props = Props(new InfoRetriever(out))
+  def props(): Props = Props(new InfoRetriever)
 }
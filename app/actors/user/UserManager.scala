@@ -1,8 +1,8 @@
 package actors.user
 
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.UserManagerMessages.{GetUserProfile, ListProjectsOfUser, ListUserActivity}
-import play.Logger
 
 class UserManager extends Actor {
 
@@ -11,19 +11,19 @@ class UserManager extends Actor {
   override def receive = {
 
     case GetUserProfile(userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetUserProfile(userID)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetUserProfile(userID))
       // forward message to UserRetriever
       userRetriever forward GetUserProfile(userID)
 
     case ListUserActivity(userID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListUserActivity(userID, offset, limit)} ")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListUserActivity(userID, offset, limit))
       // forward message to UserRetriever
       userRetriever forward ListUserActivity(userID, offset, limit)
 
-    case ListProjectsOfUser(userID, sort, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjectsOfUser(userID, sort, offset, limit)} ")
+    case ListProjectsOfUser(userID, sort, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjectsOfUser(userID, sort, offset, limit, cursor, stream))
       // forward message to UserRetriever
-      userRetriever forward ListProjectsOfUser(userID, sort, offset, limit)
+      userRetriever forward ListProjectsOfUser(userID, sort, offset, limit, cursor, stream)
 
   }
 }
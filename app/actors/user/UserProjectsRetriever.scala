@@ -2,31 +2,33 @@ package actors.user
 
 import actors.AbstractBulkDBHandler
 import actors.AbstractBulkDBHandler.{BulkResult, ItemResult}
-import actors.AbstractDBActor.Terminate
-import akka.actor.{ActorRef, Props}
+import akka.actor.Props
 import com.couchbase.client.java.document.json.JsonArray
 import helpers.Helper
 import helpers.Helper._
+import helpers.{JsonConverter, Log}
 import messages.UserManagerMessages.ListProjectsOfUser
 import models.Response
+import models.errors.Error
 import models.errors.GeneralErrors.{CouldNotParseJSON, NotFoundError}
 import models.project.Project.EmbeddedProject
 import play.Logger
 import play.api.libs.json.{JsArray, Json}
 
-class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
+class UserProjectsRetriever extends AbstractBulkDBHandler {
 
   override val ErrorMsg: String = "Failed to retrieve user projects"
 
-  override def receive = {
-    case ListProjectsOfUser(userID, sort, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjectsOfUser(userID, sort, offset, limit)} ")
+  override def handle: Receive = {
+    case ListProjectsOfUser(userID, sort, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjectsOfUser(userID, sort, offset, limit, cursor, stream))
+      val pageLimit = startPage(cursor, limit, stream)
       sort match {
         case Helper.EnrolledKeyword =>
-          executeQuery(DBUtilities.User.getEnrolledProjectsForUser(userID, offset, limit))
+          executeQuery(DBUtilities.User.getEnrolledProjectsForUser(userID, offset, pageLimit, cursor.orNull))
 
         case Helper.CreatedKeyword =>
-          executeQuery(DBUtilities.User.getProjectsCreatedByUser(userID, offset, limit))
+          executeQuery(DBUtilities.User.getProjectsCreatedByUser(userID, offset, pageLimit, cursor.orNull))
 
         case _ =>
           Logger.error("ERROR: Only created and enrolled projects supported.")
@@ -34,7 +36,7 @@ class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
 
     case ItemResult(jsonObject) =>
       // received new item , aggregate it to the final result Array
-      Logger.info(s"actor ${self.path} - received msg : ${ItemResult(jsonObject)}")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ItemResult(jsonObject))
       if (jsonObject.getString("id") != DBUtilities.DBConfig.EMPTY_JSON_OBJECT) {
         appendFinalResult(jsonObject)
       } else {
@@ -43,8 +45,8 @@ class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
 
     case BulkResult(jsArray) =>
       if (jsArray.isEmpty) {
-        out ! NotFoundError("Couldn't find projects",
-          "Constructed json array is empty", this.getClass.toString)
+        out ! emptyPage.getOrElse(NotFoundError("Couldn't find projects",
+          "Constructed json array is empty", this.getClass.toString))
       } else {
         val response = constructResponse(jsArray)
         response match {
@@ -55,9 +57,10 @@ class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
               "couldn't parse json retrieved from the db ", this.getClass.toString)
         }
       }
-    case Terminate =>
-      Logger.info(s"actor ${self.path} - received msg : $Terminate ")
-      context.stop(self)
+
+    case err: Error =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, err)
+      out ! err
   }
 
   /**
@@ -65,9 +68,9 @@ class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
     */
   override def constructResponse(jsonArray: JsonArray): Option[Response] = {
     try {
-      val parsedJson = Json.parse(jsonArray.toString).as[JsArray]
+      val parsedJson = JsonConverter.toJsValue(jsonArray).as[JsArray]
       val projects: Seq[EmbeddedProject] = BulkProjectsResponseHelper(parsedJson)
-      if (projects.isEmpty) None else Some(Response(Json.toJson(projects)))
+      if (projects.isEmpty) None else Some(Response(paginate(Json.toJson(projects))))
     } catch {
       case e: Exception => None
     }
@@ -75,5 +78,5 @@ class UserProjectsRetriever(out: ActorRef) extends AbstractBulkDBHandler(out) {
 }
 
 object UserProjectsRetriever {
-  def props(out: ActorRef): Props = Props(new UserProjectsRetriever(out))
+  def props(): Props = Props(new UserProjectsRetriever)
 }
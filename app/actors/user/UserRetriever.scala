@@ -1,37 +1,33 @@
 package actors.user
 
+import actors.Handlers
 import akka.actor.{Actor, Props}
+import helpers.Log
 import messages.UserManagerMessages.{GetUserProfile, ListProjectsOfUser, ListUserActivity}
-import play.Logger
 
 class UserRetriever extends Actor {
 
+  val infoRetrievers = Handlers(InfoRetriever.props(), "infoRetrievers")
+  val activityRetrievers = Handlers(ActivityRetriever.props(), "activityRetrievers")
+  val userProjectsRetrievers = Handlers(UserProjectsRetriever.props(), "userProjectsRetrievers")
+
   override def receive = {
 
     case GetUserProfile(userID) =>
-      Logger.info(s"actor ${self.path} - received msg : ${GetUserProfile(userID)} ")
-
-      // Create InfoRetriever Actor
-      val infoRetriever = context.actorOf(InfoRetriever.props(sender()), "infoRetriever")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, GetUserProfile(userID))
 
       // Forward GetUserProfile message to InfoRetriever actor
-      infoRetriever forward GetUserProfile(userID)
+      infoRetrievers forward GetUserProfile(userID)
 
     case ListUserActivity(userID, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListUserActivity(userID, offset, limit)} ")
-
-      // Create ActivityRetriever Actor
-      val activityRetriever = context.actorOf(ActivityRetriever.props(sender()), "activityRetriever")
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListUserActivity(userID, offset, limit))
       // Forward ListUserActivity message to ActivityRetriever actor
-      activityRetriever forward ListUserActivity(userID, offset, limit)
-
-    case ListProjectsOfUser(userID, sort, offset, limit) =>
-      Logger.info(s"actor ${self.path} - received msg : ${ListProjectsOfUser(userID, sort, offset, limit)} ")
+      activityRetrievers forward ListUserActivity(userID, offset, limit)
 
-      // Create ActivityRetriever Actor
-      val userProjectsRetriever = context.actorOf(UserProjectsRetriever.props(sender()), "userProjectsRetriever")
+    case ListProjectsOfUser(userID, sort, offset, limit, cursor, stream) =>
+      Log.info(Log.ACTOR, "actor %s - received msg : %s", self.path, ListProjectsOfUser(userID, sort, offset, limit, cursor, stream))
       // Forward ListUserActivity message to ActivityRetriever actor
-      userProjectsRetriever forward ListProjectsOfUser(userID, sort, offset, limit)
+      userProjectsRetrievers forward ListProjectsOfUser(userID, sort, offset, limit, cursor, stream)
 
   }
 }
@@ -7,7 +7,7 @@ import akka.actor.{ActorRef, ActorSystem}
 import akka.pattern.ask
 import akka.util.Timeout
 import messages.CategoryManagerMessages.{RetrieveCategories, RetrieveCategoryProjects}
-import models.Response
+import models.{Response, StreamedResponse}
 import models.errors.Error
 import models.errors.GeneralErrors.AskTimeoutError
 import play.api.mvc.{Action, Controller}
@@ -22,15 +22,19 @@ class CategoryController @Inject()(@Named("receptionist") receptionist: ActorRef
   // Category Requests
 
   //  list all categories
-  def getCategories(offset: Int, limit: Int) = Action.async {
+  def getCategories(offset: Int, limit: Int, cursor: Option[String], stream: Boolean) = Action.async {
     request => {
       // Ask receptionist to get categories
-      receptionist ? RetrieveCategories(offset, limit) map {
+      receptionist ? RetrieveCategories(offset, limit, cursor, stream) map {
 
         // The receptionist got the categories
         case Response(response) =>
           Ok(response)
 
+        // The receptionist streams the listing
+        case streamed: StreamedResponse =>
+          StreamedResults.chunked(streamed)
+
         // The receptionist failed to get the categories
         case error: Error =>
           error.result
@@ -45,15 +49,19 @@ class CategoryController @Inject()(@Named("receptionist") receptionist: ActorRef
   }
 
   //  list projects of a category
-  def getProjectsForCategory(categoryID: String, offset: Int, limit: Int) =  Action.async {
+  def getProjectsForCategory(categoryID: String, offset: Int, limit: Int, cursor: Option[String], stream: Boolean) =  Action.async {
     request => {
       // Ask receptionist to get categories
-      receptionist ? RetrieveCategoryProjects(categoryID, offset, limit) map {
+      receptionist ? RetrieveCategoryProjects(categoryID, offset, limit, cursor, stream) map {
 
         // The receptionist got the categories
         case Response(response) =>
           Ok(response)
 
+        // The receptionist streams the listing
+        case streamed: StreamedResponse =>
+          StreamedResults.chunked(streamed)
+
         // The receptionist failed to get the categories
         case error: Error =>
           error.result
@@ -8,7 +8,7 @@ import akka.pattern.ask
 import akka.util.Timeout
 import auth.services.AuthEnvironment
 import messages.ProjectManagerMessages._
-import models.Response
+import models.{Response, StreamedResponse}
 import models.errors.Error
 import models.errors.GeneralErrors.{AskTimeoutError, BadJSONError}
 import models.project.Project.NewProject
@@ -29,11 +29,13 @@ class ProjectController @Inject()(@Named("receptionist") receptionist: ActorRef)
 
 
   //  list all projects (paginated)
-  def listProjects(filter: String, offset: Int, limit: Int) = Action.async {
-    receptionist ? ListProjects(filter, offset, limit) map {
+  def listProjects(filter: String, offset: Int, limit: Int, cursor: Option[String], stream: Boolean) = Action.async {
+    receptionist ? ListProjects(filter, offset, limit, cursor, stream) map {
 
       case Response(json) =>
         Ok(json)
+      case streamed: StreamedResponse =>
+        StreamedResults.chunked(streamed)
       case error: Error =>
         error.result
 
@@ -111,10 +113,12 @@ class ProjectController @Inject()(@Named("receptionist") receptionist: ActorRef)
   }
 
   //  search in projects (paginated)
-  def searchProjects(keyword: String, offset: Int, limit: Int) = Action.async {
-    receptionist ? SearchProjects(keyword, offset, limit) map {
+  def searchProjects(keyword: String, offset: Int, limit: Int, cursor: Option[String], stream: Boolean) = Action.async {
+    receptionist ? SearchProjects(keyword, offset, limit, cursor, stream) map {
       case Response(json) =>
         Ok(json)
+      case streamed: StreamedResponse =>
+        StreamedResults.chunked(streamed)
       case error: Error =>
         error.result
     } recover {
@@ -128,8 +132,8 @@ class ProjectController @Inject()(@Named("receptionist") receptionist: ActorRef)
 
 
   //  list stats of a project
-  def getProjectStats(projectId: String) = Action.async {
-    receptionist ? GetProjectStats(projectId) map {
+  def getProjectStats(projectId: String, window: Option[String], resolution: Option[String]) = Action.async {
+    receptionist ? GetProjectStats(projectId, window, resolution) map {
       case Response(json) =>
         Ok(json)
       case error: Error =>
@@ -0,0 +1,38 @@
+package controllers
+
+import actors.AbstractBulkDBHandler.{CancelStream, Chunk, NextChunk}
+import actors.AbstractDBActor.Correlated
+import akka.pattern.ask
+import akka.util.Timeout
+import models.StreamedResponse
+import play.api.Logger
+import play.api.libs.iteratee.Enumerator
+import play.api.mvc.{Result, Results}
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+  * writes a streamed listing as a chunked response.
+  * a chunk is pulled from the handler only once the previous one is written to the client, so a slow client slows the query down
+  */
+object StreamedResults {
+
+  def chunked(streamed: StreamedResponse)(implicit timeout: Timeout, exec: ExecutionContext): Result = {
+    val chunks = Enumerator.unfoldM(false) { done =>
+      if (done) Future.successful(None)
+      else streamed.handler ? Correlated(streamed.requestID, NextChunk) map {
+        case Chunk(bytes, last) => Some((last, bytes))
+        case _ => None
+      } recover {
+        case e: Exception =>
+          Logger.warn(s"stream of ${streamed.handler.path} failed, ${e.getMessage}")
+          None
+      }
+    } onDoneEnumerating {
+      // tell the handler to stop when the client went away, it has already stopped if the stream ended
+      streamed.handler ! Correlated(streamed.requestID, CancelStream)
+    }
+
+    Results.Ok.chunked(chunks).as("application/json; charset=utf-8")
+  }
+}
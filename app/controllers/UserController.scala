@@ -7,7 +7,7 @@ import akka.actor.{ActorRef, ActorSystem}
 import akka.pattern.ask
 import akka.util.Timeout
 import messages.UserManagerMessages.{GetUserProfile, ListProjectsOfUser, ListUserActivity}
-import models.Response
+import models.{Response, StreamedResponse}
 import models.errors.Error
 import models.errors.GeneralErrors.AskTimeoutError
 import play.api.mvc.{Action, Controller}
@@ -68,14 +68,17 @@ class UserController @Inject()(@Named("receptionist") receptionist: ActorRef)
   }
 
   //  list all projects that the user enrolled in (paginated)
-  def getUserEnrolledProjects(userId: String, offset: Int, limit: Int) = Action.async {
+  def getUserEnrolledProjects(userId: String, offset: Int, limit: Int, cursor: Option[String], stream: Boolean) = Action.async {
     request => {
       val EnrolledSort = "enrolled"
       // Ask receptionist to get user enrolled projects
-      receptionist ? ListProjectsOfUser(userId, EnrolledSort, offset, limit) map {
+      receptionist ? ListProjectsOfUser(userId, EnrolledSort, offset, limit, cursor, stream) map {
         // The receptionist got the activates
         case Response(feed) =>
           Ok(feed)
+        // The receptionist streams the projects
+        case streamed: StreamedResponse =>
+          StreamedResults.chunked(streamed)
         // The receptionist failed to get user enrolled projects
         case error: Error =>
           error.result
@@ -90,14 +93,17 @@ class UserController @Inject()(@Named("receptionist") receptionist: ActorRef)
   }
 
   //  list projects created by a specific user (paginated)
-  def getUserCreatedProjects(userId: String, offset: Int, limit: Int) = Action.async {
+  def getUserCreatedProjects(userId: String, offset: Int, limit: Int, cursor: Option[String], stream: Boolean) = Action.async {
     request => {
       val CreatedSort = "created"
       // Ask receptionist to get user created projects
-      receptionist ? ListProjectsOfUser(userId, CreatedSort, offset, limit) map {
+      receptionist ? ListProjectsOfUser(userId, CreatedSort, offset, limit, cursor, stream) map {
         // The receptionist got the activates
         case Response(feed) =>
           Ok(feed)
+        // The receptionist streams the projects
+        case streamed: StreamedResponse =>
+          StreamedResults.chunked(streamed)
         // The receptionist failed to get user created projects
         case error: Error =>
           error.result
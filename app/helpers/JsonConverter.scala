@@ -0,0 +1,83 @@
+package helpers
+
+import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import play.api.libs.json._
+
+import scala.collection.JavaConverters._
+
+/**
+  * converts between the Json documents of the DB and the Json values of the responses by walking the trees,
+  * instead of writing one of them to a string and parsing it into the other.
+  * numbers become Integer, Long or Double in the DB the way the DB parser would read them.
+  */
+object JsonConverter {
+
+  def toJsValue(jsonObject: JsonObject): JsObject =
+    JsObject(jsonObject.getNames.asScala.toSeq.map(name => name -> toJsValue(jsonObject.get(name))))
+
+  def toJsValue(jsonArray: JsonArray): JsArray =
+    JsArray(jsonArray.iterator().asScala.map(value => toJsValue(value)).toVector)
+
+  /**
+    * convert a value of a Json document, a JsonObject, JsonArray, String, Boolean, number or null
+    */
+  def toJsValue(value: Any): JsValue = value match {
+    case null => JsNull
+    case jsonObject: JsonObject => toJsValue(jsonObject)
+    case jsonArray: JsonArray => toJsValue(jsonArray)
+    case string: String => JsString(string)
+    case boolean: java.lang.Boolean => JsBoolean(boolean.booleanValue)
+    case int: java.lang.Integer => JsNumber(BigDecimal(int.intValue))
+    case long: java.lang.Long => JsNumber(BigDecimal(long.longValue))
+    case bigInteger: java.math.BigInteger => JsNumber(BigDecimal(new java.math.BigDecimal(bigInteger)))
+    case bigDecimal: java.math.BigDecimal => JsNumber(BigDecimal(bigDecimal))
+    case number: java.lang.Number => JsNumber(BigDecimal(number.doubleValue()))
+    case other => throw new IllegalArgumentException(s"Unsupported Json document value: ${other.getClass}")
+  }
+
+  def toJsonObject(jsObject: JsObject): JsonObject = {
+    val jsonObject = JsonObject.create()
+    jsObject.fields.foreach {
+      case (name, JsNull) => jsonObject.putNull(name)
+      case (name, value) => jsonObject.put(name, toJsonValue(value))
+    }
+    jsonObject
+  }
+
+  def toJsonArray(jsArray: JsArray): JsonArray = {
+    val jsonArray = JsonArray.create()
+    jsArray.value.foreach {
+      case JsNull => jsonArray.addNull()
+      case value => jsonArray.add(toJsonValue(value))
+    }
+    jsonArray
+  }
+
+  /**
+    * @throws IllegalArgumentException if the value isn't an object
+    */
+  def toJsonObject(js: JsValue): JsonObject = js match {
+    case jsObject: JsObject => toJsonObject(jsObject)
+    case _ => throw new IllegalArgumentException("Expected a Json object")
+  }
+
+  /**
+    * @throws IllegalArgumentException if the value isn't an array
+    */
+  def toJsonArray(js: JsValue): JsonArray = js match {
+    case jsArray: JsArray => toJsonArray(jsArray)
+    case _ => throw new IllegalArgumentException("Expected a Json array")
+  }
+
+  private def toJsonValue(js: JsValue): AnyRef = js match {
+    case jsObject: JsObject => toJsonObject(jsObject)
+    case jsArray: JsArray => toJsonArray(jsArray)
+    case JsString(string) => string
+    case JsBoolean(boolean) => java.lang.Boolean.valueOf(boolean)
+    case JsNumber(number) =>
+      if (number.isValidInt) java.lang.Integer.valueOf(number.toInt)
+      else if (number.isValidLong) java.lang.Long.valueOf(number.toLong)
+      else java.lang.Double.valueOf(number.toDouble)
+    case _ => null
+  }
+}
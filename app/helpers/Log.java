@@ -0,0 +1,131 @@
+package helpers;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Logger;
+import play.api.libs.json.JsValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logging for the hot paths, the messages received by the actors and the queries of the DB utilities.
+ * Every event has a category logged by the logger application.category, so each can get its own level in logback.xml.
+ * The message is only formatted once the event is known to be logged: its level is enabled and,
+ * for info and debug events, it is kept by the sampling of its category, one in logging.sampling.category events.
+ * Warnings and errors are never sampled.
+ * With logging.payloads off, documents and JSON values in the arguments, also inside messages, are logged as their size only.
+ */
+public class Log {
+    public static final String ACTOR = "actor";
+    public static final String DB = "db";
+    private static final String LOGGER_PREFIX = "application.";
+    private static final String PAYLOADS_CONFIG_KEY = "logging.payloads";
+    private static final String SAMPLING_CONFIG_KEY = "logging.sampling";
+    private static final boolean DEFAULT_PAYLOADS = true;
+    private static final int DEFAULT_SAMPLING = 1;
+
+    private static final Config config = ConfigFactory.load();
+    private static final boolean payloads = config.hasPath(PAYLOADS_CONFIG_KEY) ? config.getBoolean(PAYLOADS_CONFIG_KEY) : DEFAULT_PAYLOADS;
+    private static final Map<String, Category> categories = new ConcurrentHashMap<>();
+
+    public static void debug(String category, String format, Object... args) {
+        Category logged = category(category);
+        if (logged.logger.isDebugEnabled() && logged.sampled()) {
+            logged.logger.debug(format(format, args));
+        }
+    }
+
+    public static void info(String category, String format, Object... args) {
+        Category logged = category(category);
+        if (logged.logger.isInfoEnabled() && logged.sampled()) {
+            logged.logger.info(format(format, args));
+        }
+    }
+
+    public static void warn(String category, String format, Object... args) {
+        Category logged = category(category);
+        if (logged.logger.isWarnEnabled()) {
+            logged.logger.warn(format(format, args));
+        }
+    }
+
+    public static void error(String category, String format, Object... args) {
+        Category logged = category(category);
+        if (logged.logger.isErrorEnabled()) {
+            logged.logger.error(format(format, args));
+        }
+    }
+
+    /**
+     * @return the message of an event, with the payloads left out of its arguments if logging.payloads is off.
+     */
+    public static String format(String format, Object... args) {
+        if (!payloads) {
+            Object[] rendered = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                rendered[i] = withoutPayloads(args[i]);
+            }
+            return String.format(format, rendered);
+        }
+        return String.format(format, args);
+    }
+
+    private static Category category(String name) {
+        Category category = categories.get(name);
+        return category != null ? category : categories.computeIfAbsent(name, Category::new);
+    }
+
+    private static Object withoutPayloads(Object arg) {
+        if (arg instanceof JsonObject) {
+            return String.format("JsonObject(%s fields)", ((JsonObject) arg).size());
+        }
+        if (arg instanceof JsonArray) {
+            return String.format("JsonArray(%s items)", ((JsonArray) arg).size());
+        }
+        if (arg instanceof JsValue) {
+            return arg.getClass().getSimpleName();
+        }
+        if (arg instanceof scala.collection.Iterable) {
+            scala.collection.Iterable<?> iterable = (scala.collection.Iterable<?>) arg;
+            return String.format("%s(%s items)", iterable.stringPrefix(), iterable.size());
+        }
+        // messages are case classes, keep their fields but leave out the payloads among them
+        if (arg instanceof scala.Product && ((scala.Product) arg).productArity() > 0) {
+            scala.Product product = (scala.Product) arg;
+            StringBuilder builder = new StringBuilder(product.productPrefix()).append('(');
+            for (int i = 0; i < product.productArity(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(withoutPayloads(product.productElement(i)));
+            }
+            return builder.append(')').toString();
+        }
+        return arg;
+    }
+
+    /**
+     * The logger of a category and its sampling.
+     */
+    private static class Category {
+        private final Logger.ALogger logger;
+        private final int sampling;
+
+        Category(String name) {
+            String samplingKey = SAMPLING_CONFIG_KEY + "." + name;
+            this.logger = Logger.of(LOGGER_PREFIX + name);
+            this.sampling = Math.max(1, config.hasPath(samplingKey) ? config.getInt(samplingKey) : DEFAULT_SAMPLING);
+        }
+
+        /**
+         * @return true for one in sampling events, picked at random so concurrent loggers don't contend on a counter.
+         */
+        boolean sampled() {
+            return sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0;
+        }
+    }
+}
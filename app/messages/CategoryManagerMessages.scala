@@ -4,8 +4,8 @@ object CategoryManagerMessages {
 
   trait CategoryMessage
 
-  case class RetrieveCategories(offset: Int, limit: Int) extends CategoryMessage
+  case class RetrieveCategories(offset: Int, limit: Int, cursor: Option[String] = None, stream: Boolean = false) extends CategoryMessage
 
-  case class RetrieveCategoryProjects(categoryID: String, offset: Int, limit: Int) extends CategoryMessage
+  case class RetrieveCategoryProjects(categoryID: String, offset: Int, limit: Int, cursor: Option[String] = None, stream: Boolean = false) extends CategoryMessage
 
 }
@@ -8,7 +8,7 @@ object ProjectManagerMessages {
 
   case class CreateProject(project: NewProject, userID: String) extends ProjectMessage
 
-  case class ListProjects(filter: String, offset: Int, limit: Int) extends ProjectMessage
+  case class ListProjects(filter: String, offset: Int, limit: Int, cursor: Option[String] = None, stream: Boolean = false) extends ProjectMessage
 
   case class GetProjectDetails(projectID: String) extends ProjectMessage
 
@@ -16,9 +16,9 @@ object ProjectManagerMessages {
 
   case class GetProjectResults(projectID: String, offset: Int, limit: Int) extends ProjectMessage
 
-  case class GetProjectStats(projectID: String) extends ProjectMessage
+  case class GetProjectStats(projectID: String, window: Option[String] = None, resolution: Option[String] = None) extends ProjectMessage
 
-  case class SearchProjects(keyword: String, offset: Int, limit: Int) extends ProjectMessage
+  case class SearchProjects(keyword: String, offset: Int, limit: Int, cursor: Option[String] = None, stream: Boolean = false) extends ProjectMessage
 
   case class ValidateProject(project: NewProject, userID: String) extends ProjectMessage
 
@@ -8,6 +8,6 @@ object UserManagerMessages {
 
   case class ListUserActivity(userID: String, offset: Int, limit: Int) extends UserMessage
 
-  case class ListProjectsOfUser(userID: String, sort: String, offset: Int, limit: Int) extends UserMessage
+  case class ListProjectsOfUser(userID: String, sort: String, offset: Int, limit: Int, cursor: Option[String] = None, stream: Boolean = false) extends UserMessage
 
 }
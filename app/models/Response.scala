@@ -1,5 +1,11 @@
 package models
 
+import akka.actor.ActorRef
 import play.api.libs.json.JsValue
 
-case class Response(jsonResult: JsValue)
\ No newline at end of file
+case class Response(jsonResult: JsValue)
+
+/**
+  * a listing streamed by its handler, its chunks are pulled from the handler with messages correlated with requestID
+  */
+case class StreamedResponse(handler: ActorRef, requestID: Long)
\ No newline at end of file
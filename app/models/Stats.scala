@@ -16,7 +16,8 @@ object contributors_gender {
 case class Stats(
                   enrollments_count: Int,
                   contributions_count: Int,
-                  contributors_gender: contributors_gender) {
+                  contributors_gender: contributors_gender,
+                  contributors_count: Option[Int] = None) {
 }
 
 object Stats {
@@ -45,6 +45,22 @@ object GeneralErrors {
             ErrorsCodes.GENERAL_SERVER_ERROR_CODE, devMsg, class_name)
         ).toJson))
 
+  case class BadRequestError(msg: String, devMsg: String, class_name: String) extends
+    Error(
+      Results.BadRequest(
+        ErrorMsg(
+          msg, DevMsg(
+            ErrorsCodes.GENERAL_SERVER_ERROR_CODE, devMsg, class_name)
+        ).toJson))
+
+  case class ServiceUnavailableError(msg: String, devMsg: String, class_name: String) extends
+    Error(
+      Results.ServiceUnavailable(
+        ErrorMsg(
+          msg, DevMsg(
+            ErrorsCodes.GENERAL_SERVER_ERROR_CODE, devMsg, class_name)
+        ).toJson))
+
   case class AlreadyExists(msg: String, devMsg: String, class_name: String) extends
     Error(
       Results.Conflict(
@@ -0,0 +1,56 @@
+package DBUtilities
+
+import com.couchbase.client.java.document.json.JsonObject
+import org.scalatest.{FlatSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+class ContributorSketchSpec extends FlatSpec with MustMatchers {
+
+  /**
+    * add contributors to sketches the way the stats document does, keeping the highest value of every register
+    */
+  def sketch(contributors: Seq[(String, String)], sketches: JsonObject = JsonObject.create()): JsonObject = {
+    for ((id, gender) <- contributors; (register, rank) <- ContributorSketch.registers(id, gender).asScala) {
+      val current = Option(sketches.getLong(register)).map(_.longValue).getOrElse(0L)
+      sketches.put(register, math.max(current, rank.longValue))
+    }
+    sketches
+  }
+
+  def contributors(count: Int, gender: String = "female", prefix: String = "user::"): Seq[(String, String)] =
+    (1 to count).map(n => (s"$prefix$n", gender))
+
+  "Contributor sketch" should "count a few contributors exactly" in {
+    ContributorSketch.estimate(sketch(contributors(10)), ContributorSketch.ALL) mustBe 10
+  }
+
+  it should "estimate many contributors within 5%" in {
+    val estimate = ContributorSketch.estimate(sketch(contributors(50000)), ContributorSketch.ALL)
+    estimate.toDouble mustBe 50000.0 +- 2500
+  }
+
+  it should "count a contributor contributing again once" in {
+    val sketches = sketch(contributors(100))
+    val before = ContributorSketch.estimate(sketches, ContributorSketch.ALL)
+    ContributorSketch.estimate(sketch(contributors(100), sketches), ContributorSketch.ALL) mustBe before
+  }
+
+  it should "keep a sketch per gender" in {
+    val sketches = sketch(contributors(30, "female") ++ contributors(20, "male", "other::"))
+    ContributorSketch.names(sketches).asScala mustBe Set(ContributorSketch.ALL, "female", "male")
+    ContributorSketch.estimate(sketches, "female") mustBe 30L +- 1L
+    ContributorSketch.estimate(sketches, "male") mustBe 20L +- 1L
+    ContributorSketch.estimate(sketches, ContributorSketch.ALL) mustBe 50L +- 1L
+  }
+
+  it should "merge the sketches of two nodes into the sketch of all their contributors" in {
+    val merged = sketch(contributors(3000, prefix = "first::"))
+    sketch(contributors(3000, prefix = "second::"), merged)
+    ContributorSketch.estimate(merged, ContributorSketch.ALL).toDouble mustBe 6000.0 +- 300
+  }
+
+  it should "estimate 0 for a missing sketch" in {
+    ContributorSketch.estimate(JsonObject.create(), "unknown") mustBe 0
+  }
+}
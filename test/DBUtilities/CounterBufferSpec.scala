@@ -0,0 +1,78 @@
+package DBUtilities
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.scalatest.{FlatSpec, MustMatchers}
+import rx.Observable
+
+class CounterBufferSpec extends FlatSpec with MustMatchers {
+
+  val ProjectID = "project::counter-buffer"
+  val Field = "stats.contributions"
+
+  /**
+    * an in-memory storage whose counter writes answer after writeDelay milliseconds,
+    * the first failures writes failing without being applied
+    */
+  class SlowStorage(writeDelay: Long, failures: Int = 0) extends MemoryStorage {
+    val writes = new AtomicInteger()
+    counter(Counter.counterId(ProjectID, Field), 0, 0).toBlocking.single()
+
+    override def counter(id: String, delta: Long): Observable[java.lang.Long] =
+      if (writes.incrementAndGet() <= failures) Observable.error[java.lang.Long](new IllegalStateException("node down"))
+      else if (writeDelay == 0) super.counter(id, delta)
+      else super.counter(id, delta).delaySubscription(writeDelay, TimeUnit.MILLISECONDS)
+
+    def value: Long = getCounter(Counter.counterId(ProjectID, Field)).toBlocking.single()
+  }
+
+  def started(storage: Storage): CounterBuffer = {
+    val buffer = new CounterBuffer(60000, 5, storage)
+    buffer.start()
+    buffer
+  }
+
+  "Counter buffer" should "write the deltas added below the threshold on stop" in {
+    val storage = new SlowStorage(0)
+    val buffer = started(storage)
+    buffer.add(ProjectID, Field, 3)
+    storage.value mustBe 0
+
+    buffer.stop()
+    storage.value mustBe 3
+    buffer.pendingDelta(ProjectID, Field) mustBe 0
+  }
+
+  it should "wait for a flush in flight on stop, then write the deltas added during it" in {
+    val storage = new SlowStorage(300)
+    val buffer = started(storage)
+    buffer.add(ProjectID, Field, 5)
+    buffer.add(ProjectID, Field, 2)
+
+    buffer.stop()
+    storage.value mustBe 7
+    buffer.pendingDelta(ProjectID, Field) mustBe 0
+  }
+
+  it should "flush the deltas of a failed flush again on stop" in {
+    val storage = new SlowStorage(0, failures = 1)
+    val buffer = started(storage)
+    buffer.add(ProjectID, Field, 5) mustBe 5
+    buffer.pendingDelta(ProjectID, Field) mustBe 5
+
+    buffer.stop()
+    storage.value mustBe 5
+    buffer.pendingDelta(ProjectID, Field) mustBe 0
+  }
+
+  it should "give up on the deltas it can't write before the shutdown timeout" in {
+    val storage = new SlowStorage(0, failures = Int.MaxValue)
+    val buffer = started(storage)
+    buffer.add(ProjectID, Field, 4)
+
+    buffer.stop()
+    storage.value mustBe 0
+    buffer.pendingDelta(ProjectID, Field) mustBe 4
+  }
+}
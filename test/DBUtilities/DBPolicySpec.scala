@@ -0,0 +1,148 @@
+package DBUtilities
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{TimeUnit, TimeoutException}
+
+import com.couchbase.client.java.error.TemporaryFailureException
+import org.scalatest.{FlatSpec, MustMatchers}
+import rx.Observable
+import rx.functions.Func0
+
+import scala.collection.JavaConverters._
+
+class DBPolicySpec extends FlatSpec with MustMatchers {
+
+  /**
+    * an operation failing with the given error on its first attempts, then emitting "done"
+    */
+  def failing(failures: Int, error: => Throwable, attempts: AtomicInteger): Observable[String] =
+    Observable.defer(new Func0[Observable[String]] {
+      override def call(): Observable[String] =
+        if (attempts.incrementAndGet() <= failures) Observable.error[String](error) else Observable.just("done")
+    })
+
+  "DB policy" should "retry transient failures until the operation succeeds" in {
+    val policy = new DBPolicy("retrying", true, 1000, 3, 1, 5, 20, 5000)
+    val attempts = new AtomicInteger()
+    policy.apply(failing(2, new TemporaryFailureException(), attempts)).toBlocking.single() mustBe "done"
+    attempts.get() mustBe 3
+    policy.retries() mustBe 2
+  }
+
+  it should "not retry permanent failures" in {
+    val policy = new DBPolicy("permanent", true, 1000, 3, 1, 5, 20, 5000)
+    val attempts = new AtomicInteger()
+    an[IllegalStateException] must be thrownBy policy.apply(failing(1, new IllegalStateException(), attempts)).toBlocking.single()
+    attempts.get() mustBe 1
+  }
+
+  it should "give up after max-retries retries" in {
+    val policy = new DBPolicy("exhausted", true, 1000, 2, 1, 5, 20, 5000)
+    val attempts = new AtomicInteger()
+    a[TemporaryFailureException] must be thrownBy policy.apply(failing(5, new TemporaryFailureException(), attempts)).toBlocking.single()
+    attempts.get() mustBe 3
+  }
+
+  it should "retry timeouts of idempotent operations only" in {
+    val idempotent = new DBPolicy("idempotent", true, 1000, 3, 1, 5, 20, 5000)
+    val idempotentAttempts = new AtomicInteger()
+    idempotent.apply(failing(1, new TimeoutException(), idempotentAttempts)).toBlocking.single() mustBe "done"
+    idempotentAttempts.get() mustBe 2
+
+    val once = new DBPolicy("once", false, 1000, 3, 1, 5, 20, 5000)
+    val onceAttempts = new AtomicInteger()
+    a[RuntimeException] must be thrownBy once.apply(failing(1, new TimeoutException(), onceAttempts)).toBlocking.single()
+    onceAttempts.get() mustBe 1
+  }
+
+  it should "retry temporary failures of operations that aren't idempotent" in {
+    val policy = new DBPolicy("once", false, 1000, 3, 1, 5, 20, 5000)
+    val attempts = new AtomicInteger()
+    policy.apply(failing(2, new TemporaryFailureException(), attempts)).toBlocking.single() mustBe "done"
+    attempts.get() mustBe 3
+  }
+
+  it should "not retry an operation that already emitted items" in {
+    val policy = new DBPolicy("streaming", true, 1000, 3, 1, 5, 20, 5000)
+    val attempts = new AtomicInteger()
+    val operation = Observable.defer(new Func0[Observable[String]] {
+      override def call(): Observable[String] = {
+        attempts.incrementAndGet()
+        Observable.just("first").concatWith(Observable.error[String](new TemporaryFailureException()))
+      }
+    })
+
+    policy.apply(operation).onErrorResumeNext(Observable.just("failed")).toList.toBlocking.single().asScala mustBe
+      Seq("first", "failed")
+    attempts.get() mustBe 1
+  }
+
+  it should "time out an attempt waiting for its first item past the deadline" in {
+    val policy = new DBPolicy("silent", true, 100, 0, 1, 5, 20, 5000)
+    val thrown = the[RuntimeException] thrownBy policy.apply(Observable.never[String]()).toBlocking.single()
+    thrown.getCause mustBe a[TimeoutException]
+    policy.deadlinesExceeded() mustBe 1
+  }
+
+  it should "not time out the items following the first one" in {
+    val policy = new DBPolicy("slow-stream", true, 100, 0, 1, 5, 20, 5000)
+    val operation = Observable.just[java.lang.Long](1L).concatWith(Observable.timer(300, TimeUnit.MILLISECONDS))
+    policy.apply(operation).toList.toBlocking.single().size() mustBe 2
+    policy.deadlinesExceeded() mustBe 0
+  }
+
+  it should "open the circuit breaker after failure-threshold failures in a row and close it after a successful trial" in {
+    val policy = new DBPolicy("breaking", true, 1000, 0, 0, 0, 3, 100)
+    (1 to 3).foreach { _ =>
+      a[TemporaryFailureException] must be thrownBy
+        policy.apply(failing(1, new TemporaryFailureException(), new AtomicInteger())).toBlocking.single()
+    }
+    policy.isOpen mustBe true
+    policy.trips() mustBe 1
+
+    a[DBPolicy.CircuitOpenException] must be thrownBy policy.apply(Observable.just("skipped")).toBlocking.single()
+    policy.rejected() mustBe 1
+
+    Thread.sleep(150)
+    policy.apply(Observable.just("trial")).toBlocking.single() mustBe "trial"
+    policy.isOpen mustBe false
+  }
+
+  it should "reset the failures in a row on a success" in {
+    val policy = new DBPolicy("recovering", true, 1000, 0, 0, 0, 2, 5000)
+    a[TemporaryFailureException] must be thrownBy
+      policy.apply(failing(1, new TemporaryFailureException(), new AtomicInteger())).toBlocking.single()
+    policy.apply(Observable.just("done")).toBlocking.single() mustBe "done"
+    a[TemporaryFailureException] must be thrownBy
+      policy.apply(failing(1, new TemporaryFailureException(), new AtomicInteger())).toBlocking.single()
+    policy.isOpen mustBe false
+  }
+
+  it should "back off at random up to the base delay doubled on every retry, capped at the max delay" in {
+    val policy = new DBPolicy("backoff", true, 1000, 10, 50, 500, 20, 5000)
+    for (attempt <- 1 to 10; _ <- 1 to 100) {
+      val delay = policy.backoff(attempt)
+      delay must be >= 0L
+      delay must be <= math.min(500L, 50L << (attempt - 1))
+    }
+  }
+
+  "Retry budget" should "allow ratio retries per operation once its reserve is spent" in {
+    val budget = new DBPolicy.RetryBudget(0.5, 1)
+    budget.withdraw() mustBe true
+    budget.withdraw() mustBe false
+
+    budget.deposit()
+    budget.withdraw() mustBe false
+    budget.deposit()
+    budget.withdraw() mustBe true
+  }
+
+  it should "not keep more tokens than its reserve" in {
+    val budget = new DBPolicy.RetryBudget(1, 2)
+    (1 to 10).foreach(_ => budget.deposit())
+    budget.withdraw() mustBe true
+    budget.withdraw() mustBe true
+    budget.withdraw() mustBe false
+  }
+}
@@ -0,0 +1,45 @@
+package DBUtilities
+
+import org.scalatest.{FlatSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+class EnrollmentIndexSpec extends FlatSpec with MustMatchers {
+
+  "Enrollment index" should "count the enrollees of a project" in {
+    EnrollmentIndex.enroll("user::enrollment-first", "project::enrollment-counted")
+    EnrollmentIndex.enroll("user::enrollment-second", "project::enrollment-counted")
+    EnrollmentIndex.enrolleesCount("project::enrollment-counted") mustBe 2
+  }
+
+  it should "count a user enrolled twice once" in {
+    EnrollmentIndex.enroll("user::enrollment-twice", "project::enrollment-twice")
+    EnrollmentIndex.enroll("user::enrollment-twice", "project::enrollment-twice")
+    EnrollmentIndex.enrolleesCount("project::enrollment-twice") mustBe 1
+  }
+
+  it should "list the projects a user is enrolled in" in {
+    EnrollmentIndex.enroll("user::enrollment-listed", "project::enrollment-first")
+    EnrollmentIndex.enroll("user::enrollment-listed", "project::enrollment-second")
+    EnrollmentIndex.enrolledProjects("user::enrollment-listed").asScala mustBe Set("project::enrollment-first", "project::enrollment-second")
+  }
+
+  it should "forget a withdrawn user" in {
+    EnrollmentIndex.enroll("user::enrollment-withdrawn", "project::enrollment-withdrawn")
+    EnrollmentIndex.enroll("user::enrollment-staying", "project::enrollment-withdrawn")
+    EnrollmentIndex.withdraw("user::enrollment-withdrawn", "project::enrollment-withdrawn")
+
+    EnrollmentIndex.enrolleesCount("project::enrollment-withdrawn") mustBe 1
+    EnrollmentIndex.enrolledProjects("user::enrollment-withdrawn").asScala mustBe empty
+  }
+
+  it should "count nothing for an unknown project" in {
+    EnrollmentIndex.enrolleesCount("project::enrollment-unknown") mustBe 0
+    EnrollmentIndex.enrolledProjects("user::enrollment-unknown").asScala mustBe empty
+  }
+
+  it should "keep every enrollment made concurrently" in {
+    (1 to 200).par.foreach(n => EnrollmentIndex.enroll(s"user::enrollment-concurrent-$n", "project::enrollment-concurrent"))
+    EnrollmentIndex.enrolleesCount("project::enrollment-concurrent") mustBe 200
+  }
+}
@@ -0,0 +1,75 @@
+package DBUtilities
+
+import java.util.concurrent.TimeUnit
+
+import com.couchbase.client.java.document.JsonDocument
+import com.couchbase.client.java.document.json.JsonObject
+import com.typesafe.config.ConfigFactory
+import org.scalatest.{FlatSpec, MustMatchers}
+import rx.Observable
+import rx.functions.Func1
+
+class HedgedReadsSpec extends FlatSpec with MustMatchers {
+
+  val ProjectID = "project::hedged"
+
+  /**
+    * an in-memory storage whose active node answers after activeDelay milliseconds,
+    * the replica answers at once with the document marked as read from it, or fails if replicaFails
+    */
+  class ReplicatedStorage(activeDelay: Long, replicaFails: Boolean = false) extends MemoryStorage {
+    insert(JsonDocument.create(ProjectID, JsonObject.create().put("name", "hedged"))).toBlocking.single()
+
+    override def get(id: String): Observable[JsonDocument] =
+      if (activeDelay == 0) super.get(id) else super.get(id).delay(activeDelay, TimeUnit.MILLISECONDS)
+
+    override def getFromReplica(id: String): Observable[JsonDocument] =
+      if (replicaFails) Observable.error[JsonDocument](new IllegalStateException("replica down"))
+      else super.get(id).map(new Func1[JsonDocument, JsonDocument] {
+        override def call(document: JsonDocument): JsonDocument =
+          JsonDocument.create(document.id(), document.content().put("replica", true))
+      })
+  }
+
+  def hedgedReads(enabled: Boolean = true): HedgedReads =
+    new HedgedReads(ConfigFactory.parseString("storage.hedged-reads.stale-reads.projects = true"), enabled, 95, 5, 20)
+
+  def readFromReplica(document: JsonDocument): Boolean = document.content().containsKey("replica")
+
+  "Hedged reads" should "take the answer of the replica when the active node is slower than the delay" in {
+    val hedged = hedgedReads()
+    readFromReplica(hedged.get(new ReplicatedStorage(500), HedgedReads.PROJECTS, ProjectID).toBlocking.single()) mustBe true
+    hedged.hedgeRate(HedgedReads.PROJECTS) mustBe 1.0
+    hedged.winRate(HedgedReads.PROJECTS) mustBe 1.0
+  }
+
+  it should "take the answer of the active node when it answers before the delay, without asking the replica" in {
+    val hedged = hedgedReads()
+    readFromReplica(hedged.get(new ReplicatedStorage(0), HedgedReads.PROJECTS, ProjectID).toBlocking.single()) mustBe false
+    hedged.reads(HedgedReads.PROJECTS) mustBe 1
+    hedged.hedgeRate(HedgedReads.PROJECTS) mustBe 0.0
+  }
+
+  it should "wait for the active node when the replica fails" in {
+    val hedged = hedgedReads()
+    val storage = new ReplicatedStorage(100, replicaFails = true)
+    readFromReplica(hedged.get(storage, HedgedReads.PROJECTS, ProjectID).toBlocking.single()) mustBe false
+    hedged.winRate(HedgedReads.PROJECTS) mustBe 0.0
+  }
+
+  it should "not hedge the reads of an operation not allowed stale reads" in {
+    val hedged = hedgedReads()
+    readFromReplica(hedged.get(new ReplicatedStorage(100), HedgedReads.CONTRIBUTIONS, ProjectID).toBlocking.single()) mustBe false
+    hedged.reads(HedgedReads.CONTRIBUTIONS) mustBe 0
+  }
+
+  it should "not hedge any read while disabled" in {
+    val hedged = hedgedReads(enabled = false)
+    readFromReplica(hedged.get(new ReplicatedStorage(100), HedgedReads.PROJECTS, ProjectID).toBlocking.single()) mustBe false
+    hedged.reads(HedgedReads.PROJECTS) mustBe 0
+  }
+
+  it should "hedge after the max delay until enough reads are recorded" in {
+    hedgedReads().delay(HedgedReads.PROJECTS) mustBe 20
+  }
+}
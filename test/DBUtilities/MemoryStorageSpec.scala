@@ -0,0 +1,70 @@
+package DBUtilities
+
+import com.couchbase.client.java.document.JsonDocument
+import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import org.scalatest.{FlatSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+class MemoryStorageSpec extends FlatSpec with MustMatchers {
+
+  val UserID = "user::memory-storage"
+
+  /**
+    * a storage holding a user whose arrays were stored with integers, the way documents parsed from json hold them
+    */
+  def storage(): MemoryStorage = {
+    val storage = new MemoryStorage()
+    storage.insert(JsonDocument.create(UserID, JsonObject.create()
+      .put("numbers", JsonArray.create().add(1).add(2))
+      .put("answers", JsonArray.create().add(JsonObject.create().put("id", 1).put("ans", "yes")))))
+      .toBlocking.single()
+    storage
+  }
+
+  def array(storage: MemoryStorage, path: String): Seq[AnyRef] =
+    storage.get(UserID).toBlocking.single().content().getArray(path).toList.asScala
+
+  def projects(storage: MemoryStorage, listing: Listing): Seq[String] =
+    storage.list(listing).toList.toBlocking.single().asScala.map(_.getString("id"))
+
+  "Memory storage" should "find an integer element of an array whatever the size of the searched number" in {
+    val memory = storage()
+    memory.arrayContains(UserID, "numbers", java.lang.Long.valueOf(2)).toBlocking.single() mustBe true
+    memory.arrayContains(UserID, "numbers", Integer.valueOf(2)).toBlocking.single() mustBe true
+    memory.arrayContains(UserID, "numbers", java.lang.Long.valueOf(3)).toBlocking.single() mustBe false
+  }
+
+  it should "not add an element already in an array as another size of number" in {
+    val memory = storage()
+    memory.arrayAddUnique(UserID, "numbers", java.lang.Long.valueOf(1)).toBlocking.single()
+    array(memory, "numbers").size mustBe 2
+
+    memory.arrayAddUnique(UserID, "numbers", java.lang.Long.valueOf(3)).toBlocking.single()
+    array(memory, "numbers").size mustBe 3
+  }
+
+  it should "compare the numbers nested in object elements the same way" in {
+    val memory = storage()
+    val answer = JsonObject.create().put("id", 1L).put("ans", "yes")
+    memory.arrayContains(UserID, "answers", answer).toBlocking.single() mustBe true
+    memory.arrayAddUnique(UserID, "answers", answer).toBlocking.single()
+    array(memory, "answers").size mustBe 1
+
+    memory.arrayRemove(UserID, "answers", answer).toBlocking.single()
+    array(memory, "answers") mustBe empty
+  }
+
+  it should "not take a missing field for one equal to the empty string" in {
+    val memory = new MemoryStorage()
+    memory.insert(JsonDocument.create("project::unnamed", JsonObject.create())).toBlocking.single()
+    memory.insert(JsonDocument.create("project::empty", JsonObject.create().put("category_id", ""))).toBlocking.single()
+    memory.insert(JsonDocument.create("project::counted", JsonObject.create().put("category_id", "category::a").put("rank", 1)))
+      .toBlocking.single()
+
+    projects(memory, Listing.of("project").whereIdHasPrefix().whereEquals("category_id", "").page(0, 10)) mustBe
+      Seq("project::empty")
+    projects(memory, Listing.of("project").whereIdHasPrefix().whereEquals("rank", 1L).page(0, 10)) mustBe
+      Seq("project::counted")
+  }
+}
@@ -0,0 +1,65 @@
+package DBUtilities
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.IntBinaryOperator
+
+import org.scalatest.{FlatSpec, MustMatchers}
+import rx.Observable
+import rx.functions.{Action0, Func1}
+
+import scala.collection.JavaConverters._
+
+class MultiGetSpec extends FlatSpec with MustMatchers {
+
+  /**
+    * a get answering later for the first keys, so the documents arrive in the reverse order of their keys,
+    * tracking the highest number of gets in flight at once
+    */
+  class ReversedGet(keys: Int) extends Func1[Integer, Observable[String]] {
+    val inFlight = new AtomicInteger()
+    val maxInFlight = new AtomicInteger()
+
+    override def call(key: Integer): Observable[String] =
+      Observable.timer((keys - key) * 10L, TimeUnit.MILLISECONDS)
+        .map[String](new Func1[java.lang.Long, String] {
+          override def call(tick: java.lang.Long): String = s"document-$key"
+        })
+        .doOnSubscribe(new Action0 {
+          override def call(): Unit = maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), new IntBinaryOperator {
+            override def applyAsInt(max: Int, current: Int): Int = math.max(max, current)
+          })
+        })
+        .doOnTerminate(new Action0 {
+          override def call(): Unit = inFlight.decrementAndGet()
+        })
+  }
+
+  def keys(count: Int): java.util.List[Integer] = (1 to count).map(n => Integer.valueOf(n)).asJava
+
+  "Multi get" should "emit the documents in the order of their keys whatever order they arrive in" in {
+    new MultiGet(16).get(keys(8), new ReversedGet(8)).toList.toBlocking.single().asScala mustBe (1 to 8).map(key => s"document-$key")
+  }
+
+  it should "get at most max-concurrency documents at once" in {
+    val get = new ReversedGet(12)
+    new MultiGet(3).get(keys(12), get).toList.toBlocking.single().size() mustBe 12
+    get.maxInFlight.get() must be <= 3
+  }
+
+  it should "leave out the keys whose document doesn't exist anymore" in {
+    val get = new Func1[Integer, Observable[String]] {
+      override def call(key: Integer): Observable[String] =
+        if (key % 2 == 0) Observable.empty[String]() else Observable.just(s"document-$key")
+    }
+    new MultiGet(4).get(keys(6), get).toList.toBlocking.single().asScala mustBe Seq("document-1", "document-3", "document-5")
+  }
+
+  it should "emit the first documents before the whole page arrived" in {
+    val slowLast = new Func1[Integer, Observable[String]] {
+      override def call(key: Integer): Observable[String] =
+        if (key == 3) Observable.never[String]() else Observable.just(s"document-$key")
+    }
+    new MultiGet(4).get(keys(3), slowLast).take(2).toList.toBlocking.single().asScala mustBe Seq("document-1", "document-2")
+  }
+}
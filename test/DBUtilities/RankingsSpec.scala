@@ -0,0 +1,55 @@
+package DBUtilities
+
+import com.couchbase.client.java.document.json.JsonObject
+import org.scalatest.{FlatSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+class RankingsSpec extends FlatSpec with MustMatchers {
+
+  val Category = "category::rankings-spec"
+  val Ranking = Rankings.category(Category)
+
+  def project(enrollments: Long): JsonObject =
+    JsonObject.create()
+      .put("category_id", Category)
+      .put("enrollments_count", enrollments)
+      .put("contributions_count", 0L)
+      .put("created_at", "2016-04-01T10:00:00Z")
+
+  def page(offset: Int, limit: Int, cursor: String = null): Seq[String] =
+    Rankings.page(Ranking, offset, limit, Cursor.decode(cursor)).asScala.map(_.id())
+
+  Rankings.index("project::rankings-low", project(1))
+  Rankings.index("project::rankings-high", project(30))
+  Rankings.index("project::rankings-tied-b", project(10))
+  Rankings.index("project::rankings-tied-a", project(10))
+
+  "Rankings" should "rank the projects of a category by enrollments descending, then by id" in {
+    page(0, 10) mustBe Seq("project::rankings-high", "project::rankings-tied-a", "project::rankings-tied-b", "project::rankings-low")
+  }
+
+  it should "skip the offset" in {
+    page(1, 2) mustBe Seq("project::rankings-tied-a", "project::rankings-tied-b")
+  }
+
+  it should "continue after the cursor of a hit, between tied projects too" in {
+    val first = Rankings.page(Ranking, 0, 2, null).asScala
+    page(0, 10, first.last.cursor()) mustBe Seq("project::rankings-tied-b", "project::rankings-low")
+  }
+
+  it should "move a project when its enrollments change" in {
+    Rankings.index("project::rankings-moving", project(0).put("category_id", "category::rankings-moving"))
+    Rankings.index("project::rankings-fixed", project(5).put("category_id", "category::rankings-moving"))
+    Rankings.addEnrollments("project::rankings-moving", 8)
+
+    Rankings.page(Rankings.category("category::rankings-moving"), 0, 10, null).asScala.map(_.id()) mustBe
+      Seq("project::rankings-moving", "project::rankings-fixed")
+  }
+
+  it should "refuse a cursor whose sort value doesn't have the type of the ranking" in {
+    an[IllegalArgumentException] must be thrownBy page(0, 10, Cursor.encode("2016-04-01T10:00:00Z", "project::rankings-high"))
+    an[IllegalArgumentException] must be thrownBy
+      Rankings.page(Rankings.LATEST, 0, 10, Cursor.decode(Cursor.encode(10L, "project::rankings-high")))
+  }
+}
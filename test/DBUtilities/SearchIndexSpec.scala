@@ -0,0 +1,61 @@
+package DBUtilities
+
+import com.couchbase.client.java.document.json.JsonObject
+import org.scalatest.{FlatSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+class SearchIndexSpec extends FlatSpec with MustMatchers {
+
+  def project(name: String, description: String, enrollments: Long, categoryID: String = null): JsonObject =
+    JsonObject.create()
+      .put("name", name)
+      .put("brief_description", description)
+      .put("enrollments_count", enrollments)
+      .put("category_id", categoryID)
+
+  def search(text: String, offset: Int = 0, limit: Int = 10, cursor: String = null): Seq[String] =
+    SearchIndex.search(text, offset, limit, Cursor.decode(cursor)).asScala.map(_.id())
+
+  SearchIndex.index("project::search-name", project("Quokkaspotting trips", "counting animals", 1))
+  SearchIndex.index("project::search-description", project("Island trips", "spotting quokkaspotting sites", 50))
+  SearchIndex.index("project::search-popular", project("Quokkaspotting walks", "counting animals", 20))
+
+  "Search index" should "rank name matches before description matches, then by enrollments" in {
+    search("quokkaspotting") mustBe Seq("project::search-popular", "project::search-name", "project::search-description")
+  }
+
+  it should "only return the projects matching every word" in {
+    search("quokkaspotting walks") mustBe Seq("project::search-popular")
+  }
+
+  it should "continue a search after the cursor of a hit" in {
+    val first = SearchIndex.search("quokkaspotting", 0, 1, null).asScala
+    first.map(_.id()) mustBe Seq("project::search-popular")
+    search("quokkaspotting", cursor = first.head.cursor()) mustBe Seq("project::search-name", "project::search-description")
+  }
+
+  it should "refuse a cursor that isn't a search cursor" in {
+    an[IllegalArgumentException] must be thrownBy search("quokkaspotting", cursor = Cursor.encode("name", "project::search-name"))
+  }
+
+  it should "re-rank a project when its enrollments change" in {
+    SearchIndex.index("project::search-rising", project("Wombatwatching", "counting animals", 0))
+    SearchIndex.index("project::search-steady", project("Wombatwatching nights", "counting animals", 5))
+    search("wombatwatching") mustBe Seq("project::search-steady", "project::search-rising")
+
+    SearchIndex.addPopularity("project::search-rising", 10)
+    search("wombatwatching") mustBe Seq("project::search-rising", "project::search-steady")
+  }
+
+  it should "search the new name of a renamed category" in {
+    CategoryCatalog.put("category::search-spec", JsonObject.create().put("name", "Numbatology"))
+    SearchIndex.index("project::search-categorized", project("Forest survey", "counting animals", 0, "category::search-spec"))
+    search("numbatology") mustBe Seq("project::search-categorized")
+
+    CategoryCatalog.put("category::search-spec", JsonObject.create().put("name", "Bilbyology"))
+    SearchIndex.reindexCategory("category::search-spec")
+    search("bilbyology") mustBe Seq("project::search-categorized")
+    search("numbatology") mustBe empty
+  }
+}
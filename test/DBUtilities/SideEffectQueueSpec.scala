@@ -0,0 +1,81 @@
+package DBUtilities
+
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.couchbase.client.java.document.JsonDocument
+import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import com.couchbase.client.java.error.TemporaryFailureException
+import org.scalatest.{FlatSpec, MustMatchers}
+import rx.Observable
+import rx.functions.Func0
+
+import scala.collection.JavaConverters._
+
+class SideEffectQueueSpec extends FlatSpec with MustMatchers {
+
+  val ResultID = "result::side-effects"
+  val SegmentID = s"$ResultID::results::0"
+
+  /**
+    * an in-memory storage whose first writes to the first segment fail with the given error,
+    * after writing the fields if applied, the way a write timing out after reaching the node does
+    */
+  class FailingStorage(failures: Int, error: Throwable, applied: Boolean) extends MemoryStorage {
+    val segmentWrites = new AtomicInteger()
+    insert(JsonDocument.create(ResultID, Segments.header(JsonObject.create().put("results", JsonArray.create()), "results.segment-size")))
+      .toBlocking.single()
+    insert(JsonDocument.create(SegmentID, JsonObject.create())).toBlocking.single()
+
+    override def setFields(id: String, fields: JsonObject): Observable[JsonObject] =
+      if (id != SegmentID) super.setFields(id, fields)
+      else Observable.defer(new Func0[Observable[JsonObject]] {
+        override def call(): Observable[JsonObject] =
+          if (segmentWrites.incrementAndGet() > failures) FailingStorage.super.setFields(id, fields)
+          else if (applied) FailingStorage.super.setFields(id, fields).concatWith(Observable.error[JsonObject](error))
+          else Observable.error[JsonObject](error)
+      })
+
+    def length: Long = getCounter(Counter.counterId(ResultID, "results")).toBlocking.singleOrDefault(0L)
+
+    def elements: Seq[String] = get(SegmentID).toBlocking.single().content().getNames.asScala.toSeq
+  }
+
+  def append(queue: SideEffectQueue, storage: Storage): Boolean =
+    queue.submit(ResultID, new Func0[Observable[JsonObject]] {
+      override def call(): Observable[JsonObject] = Segments.append(storage, ResultID, "results", JsonObject.create().put("answer", "yes"))
+    })
+
+  "Side effect queue" should "append an element once when its write timed out after being applied" in {
+    val queue = new SideEffectQueue(100, 4, 10, 3)
+    val storage = new FailingStorage(1, new TimeoutException(), applied = true)
+    append(queue, storage) mustBe true
+    queue.stop()
+
+    storage.segmentWrites.get() mustBe 1
+    storage.length mustBe 1
+    storage.elements mustBe Seq("item_0")
+    queue.failed() mustBe 1
+  }
+
+  it should "retry a temporary failure at the position reserved by the first attempt" in {
+    val queue = new SideEffectQueue(100, 4, 10, 3)
+    val storage = new FailingStorage(2, new TemporaryFailureException(), applied = false)
+    append(queue, storage) mustBe true
+    queue.stop()
+
+    storage.segmentWrites.get() mustBe 3
+    storage.length mustBe 1
+    storage.elements mustBe Seq("item_0")
+    queue.failed() mustBe 0
+  }
+
+  it should "refuse effects once it holds capacity effects" in {
+    val queue = new SideEffectQueue(1, 1, 1, 0)
+    queue.submit("blocking", new Func0[Observable[String]] {
+      override def call(): Observable[String] = Observable.never[String]()
+    }) mustBe true
+    append(queue, new FailingStorage(0, new TimeoutException(), applied = false)) mustBe false
+    queue.refused() mustBe 1
+  }
+}
@@ -0,0 +1,97 @@
+package benchmark
+
+import actors.AbstractDBHandler.QueryResult
+import actors.{AbstractDBHandler, Handlers}
+import akka.actor.{Actor, ActorSystem, Props}
+import akka.testkit.{ImplicitSender, TestKit}
+import benchmark.HandlerPoolBenchmark.{Echo, EchoHandler, EchoRouter}
+import com.couchbase.client.java.document.json.JsonObject
+import models.Response
+import org.scalatest.{BeforeAndAfterAll, FlatSpecLike, MustMatchers}
+import play.api.libs.json.Json
+
+import scala.concurrent.duration._
+
+/**
+  * compares the throughput and the latency of requests handled by pooled handlers and by a handler per request,
+  * the handlers run an in-memory query so only the cost of the actors is measured
+  */
+class HandlerPoolBenchmark extends TestKit(ActorSystem("benchmark-system"))
+  with FlatSpecLike
+  with ImplicitSender
+  with BeforeAndAfterAll
+  with MustMatchers {
+
+  val Requests = 20000
+  val Warmup = 5000
+
+  override def afterAll = {
+    TestKit.shutdownActorSystem(system)
+  }
+
+  "Pooled handlers" should "handle requests faster than a handler per request" in {
+    val perRequest = run(system.actorOf(EchoRouter.props(pooled = false), "perRequestRouter"))
+    val pooled = run(system.actorOf(EchoRouter.props(pooled = true), "pooledRouter"))
+
+    println(f"per-request handlers: ${perRequest._1}%.0f requests/s, p99 ${perRequest._2 / 1000}%d us")
+    println(f"pooled handlers:      ${pooled._1}%.0f requests/s, p99 ${pooled._2 / 1000}%d us")
+    assert(pooled._1 > perRequest._1)
+  }
+
+  /**
+    * @return the throughput in requests per second and the 99th percentile latency in nanoseconds
+    */
+  def run(router: akka.actor.ActorRef): (Double, Long) = {
+    (1 to Warmup).foreach(n => router ! Echo(n, System.nanoTime()))
+    receiveN(Warmup, 30.seconds)
+
+    val start = System.nanoTime()
+    (1 to Requests).foreach(n => router ! Echo(n, System.nanoTime()))
+    val latencies = receiveN(Requests, 60.seconds).map {
+      case Response(json) => (json \ "received_at").as[Long] - (json \ "sent_at").as[Long]
+    }.sorted
+    val elapsed = System.nanoTime() - start
+
+    (Requests * 1e9 / elapsed, latencies((latencies.size * 99) / 100))
+  }
+}
+
+object HandlerPoolBenchmark {
+
+  case class Echo(n: Int, sentAt: Long)
+
+  class EchoRouter(pooled: Boolean) extends Actor {
+    val echoHandlers = new Handlers(EchoHandler.props(), "echoHandlers", pooled = pooled)
+
+    override def receive = {
+      case echo: Echo => echoHandlers forward echo
+    }
+  }
+
+  object EchoRouter {
+    def props(pooled: Boolean): Props = Props(new EchoRouter(pooled))
+  }
+
+  class EchoHandler extends AbstractDBHandler {
+    override val ErrorMsg: String = "Failed to echo"
+
+    private var sentAt: Long = 0
+
+    override def handle: Receive = {
+      case Echo(n, sent) =>
+        sentAt = sent
+        executeQuery(rx.Observable.just(JsonObject.create().put("id", n.toString)))
+
+      case QueryResult(jsonObject) =>
+        out ! constructResponse(jsonObject).get
+    }
+
+    override def constructResponse(jsonObject: JsonObject): Option[Response] =
+      Some(Response(Json.obj("id" -> jsonObject.getString("id"), "sent_at" -> sentAt, "received_at" -> System.nanoTime())))
+  }
+
+  object EchoHandler {
+    def props(): Props = Props(new EchoHandler)
+  }
+
+}
@@ -0,0 +1,74 @@
+package benchmark
+
+import java.lang.management.ManagementFactory
+
+import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import helpers.JsonConverter
+import models.contribution.Contribution
+import models.contribution.ContributionDataTypes.{ContributionDataTypeOne, Location}
+import org.scalatest.{FlatSpec, MustMatchers}
+import play.api.libs.json.{JsArray, Json}
+
+/**
+  * compares the bytes allocated per request converting between the DB documents and the Json values
+  * through strings and with the JsonConverter, on a page of the projects listing and on a contribution submission
+  */
+class JsonConversionBenchmark extends FlatSpec with MustMatchers {
+
+  val Requests = 20000
+  val Warmup = 5000
+
+  val threadBean = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+
+  val projectsPage = {
+    val page = JsonArray.create()
+    (1 to 25).foreach { n =>
+      page.add(JsonObject.create()
+        .put("id", s"project::$n")
+        .put("name", s"project $n")
+        .put("description", "a" * 300)
+        .put("image", s"http://images.sengab.com/$n.png")
+        .put("created_at", "2016-05-01T10:00:00.000Z")
+        .put("is_featured", n % 5 == 0)
+        .put("contributions_count", n * 10)
+        .put("enrollments_count", n * 3)
+        .put("owner", JsonObject.create().put("id", s"user::$n").put("name", "a user"))
+        .put("category", JsonObject.create().put("category_id", "category::1").put("name", "a category")))
+    }
+    page
+  }
+
+  val contribution = Json.toJson(Contribution("project::1", "2016-05-01T10:00:00.000Z",
+    ContributionDataTypeOne(Location(30.0444, 31.2357), "an answer")))
+
+  "JsonConverter" should "allocate less than the string round trips on the projects listing" in {
+    val roundTrip = allocatedPerRequest(Json.parse(projectsPage.toString).as[JsArray])
+    val converted = allocatedPerRequest(JsonConverter.toJsValue(projectsPage))
+
+    println(s"projects listing, string round trip: $roundTrip bytes per request")
+    println(s"projects listing, JsonConverter:     $converted bytes per request")
+    JsonConverter.toJsValue(projectsPage) mustEqual Json.parse(projectsPage.toString)
+    assert(converted < roundTrip)
+  }
+
+  it should "allocate less than the string round trips on a contribution submission" in {
+    val roundTrip = allocatedPerRequest(JsonObject.fromJson(Json.stringify(contribution)))
+    val converted = allocatedPerRequest(JsonConverter.toJsonObject(contribution))
+
+    println(s"contribution submission, string round trip: $roundTrip bytes per request")
+    println(s"contribution submission, JsonConverter:     $converted bytes per request")
+    JsonConverter.toJsonObject(contribution) mustEqual JsonObject.fromJson(Json.stringify(contribution))
+    assert(converted < roundTrip)
+  }
+
+  /**
+    * @return the bytes allocated by the current thread per run of the conversion
+    */
+  def allocatedPerRequest(convert: => Any): Long = {
+    (1 to Warmup).foreach(_ => convert)
+    val threadID = Thread.currentThread().getId
+    val start = threadBean.getThreadAllocatedBytes(threadID)
+    (1 to Requests).foreach(_ => convert)
+    (threadBean.getThreadAllocatedBytes(threadID) - start) / Requests
+  }
+}
@@ -0,0 +1,91 @@
+package benchmark
+
+import java.io.OutputStream
+
+import actors.AbstractBulkDBHandler.ItemResult
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder
+import ch.qos.logback.classic.spi.ILoggingEvent
+import ch.qos.logback.classic.{AsyncAppender, Level, LoggerContext}
+import ch.qos.logback.core.{Appender, OutputStreamAppender}
+import com.couchbase.client.java.document.json.{JsonArray, JsonObject}
+import helpers.Log
+import org.scalatest.{BeforeAndAfterAll, FlatSpecLike, MustMatchers}
+import org.slf4j.LoggerFactory
+import play.api.Logger
+
+/**
+  * compares the time spent by the actors logging the messages they receive, before and after the hot path logging:
+  * eagerly built messages written synchronously, and the Log events written by the async appender,
+  * both writing to a stream discarding what it gets so only the cost for the caller is measured
+  */
+class LoggingBenchmark extends FlatSpecLike with BeforeAndAfterAll with MustMatchers {
+
+  val Events = 200000
+  val Warmup = 50000
+  val ActorPath = "akka://application/user/receptionist/projectManager/projectRetriever/bulkProjectsRetrievers/$a"
+
+  val context = LoggerFactory.getILoggerFactory.asInstanceOf[LoggerContext]
+  val applicationLogger = context.getLogger("application")
+
+  val document = {
+    val answers = JsonArray.create()
+    (1 to 50).foreach(n => answers.add(JsonObject.create().put("answer", s"answer $n").put("count", n)))
+    JsonObject.create().put("id", "project::42").put("name", "a project").put("description", "a" * 500).put("answers", answers)
+  }
+
+  override def afterAll = {
+    applicationLogger.detachAndStopAllAppenders()
+    applicationLogger.setAdditive(true)
+  }
+
+  "Hot path logging" should "cost the actors less than eagerly built synchronous logs" in {
+    applicationLogger.setLevel(Level.DEBUG)
+    applicationLogger.setAdditive(false)
+
+    applicationLogger.addAppender(discardingAppender())
+    val before = measure(Logger.info(s"actor $ActorPath - received msg : ${ItemResult(document)}"))
+    applicationLogger.detachAndStopAllAppenders()
+
+    val async = new AsyncAppender
+    async.setContext(context)
+    async.setQueueSize(8192)
+    async.setNeverBlock(true)
+    async.addAppender(discardingAppender())
+    async.start()
+    applicationLogger.addAppender(async)
+    val after = measure(Log.info(Log.ACTOR, "actor %s - received msg : %s", ActorPath, ItemResult(document)))
+    applicationLogger.detachAndStopAllAppenders()
+
+    println(f"eager messages, synchronous appender: ${before / Events}%d ns per event")
+    println(f"Log, async appender:                  ${after / Events}%d ns per event")
+    assert(after < before)
+  }
+
+  /**
+    * @return the total time spent logging the events in nanoseconds
+    */
+  def measure(log: => Unit): Long = {
+    (1 to Warmup).foreach(_ => log)
+    val start = System.nanoTime()
+    (1 to Events).foreach(_ => log)
+    System.nanoTime() - start
+  }
+
+  def discardingAppender(): Appender[ILoggingEvent] = {
+    val encoder = new PatternLayoutEncoder
+    encoder.setContext(context)
+    encoder.setPattern("%level - %logger - %message%n%xException")
+    encoder.start()
+
+    val appender = new OutputStreamAppender[ILoggingEvent]
+    appender.setContext(context)
+    appender.setEncoder(encoder)
+    appender.setOutputStream(new OutputStream {
+      override def write(b: Int): Unit = {}
+
+      override def write(b: Array[Byte], off: Int, len: Int): Unit = {}
+    })
+    appender.start()
+    appender
+  }
+}
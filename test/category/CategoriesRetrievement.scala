@@ -2,6 +2,7 @@ package category
 
 import core.AbstractSpec
 import messages.CategoryManagerMessages.RetrieveCategories
+import models.errors.GeneralErrors.BadRequestError
 import models.{DetailedCategory, Response}
 
 class CategoriesRetrievement extends AbstractSpec {
@@ -12,4 +13,16 @@ class CategoriesRetrievement extends AbstractSpec {
     assert(response.jsonResult.validate[Seq[DetailedCategory]].isSuccess)
   }
 
+  it should "Return a page of categories with the next cursor when paginating with a cursor" in {
+    receptionist ! RetrieveCategories(0, 1, Some(""))
+    val response = expectMsgType[Response]
+    assert((response.jsonResult \ "data").validate[Seq[DetailedCategory]].isSuccess)
+    assert((response.jsonResult \ "next_cursor").toOption.isDefined)
+  }
+
+  it should "Reject an invalid cursor" in {
+    receptionist ! RetrieveCategories(0, 20, Some("not a cursor"))
+    expectMsgType[BadRequestError]
+  }
+
 }
@@ -1,10 +1,13 @@
 package category
 
+import actors.AbstractBulkDBHandler.{Chunk, NextChunk}
+import actors.AbstractDBActor.Correlated
 import core.AbstractSpec
 import messages.CategoryManagerMessages.RetrieveCategoryProjects
-import models.Response
 import models.errors.GeneralErrors.NotFoundError
 import models.project.Project.EmbeddedProject
+import models.{Response, StreamedResponse}
+import play.api.libs.json.Json
 import utils.Constants
 
 class CategoryProjectsRetrievement extends AbstractSpec {
@@ -22,4 +25,25 @@ class CategoryProjectsRetrievement extends AbstractSpec {
     expectMsgType[NotFoundError]
   }
 
+  it should "Stream the projects of category with id=1 in chunks" in {
+    receptionist ! RetrieveCategoryProjects(Constants.ValidCategoryID, 0, 20, stream = true)
+    val streamed = expectMsgType[StreamedResponse]
+
+    // pull the chunks until the one closing the listing
+    var chunks = Vector.empty[Chunk]
+    do {
+      streamed.handler ! Correlated(streamed.requestID, NextChunk)
+      chunks :+= expectMsgType[Chunk]
+    } while (!chunks.last.last)
+
+    val json = Json.parse(chunks.flatMap(_.bytes).toArray)
+    assert(json.validate[Seq[EmbeddedProject]].isSuccess)
+  }
+
+  // no such category OR category has no projects yet, nothing to stream
+  it should "Return NOT FOUND error when streaming" in {
+    receptionist ! RetrieveCategoryProjects(Constants.InvalidCategoryID, 0, 20, stream = true)
+    expectMsgType[NotFoundError]
+  }
+
 }
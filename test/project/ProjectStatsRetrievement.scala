@@ -2,7 +2,7 @@ package project
 
 import core.AbstractSpec
 import messages.ProjectManagerMessages.GetProjectStats
-import models.errors.GeneralErrors.NotFoundError
+import models.errors.GeneralErrors.{BadRequestError, NotFoundError}
 import models.{Response, Stats}
 import utils.Constants
 
@@ -33,6 +33,19 @@ class ProjectStatsRetrievement extends AbstractSpec {
     assert(response.jsonResult.validate[Stats].isSuccess)
   }
 
+  it should "Return stats with a time series for the requested window" in {
+    receptionist ! GetProjectStats(Constants.ProjectIDOfTemplate1, Some("24h"), None)
+    val response = expectMsgType[Response]
+    assert(response.jsonResult.validate[Stats].isSuccess)
+    assert((response.jsonResult \ "time_series" \ "resolution").as[String] == "hour")
+    assert((response.jsonResult \ "time_series" \ "contributions").as[Seq[Long]].size == 24)
+  }
+
+  it should "Return BAD REQUEST error for a window longer than its resolution keeps" in {
+    receptionist ! GetProjectStats(Constants.ProjectIDOfTemplate1, Some("7d"), Some("minute"))
+    expectMsgType[BadRequestError]
+  }
+
   // no such project or initial state of the stats - for projects with no contributions
   it should "Return NOT FOUND project error" in {
     receptionist ! GetProjectStats(Constants.InvalidID)